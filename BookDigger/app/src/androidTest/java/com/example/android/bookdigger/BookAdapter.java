@@ -9,12 +9,13 @@ import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * BookDigger created by JCoupier on 07/06/2017.
+ * Adapter of the books for a ListView. The list of the activity is now a RecyclerView with a
+ * {@link BookRecyclerAdapter}: this one is only kept as the baseline of the
+ * {@link ListBenchmarkTest}.
  */
 public class BookAdapter extends ArrayAdapter<Book> {
 
@@ -25,14 +26,28 @@ public class BookAdapter extends ArrayAdapter<Book> {
         public ImageView bookCover;
     }
 
-    public BookAdapter(Context context, ArrayList<Book> books){
+    public BookAdapter(Context context, List<Book> books){
         super(context, 0, books);
     }
 
+    /**
+     * Replace the books of the adapter, with a single change notification for the list.
+     */
+    public void replaceAll(List<Book> books) {
+        setNotifyOnChange(false);
+        clear();
+        if (books != null) {
+            addAll(books);
+        }
+        // Also turns the notifications on again
+        notifyDataSetChanged();
+    }
+
     @NonNull
     @Override
     public View getView(int position, View convertView, @NonNull ViewGroup parent) {
 
+        BooksTracer.Span span = BooksTracer.begin(BooksTracer.PHASE_BIND_ROW);
         ViewHolder viewHolder;
 
         // Check if the existing view is being reused, otherwise inflate the view
@@ -64,15 +79,15 @@ public class BookAdapter extends ArrayAdapter<Book> {
             // get the TextView from the ViewHolder and then set the text (authors)
             viewHolder.author.setText(currentBook.getAuthor());
 
-            // Use the Picasso library to display the smallThumbnail of the current book.
+            // Use the ThumbnailLoader to display the smallThumbnail of the current book.
             // If there is no thumbnail or if after three try the thumbnail can't be downloaded:
             // an image placeholder is displayed instead.
-            Picasso.with(getContext()).load(currentBook.getSmallThumbnailUrl())
-                    .placeholder(R.drawable.book_placeholder)
-                    .error(R.drawable.book_placeholder)
-                    .into(viewHolder.bookCover);
+            ThumbnailLoader.getInstance(getContext())
+                    .load(currentBook.getSmallThumbnailUrl(), viewHolder.bookCover);
         }
 
+        span.end();
+
         // Return the whole list item layout (containing 3 TextViews)
         // so that it can be shown in the ListView
         return convertView;
@@ -0,0 +1,82 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the lazy loading of a {@link BookDetail} by the
+ * {@link BookDetailLoader} against a {@link FaultInjectingServer}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookDetailLoaderTest {
+
+    private FaultInjectingServer mServer;
+
+    private Context mContext;
+
+    /** Id of the volume of the test, unique so that the cache of a former run isn't hit */
+    private String mId;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FaultInjectingServer();
+        mContext = InstrumentationRegistry.getTargetContext();
+        mId = "test" + System.nanoTime();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+    }
+
+    @Test
+    public void parsesTheDetailFields() throws Exception {
+        mServer.enqueue(200, 0, FaultInjectingServer.ONE_VOLUME);
+
+        BookDetail detail = BooksUtils.requestBookDetail(mServer.volumeUrl() + "stub1", null);
+
+        assertNotNull(detail);
+        assertEquals("stub1", detail.getId());
+        assertEquals("A <b>stub</b> book.", detail.getDescription());
+        assertEquals("Stub Press", detail.getPublisher());
+        assertEquals("2017-06-07", detail.getPublishedDate());
+        assertEquals(321, detail.getPageCount());
+        assertEquals("0134685997", detail.getIsbn10());
+        assertEquals("9780134685991", detail.getIsbn13());
+        // The smallThumbnail is the one of the list, the largest image is preferred
+        assertEquals("http://example.com/m", detail.getLargestImageUrl());
+    }
+
+    @Test
+    public void detailIsFetchedOnceThenCached() throws Exception {
+        mServer.enqueue(200, 0, FaultInjectingServer.ONE_VOLUME.replace("stub1", mId));
+
+        BookDetail detail = BookDetailLoader.loadDetail(mContext, mServer.volumeUrl(), mId, null);
+        BookDetail cached = BookDetailLoader.loadDetail(mContext, mServer.volumeUrl(), mId, null);
+
+        assertEquals(mId, detail.getId());
+        assertSame(detail, cached);
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void failureIsReported() throws Exception {
+        mServer.enqueue(500, 0, "");
+        try {
+            BookDetailLoader.loadDetail(mContext, mServer.volumeUrl(), mId, null);
+            fail("The failure must be reported when nothing is cached");
+        } catch (IOException e) {
+            assertEquals(1, mServer.getRequestCount());
+        }
+    }
+}
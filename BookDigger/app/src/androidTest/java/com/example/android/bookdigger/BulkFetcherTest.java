@@ -0,0 +1,126 @@
+package com.example.android.bookdigger;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the {@link BulkFetcher} against a {@link FaultInjectingServer}
+ * serving generated pages with an injected latency.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BulkFetcherTest {
+
+    private static final String LOG_TAG = BulkFetcherTest.class.getSimpleName();
+
+    private FaultInjectingServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FaultInjectingServer();
+        ResilientFetcher.reset();
+        ResilientFetcher.setHedgingEnabled(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+        ResilientFetcher.setHedgingEnabled(true);
+    }
+
+    @Test
+    public void deliversPagesInOrderWithoutDuplicates() throws Exception {
+        // Pages repeat the last 3 books of the previous one and complete out of order
+        mServer.servePages(100, 3, 50, 200);
+        final List<Integer> startIndexes = new ArrayList<>();
+        final List<String> titles = new ArrayList<>();
+
+        BooksModel booksModel = newFetcher(4).fetch(uniqueQuery(), 200, 20,
+                new BulkFetcher.Listener() {
+                    @Override
+                    public void onPage(int startIndex, List<Book> books, int totalItems) {
+                        startIndexes.add(startIndex);
+                        for (Book book : books) {
+                            titles.add(book.getTitle());
+                        }
+                    }
+                });
+
+        assertNotNull(booksModel);
+        assertEquals(100, booksModel.getBooks().size());
+        assertEquals(100, titles.size());
+        for (int i = 0; i < titles.size(); i++) {
+            assertEquals("Book " + i, titles.get(i));
+            assertEquals("Book " + i, booksModel.getBooks().get(i).getTitle());
+        }
+        for (int i = 1; i < startIndexes.size(); i++) {
+            assertTrue(startIndexes.get(i) > startIndexes.get(i - 1));
+        }
+    }
+
+    @Test
+    public void stopsAtLastResult() throws Exception {
+        mServer.servePages(50, 0, 0, 0);
+        BooksModel booksModel = newFetcher(4).fetch(uniqueQuery(), 400, 40, null);
+
+        assertNotNull(booksModel);
+        assertEquals(50, booksModel.getBooks().size());
+    }
+
+    @Test
+    public void shortPagesAreNotTheLastOne() throws Exception {
+        // Every page misses its last 5 books, the search has 100 of them
+        mServer.servePages(100, 0, 0, 0);
+        mServer.shortenPages(5);
+        BooksModel booksModel = newFetcher(4).fetch(uniqueQuery(), 400, 20, null);
+
+        assertNotNull(booksModel);
+        assertEquals(75, booksModel.getBooks().size());
+        assertEquals("Book 94", booksModel.getBooks().get(74).getTitle());
+    }
+
+    /**
+     * Wall-clock time of 400 results, in pages of 40 with a 300 ms latency, fetched one page
+     * at a time and with the default concurrency.
+     */
+    @Test
+    public void fetchesFasterThanSequentialPaging() throws Exception {
+        mServer.servePages(1000, 0, 300, 0);
+
+        long start = SystemClock.elapsedRealtime();
+        BooksModel sequential = newFetcher(1).fetch(uniqueQuery(), 400, 40, null);
+        long sequentialMillis = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        BooksModel parallel = newFetcher(BulkFetcher.DEFAULT_CONCURRENCY)
+                .fetch(uniqueQuery(), 400, 40, null);
+        long parallelMillis = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, "400 results: sequential " + sequentialMillis + " ms, parallel "
+                + parallelMillis + " ms");
+        assertEquals(400, sequential.getBooks().size());
+        assertEquals(400, parallel.getBooks().size());
+        assertTrue(parallelMillis < sequentialMillis / 2);
+    }
+
+    private BulkFetcher newFetcher(int concurrency) {
+        return new BulkFetcher(InstrumentationRegistry.getTargetContext(), mServer.baseUrl(),
+                concurrency);
+    }
+
+    /** A query never cached before, so that every page goes to the server */
+    private static String uniqueQuery() {
+        return "bulk" + System.nanoTime();
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.android.bookdigger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP server answering with scripted responses: error statuses, slow responses or
+ * books, in the order they were enqueued. It can also serve the pages of a search of
+ * generated books, with an injected latency, or a body with an ETag, answering the
+ * conditional requests which match it with a 304, and an image for the thumbnail urls.
+ */
+class FaultInjectingServer implements Closeable {
+
+    /** A page with a single book */
+    static final String ONE_BOOK = "{\"totalItems\": 1, \"items\": [{\"volumeInfo\": "
+            + "{\"title\": \"Stub\", \"authors\": [\"Stub Author\"]}}]}";
+
+    /** A search without results */
+    static final String NO_BOOK = "{\"totalItems\": 0}";
+
+    /** A volume as returned by the volume endpoint with the detail fields */
+    static final String ONE_VOLUME = "{\"id\": \"stub1\", \"volumeInfo\": {"
+            + "\"description\": \"A <b>stub</b> book.\", \"publisher\": \"Stub Press\", "
+            + "\"publishedDate\": \"2017-06-07\", \"pageCount\": 321, \"industryIdentifiers\": ["
+            + "{\"type\": \"ISBN_10\", \"identifier\": \"0134685997\"}, "
+            + "{\"type\": \"ISBN_13\", \"identifier\": \"9780134685991\"}, "
+            + "{\"type\": \"OTHER\", \"identifier\": \"UOM:39015\"}], \"imageLinks\": {"
+            + "\"smallThumbnail\": \"http://example.com/s\", \"thumbnail\": \"http://example.com/t\", "
+            + "\"medium\": \"http://example.com/m\"}}}";
+
+    private static class Fault {
+        final int mResponseCode;
+        final long mDelayMillis;
+        final byte[] mBody;
+        final String mContentType;
+        /** Additional header lines, each ending with CRLF */
+        final String mHeaders;
+
+        Fault(int responseCode, long delayMillis, String body) {
+            this(responseCode, delayMillis, body, "");
+        }
+
+        Fault(int responseCode, long delayMillis, String body, String headers) {
+            this(responseCode, delayMillis, body.getBytes(Charset.forName("UTF-8")),
+                    "application/json; charset=UTF-8", headers);
+        }
+
+        Fault(int responseCode, long delayMillis, byte[] body, String contentType, String headers) {
+            mResponseCode = responseCode;
+            mDelayMillis = delayMillis;
+            mBody = body;
+            mContentType = contentType;
+            mHeaders = headers;
+        }
+    }
+
+    private final ServerSocket mServerSocket;
+
+    private final LinkedList<Fault> mFaults = new LinkedList<>();
+
+    /** Response once the scripted ones are used */
+    private Fault mDefault = new Fault(503, 0, "");
+
+    private int mRequestCount;
+
+    /** Number of books of the generated search, or -1 to answer with the scripted responses */
+    private int mPagesTotalItems = -1;
+
+    /** Number of books of the previous page repeated at the start of each page */
+    private int mPagesOverlap;
+
+    private long mPagesDelayMillis;
+
+    private long mPagesJitterMillis;
+
+    /** Number of books left out at the end of each generated page */
+    private int mPagesMissing;
+
+    /** ETag of the validated body, or null to answer with the scripted responses */
+    private String mEtag;
+
+    private String mValidatedBody;
+
+    private String mCacheControl;
+
+    private int mFullResponseCount;
+
+    private int mNotModifiedCount;
+
+    /** PNG served for the thumbnail urls, or null */
+    private byte[] mImage;
+
+    private int mImageCount;
+
+    private final Random mRandom = new Random(42);
+
+    private volatile boolean mClosed;
+
+    FaultInjectingServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "FaultInjectingServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /** Answer the next request with the given status, after the given delay */
+    synchronized void enqueue(int responseCode, long delayMillis, String body) {
+        mFaults.add(new Fault(responseCode, delayMillis, body));
+    }
+
+    /** Answer every request with the given status once the scripted responses are used */
+    synchronized void setDefault(int responseCode, String body) {
+        mDefault = new Fault(responseCode, 0, body);
+    }
+
+    /**
+     * Answer every request with the page of generated books ("Book 0", "Book 1"...) given by
+     * its startIndex and maxResults parameters.
+     *
+     * @param totalItems is the number of books of the search
+     * @param overlap is the number of books of the previous page repeated on each page, as
+     *                the API does when the results shift between two requests
+     * @param delayMillis is the latency of every page
+     * @param jitterMillis is a random latency added to it, so that the pages complete out of order
+     */
+    synchronized void servePages(int totalItems, int overlap, long delayMillis, long jitterMillis) {
+        mPagesTotalItems = totalItems;
+        mPagesOverlap = overlap;
+        mPagesDelayMillis = delayMillis;
+        mPagesJitterMillis = jitterMillis;
+    }
+
+    /**
+     * Leave the given number of books out at the end of each generated page, as the API
+     * returns short pages in the middle of the results.
+     */
+    synchronized void shortenPages(int missing) {
+        mPagesMissing = missing;
+    }
+
+    /**
+     * Answer every request with the given body and ETag, or with a 304 without body when
+     * its If-None-Match is that ETag. Call it again to change the content.
+     *
+     * @param cacheControl is the Cache-Control header of the responses (may be null)
+     */
+    synchronized void serveWithEtag(String body, String etag, String cacheControl) {
+        mValidatedBody = body;
+        mEtag = etag;
+        mCacheControl = cacheControl;
+    }
+
+    /**
+     * Answer the requests of the thumbnail urls with the given PNG image.
+     */
+    synchronized void serveImage(byte[] png) {
+        mImage = png;
+    }
+
+    /** Return the number of images served */
+    synchronized int getImageCount() {
+        return mImageCount;
+    }
+
+    /** Return the url of a thumbnail served by {@link #serveImage(byte[])} */
+    String thumbnailUrl(int number) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/thumbnails/" + number + ".png";
+    }
+
+    /** Return the number of 200 responses with the validated body */
+    synchronized int getFullResponseCount() {
+        return mFullResponseCount;
+    }
+
+    /** Return the number of 304 responses */
+    synchronized int getNotModifiedCount() {
+        return mNotModifiedCount;
+    }
+
+    /** Return the number of requests received */
+    synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /** Return the URL of a search on this server */
+    String url() {
+        return baseUrl() + "stub";
+    }
+
+    /** Return the URL of a search on this server without the search input, as BooksLoader uses */
+    String baseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/books/v1/volumes?q=";
+    }
+
+    /** Return the URL of the volumes on this server, followed by the id as BookDetailLoader uses */
+    String volumeUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/books/v1/volumes/";
+    }
+
+    @Override
+    public void close() throws IOException {
+        mClosed = true;
+        mServerSocket.close();
+    }
+
+    private synchronized Fault nextFault(String requestLine, String headers) {
+        mRequestCount++;
+        if (mImage != null && requestLine.contains(" /thumbnails/")) {
+            mImageCount++;
+            return new Fault(200, 0, mImage, "image/png", "");
+        }
+        if (mEtag != null) {
+            String validatorHeaders = "ETag: " + mEtag + "\r\n"
+                    + (mCacheControl != null ? "Cache-Control: " + mCacheControl + "\r\n" : "");
+            Matcher ifNoneMatch = Pattern.compile("(?im)^If-None-Match:\\s*(.*?)\\s*$").matcher(headers);
+            if (ifNoneMatch.find() && ifNoneMatch.group(1).equals(mEtag)) {
+                mNotModifiedCount++;
+                return new Fault(304, 0, "", validatorHeaders);
+            }
+            mFullResponseCount++;
+            return new Fault(200, 0, mValidatedBody, validatorHeaders);
+        }
+        if (mPagesTotalItems >= 0) {
+            long delay = mPagesDelayMillis + (long) (mRandom.nextDouble() * mPagesJitterMillis);
+            return new Fault(200, delay, page(parameter(requestLine, "startIndex"),
+                    parameter(requestLine, "maxResults")));
+        }
+        return mFaults.isEmpty() ? mDefault : mFaults.removeFirst();
+    }
+
+    /** Return the JSON of the page of generated books, called with the lock held */
+    private String page(int startIndex, int maxResults) {
+        int first = Math.max(0, startIndex - mPagesOverlap);
+        int end = Math.min(mPagesTotalItems, first + maxResults - mPagesMissing);
+        StringBuilder json = new StringBuilder("{\"totalItems\": " + mPagesTotalItems);
+        if (first < end) {
+            json.append(", \"items\": [");
+            for (int i = first; i < end; i++) {
+                if (i > first) {
+                    json.append(", ");
+                }
+                json.append("{\"volumeInfo\": {\"title\": \"Book ").append(i)
+                        .append("\", \"authors\": [\"Author ").append(i % 7).append("\"]}}");
+            }
+            json.append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    /** Return the value of an int parameter of the request line, or 0 */
+    private static int parameter(String requestLine, String name) {
+        Matcher matcher = Pattern.compile("[?&]" + name + "=(\\d+)").matcher(requestLine);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    private void acceptLoop() {
+        while (!mClosed) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                // Closed
+                return;
+            }
+            // One thread per connection, so that a slow response doesn't delay the others
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }).start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            String request = readRequest(socket.getInputStream());
+            int endOfRequestLine = request.indexOf('\n');
+            Fault fault = endOfRequestLine < 0 ? nextFault(request, "")
+                    : nextFault(request.substring(0, endOfRequestLine), request.substring(endOfRequestLine + 1));
+            if (fault.mDelayMillis > 0) {
+                Thread.sleep(fault.mDelayMillis);
+            }
+            byte[] body = fault.mBody;
+            String head = "HTTP/1.1 " + fault.mResponseCode + " Stub\r\n"
+                    + "Content-Type: " + fault.mContentType + "\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + fault.mHeaders
+                    + "Connection: close\r\n\r\n";
+            OutputStream out = socket.getOutputStream();
+            out.write(head.getBytes(Charset.forName("US-ASCII")));
+            out.write(body);
+            out.flush();
+        } catch (IOException | InterruptedException e) {
+            // The client went away (e.g. an aborted hedged request)
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+        }
+    }
+
+    /**
+     * Read the request line and the headers, up to the empty line, and return them one per
+     * line (separated by LF).
+     */
+    private static String readRequest(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        int matched = 0;
+        byte[] end = {'\r', '\n', '\r', '\n'};
+        while (matched < end.length) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Connection closed before the end of the request");
+            }
+            if (b != '\r') {
+                head.append((char) b);
+            }
+            matched = b == end[matched] ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+        return head.toString().trim();
+    }
+}
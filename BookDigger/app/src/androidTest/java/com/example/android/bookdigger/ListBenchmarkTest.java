@@ -0,0 +1,296 @@
+package com.example.android.bookdigger;
+
+import android.app.Activity;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ListView;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Frame-time benchmark of the list of books: a large result set is scrolled frame by frame
+ * while pages are added (incremental paging) and the results are replaced by overlapping
+ * ones (new search, next page), on the former ListView with {@link BookAdapter} and on the
+ * RecyclerView with {@link BookRecyclerAdapter}. The frame times and the row binds are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ListBenchmarkTest {
+
+    private static final String LOG_TAG = ListBenchmarkTest.class.getSimpleName();
+
+    /** Duration of a frame at 60 fps */
+    private static final long FRAME_NANOS = 16666667L;
+
+    private static final int RESULT_COUNT = 2000;
+
+    /** Books held by the list at the same time, as the window of incremental paging */
+    private static final int WINDOW_SIZE = 200;
+
+    private static final int PAGE_SIZE = 40;
+
+    /** Pages added or replaced during a run */
+    private static final int PAGE_CHANGES = 30;
+
+    private static final int FRAMES_PER_PAGE_CHANGE = 20;
+
+    private static final int SCROLL_PIXELS_PER_FRAME = 30;
+
+    @Rule
+    public ActivityTestRule<BooksActivity> mActivityRule = new ActivityTestRule<>(BooksActivity.class);
+
+    private List<Book> mResults;
+
+    @Before
+    public void setUp() {
+        mResults = new BookColumns(RESULT_COUNT);
+        for (int i = 0; i < RESULT_COUNT; i++) {
+            // No thumbnail: the network must not be part of the frame times
+            mResults.add(new Book("volume" + i, "Book " + i,
+                    new String[]{"Author " + (i % 7)}, null));
+        }
+    }
+
+    @Test
+    public void recyclerViewBindsFewerRows() throws Exception {
+        // The frames are timed with the Choreographer, added in API 16
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN);
+        Result listView = run(new ListViewHost(mActivityRule.getActivity()));
+        Result recyclerView = run(new RecyclerViewHost(mActivityRule.getActivity()));
+
+        Log.i(LOG_TAG, "ListView: " + listView);
+        Log.i(LOG_TAG, "RecyclerView: " + recyclerView);
+        assertTrue(recyclerView.mBinds < listView.mBinds);
+    }
+
+    /**
+     * Scroll the list of the host while its pages change, and measure every frame.
+     */
+    private Result run(final Host host) throws InterruptedException {
+        final Activity activity = mActivityRule.getActivity();
+        final Result result = new Result();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Over the views of the activity
+                activity.addContentView(host.getView(), new ViewGroup.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+                host.replace(mResults.subList(0, WINDOW_SIZE));
+            }
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                host.mBinds = 0;
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    private long mLastFrameNanos;
+                    private int mFrame;
+                    /** Index in the results of the first book of the list */
+                    private int mFirstResult;
+
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        if (mLastFrameNanos != 0) {
+                            result.addFrame(frameTimeNanos - mLastFrameNanos);
+                        }
+                        mLastFrameNanos = frameTimeNanos;
+                        mFrame++;
+
+                        if (mFrame % FRAMES_PER_PAGE_CHANGE == 0) {
+                            int change = mFrame / FRAMES_PER_PAGE_CHANGE;
+                            if (change > PAGE_CHANGES) {
+                                result.mBinds = host.mBinds;
+                                done.countDown();
+                                return;
+                            }
+                            if (change % 2 == 1) {
+                                // Next page of the incremental paging: the first one is recycled
+                                int end = mFirstResult + WINDOW_SIZE;
+                                host.append(mResults.subList(end, end + PAGE_SIZE), PAGE_SIZE);
+                                mFirstResult += PAGE_SIZE;
+                            } else {
+                                // Results shifted by half a page, e.g. a new search or a refresh
+                                mFirstResult += PAGE_SIZE / 2;
+                                host.replace(mResults.subList(mFirstResult, mFirstResult + WINDOW_SIZE));
+                            }
+                        }
+                        host.scrollBy(SCROLL_PIXELS_PER_FRAME);
+                        Choreographer.getInstance().postFrameCallback(this);
+                    }
+                });
+            }
+        });
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ((ViewGroup) host.getView().getParent()).removeView(host.getView());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Frame times and binds of a run.
+     */
+    private static class Result {
+        private int mFrames;
+        /** Frames which missed at least one vsync */
+        private int mJankyFrames;
+        private long mMaxFrameNanos;
+        private long mTotalFrameNanos;
+        private int mBinds;
+
+        void addFrame(long frameNanos) {
+            mFrames++;
+            mTotalFrameNanos += frameNanos;
+            mMaxFrameNanos = Math.max(mMaxFrameNanos, frameNanos);
+            if (frameNanos > FRAME_NANOS * 3 / 2) {
+                mJankyFrames++;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mFrames + " frames, " + mJankyFrames + " janky, mean "
+                    + TimeUnit.NANOSECONDS.toMicros(mTotalFrameNanos / Math.max(1, mFrames)) + " us, max "
+                    + TimeUnit.NANOSECONDS.toMicros(mMaxFrameNanos) + " us, " + mBinds + " row binds";
+        }
+    }
+
+    /**
+     * A list of books, changed the way {@link BooksActivity} changes it.
+     */
+    private abstract static class Host {
+        int mBinds;
+
+        abstract View getView();
+
+        abstract void replace(List<Book> books);
+
+        /** Add a page at the end and remove the given number of books at the start */
+        abstract void append(List<Book> page, int recycled);
+
+        abstract void scrollBy(int pixels);
+    }
+
+    /** The ListView and the ArrayAdapter, changed as before the RecyclerView */
+    private static class ListViewHost extends Host {
+        private final ListView mListView;
+        private final BookAdapter mAdapter;
+
+        ListViewHost(Activity activity) {
+            mListView = new ListView(activity);
+            mAdapter = new BookAdapter(activity, new BookColumns()) {
+                @Override
+                public View getView(int position, View convertView, ViewGroup parent) {
+                    mBinds++;
+                    return super.getView(position, convertView, parent);
+                }
+            };
+            mListView.setAdapter(mAdapter);
+        }
+
+        @Override
+        View getView() {
+            return mListView;
+        }
+
+        @Override
+        void replace(List<Book> books) {
+            mAdapter.replaceAll(books);
+        }
+
+        @Override
+        void append(List<Book> page, int recycled) {
+            int firstVisible = mListView.getFirstVisiblePosition();
+            View firstChild = mListView.getChildAt(0);
+            int top = firstChild == null ? 0 : firstChild.getTop();
+            mAdapter.setNotifyOnChange(false);
+            mAdapter.addAll(page);
+            for (int i = 0; i < recycled; i++) {
+                mAdapter.remove(mAdapter.getItem(0));
+            }
+            mAdapter.notifyDataSetChanged();
+            mListView.setSelectionFromTop(Math.max(0, firstVisible - recycled), top);
+        }
+
+        @Override
+        void scrollBy(int pixels) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                mListView.scrollListBy(pixels);
+            } else {
+                // Without animation, the list moves on the next frame
+                mListView.smoothScrollBy(pixels, 0);
+            }
+        }
+    }
+
+    /** The RecyclerView and its adapter, as used by {@link BooksActivity} */
+    private static class RecyclerViewHost extends Host {
+        private final RecyclerView mRecyclerView;
+        private final LinearLayoutManager mLayoutManager;
+        private final BookRecyclerAdapter mAdapter;
+
+        RecyclerViewHost(Activity activity) {
+            mRecyclerView = new RecyclerView(activity);
+            mLayoutManager = new LinearLayoutManager(activity);
+            mRecyclerView.setLayoutManager(mLayoutManager);
+            mAdapter = new BookRecyclerAdapter(activity) {
+                @Override
+                public void onBindViewHolder(ViewHolder holder, int position) {
+                    mBinds++;
+                    super.onBindViewHolder(holder, position);
+                }
+            };
+            mRecyclerView.setAdapter(mAdapter);
+        }
+
+        @Override
+        View getView() {
+            return mRecyclerView;
+        }
+
+        @Override
+        void replace(List<Book> books) {
+            mAdapter.replaceAll(books);
+        }
+
+        @Override
+        void append(List<Book> page, int recycled) {
+            int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+            View firstChild = mLayoutManager.findViewByPosition(firstVisible);
+            int top = firstChild == null ? 0 : firstChild.getTop();
+            mAdapter.append(page);
+            mAdapter.removeRange(0, recycled);
+            mLayoutManager.scrollToPositionWithOffset(Math.max(0, firstVisible - recycled), top);
+        }
+
+        @Override
+        void scrollBy(int pixels) {
+            mRecyclerView.scrollBy(0, pixels);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Latency benchmark of the searches of the local {@link BooksDatabase}, filled with 10k,
+ * 100k and 1M books. The median and the maximum time of each query are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LocalSearchBenchmarkTest {
+
+    private static final String LOG_TAG = LocalSearchBenchmarkTest.class.getSimpleName();
+
+    /** Books stored by a single transaction while the database is filled */
+    private static final int BATCH_SIZE = 10000;
+
+    private static final int RUNS = 21;
+
+    /** Words of the titles, so that the queries match a few or many books */
+    private static final String[] WORDS = {"history", "garden", "river", "night", "winter",
+            "machine", "ocean", "silence", "empire", "letters", "journey", "kitchen", "stars",
+            "mountain", "secret", "island", "music", "shadow", "science", "city"};
+
+    /** A word of every twentieth title, a word of two titles, an author, a prefix */
+    private static final String[] QUERIES = {"garden", "volume 4242", "author 17", "myst"};
+
+    @Test
+    public void searchTenThousandBooks() {
+        benchmark(10000);
+    }
+
+    @Test
+    public void searchHundredThousandBooks() {
+        benchmark(100000);
+    }
+
+    @Test
+    public void searchMillionBooks() {
+        benchmark(1000000);
+    }
+
+    private void benchmark(int bookCount) {
+        Context context = InstrumentationRegistry.getTargetContext();
+        String name = "benchmark-" + bookCount + ".db";
+        context.deleteDatabase(name);
+        BooksDatabase database = new BooksDatabase(context, name);
+        try {
+            long fillStart = System.nanoTime();
+            fill(database, bookCount);
+            Log.i(LOG_TAG, bookCount + " books stored in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fillStart) + " ms");
+
+            for (String query : QUERIES) {
+                long[] times = new long[RUNS];
+                int found = 0;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    found = database.searchBooks(query).size();
+                    times[run] = System.nanoTime() - start;
+                }
+                Arrays.sort(times);
+                Log.i(LOG_TAG, bookCount + " books, \"" + query + "\": " + found + " found, median "
+                        + TimeUnit.NANOSECONDS.toMicros(times[RUNS / 2]) + " us, max "
+                        + TimeUnit.NANOSECONDS.toMicros(times[RUNS - 1]) + " us");
+                assertTrue(found > 0);
+            }
+        } finally {
+            database.close();
+            context.deleteDatabase(name);
+        }
+    }
+
+    private static void fill(BooksDatabase database, int bookCount) {
+        List<Book> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < bookCount; i++) {
+            String title = WORDS[i % WORDS.length] + " and " + WORDS[(i / WORDS.length) % WORDS.length]
+                    + (i % 1000 == 0 ? " mystery" : "") + ", volume " + (i % 5000);
+            batch.add(new Book("volume" + i, title,
+                    new String[]{"Author " + (i % 500)}, null));
+            if (batch.size() == BATCH_SIZE) {
+                database.storeBooks(batch);
+                batch.clear();
+            }
+        }
+        database.storeBooks(batch);
+    }
+}
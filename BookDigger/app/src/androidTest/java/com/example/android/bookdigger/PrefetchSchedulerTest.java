@@ -0,0 +1,132 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the {@link PrefetchScheduler} against a {@link FaultInjectingServer}
+ * serving generated pages with an injected latency: the time to display the next page is
+ * measured with and without prefetch.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PrefetchSchedulerTest {
+
+    private static final String LOG_TAG = PrefetchSchedulerTest.class.getSimpleName();
+
+    private static final long LATENCY_MILLIS = 300;
+
+    private static final int PAGE_SIZE = 20;
+
+    private static final int TOTAL_ITEMS = 100;
+
+    /** Time the prefetches are given to complete */
+    private static final long PREFETCH_TIMEOUT_MILLIS = 5000;
+
+    private FaultInjectingServer mServer;
+
+    private Context mContext;
+
+    private PrefetchScheduler mScheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FaultInjectingServer();
+        mServer.servePages(TOTAL_ITEMS, 0, LATENCY_MILLIS, 0);
+        mContext = InstrumentationRegistry.getTargetContext();
+        mScheduler = new PrefetchScheduler(mContext, mServer.baseUrl());
+        ResilientFetcher.reset();
+        ResilientFetcher.setHedgingEnabled(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mScheduler.shutdown();
+        mServer.close();
+        ResilientFetcher.setHedgingEnabled(true);
+    }
+
+    @Test
+    public void prefetchedNextPageIsDisplayedWithoutWaiting() throws Exception {
+        // Without prefetch the next page waits for the network
+        String withoutPrefetch = uniqueQuery();
+        loadPage(withoutPrefetch, 0);
+        long coldMillis = timeLoadPage(withoutPrefetch, PAGE_SIZE);
+
+        // With prefetch it's already in the cache when the next button is pressed
+        String withPrefetch = uniqueQuery();
+        loadPage(withPrefetch, 0);
+        mScheduler.schedule(withPrefetch, 0, PAGE_SIZE, TOTAL_ITEMS);
+        awaitCached(withPrefetch, PAGE_SIZE);
+        int requests = mServer.getRequestCount();
+        long prefetchedMillis = timeLoadPage(withPrefetch, PAGE_SIZE);
+
+        Log.i(LOG_TAG, "Next page displayed in " + coldMillis + " ms without prefetch, "
+                + prefetchedMillis + " ms with prefetch");
+        assertTrue(coldMillis >= LATENCY_MILLIS);
+        assertTrue(prefetchedMillis < LATENCY_MILLIS);
+        assertEquals(requests, mServer.getRequestCount());
+    }
+
+    @Test
+    public void noPrefetchPastTheLastResult() throws Exception {
+        String query = uniqueQuery();
+        mScheduler.schedule(query, TOTAL_ITEMS - PAGE_SIZE, PAGE_SIZE, TOTAL_ITEMS);
+        awaitCached(query, TOTAL_ITEMS - 2 * PAGE_SIZE);
+
+        // Only the previous page was requested
+        assertEquals(1, mServer.getRequestCount());
+        assertFalse(BooksLoader.isPageCached(mContext, query, TOTAL_ITEMS, PAGE_SIZE));
+    }
+
+    @Test
+    public void cancelledPrefetchesAreNotStored() throws Exception {
+        String query = uniqueQuery();
+        mScheduler.schedule(query, PAGE_SIZE, PAGE_SIZE, TOTAL_ITEMS);
+        // A new search starts while the prefetches are in flight
+        mScheduler.cancelAll();
+        SystemClock.sleep(2 * LATENCY_MILLIS);
+
+        assertFalse(BooksLoader.isPageCached(mContext, query, 2 * PAGE_SIZE, PAGE_SIZE));
+        assertFalse(BooksLoader.isPageCached(mContext, query, 0, PAGE_SIZE));
+    }
+
+    private BooksModel loadPage(String query, int startIndex) throws Exception {
+        return BooksLoader.loadPage(mContext, mServer.baseUrl(), query, startIndex, PAGE_SIZE,
+                new BooksRequestRegistry.Ticket());
+    }
+
+    /** Return the time taken to load the page, as the next button does */
+    private long timeLoadPage(String query, int startIndex) throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        BooksModel booksModel = loadPage(query, startIndex);
+        long millis = SystemClock.elapsedRealtime() - start;
+        assertEquals("Book " + startIndex, booksModel.getBooks().get(0).getTitle());
+        return millis;
+    }
+
+    /** Wait for the page to be in the cache */
+    private void awaitCached(String query, int startIndex) {
+        long deadline = SystemClock.elapsedRealtime() + PREFETCH_TIMEOUT_MILLIS;
+        while (!BooksLoader.isPageCached(mContext, query, startIndex, PAGE_SIZE)) {
+            if (SystemClock.elapsedRealtime() > deadline) {
+                fail("The page at " + startIndex + " wasn't prefetched");
+            }
+            SystemClock.sleep(20);
+        }
+    }
+
+    /** Return a search input of its own, so that the cache of another test isn't hit */
+    private static String uniqueQuery() {
+        return "prefetch" + System.nanoTime();
+    }
+}
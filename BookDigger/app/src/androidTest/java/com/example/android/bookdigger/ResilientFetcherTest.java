@@ -0,0 +1,250 @@
+package com.example.android.bookdigger;
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the {@link ResilientFetcher} against a {@link FaultInjectingServer}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResilientFetcherTest {
+
+    private FaultInjectingServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FaultInjectingServer();
+        ResilientFetcher.reset();
+        ResilientFetcher.setHedgingEnabled(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+        ResilientFetcher.reset();
+        ResilientFetcher.setHedgingEnabled(true);
+        ResilientFetcher.setHedgeDelay(ResilientFetcher.HEDGE_DELAY_P95);
+        ResilientFetcher.setCircuitOpenDelay(30 * 1000);
+    }
+
+    /**
+     * Handle of a request cancelled as soon as it's opened, or before if asked.
+     */
+    private static class CancellingHandle implements BooksUtils.RequestHandle {
+        private volatile boolean mCancelled;
+
+        CancellingHandle(boolean cancelled) {
+            mCancelled = cancelled;
+        }
+
+        @Override
+        public boolean onRequestOpened(BooksTransport.Response response) {
+            boolean cancelled = mCancelled;
+            mCancelled = true;
+            return !cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    /** Open the circuit against a failing server, and wait until it lets a probe through */
+    private void openCircuitUntilProbe() throws Exception {
+        ResilientFetcher.setCircuitOpenDelay(200);
+        mServer.setDefault(503, "");
+        for (int i = 0; i < 2; i++) {
+            try {
+                ResilientFetcher.fetch(mServer.url(), null);
+                fail();
+            } catch (BooksFetchException expected) {
+                // The server keeps failing
+            }
+        }
+        assertTrue(ResilientFetcher.isCircuitOpen());
+        SystemClock.sleep(300);
+    }
+
+    @Test
+    public void retriesTransientFailures() throws Exception {
+        mServer.enqueue(503, 0, "");
+        mServer.enqueue(429, 0, "");
+        mServer.enqueue(200, 0, FaultInjectingServer.ONE_BOOK);
+
+        BooksModel booksModel = ResilientFetcher.fetch(mServer.url(), null);
+
+        assertNotNull(booksModel);
+        assertEquals(1, booksModel.getBooks().size());
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() throws Exception {
+        mServer.enqueue(404, 0, "");
+        try {
+            ResilientFetcher.fetch(mServer.url(), null);
+            fail("A 404 must be reported");
+        } catch (BooksFetchException e) {
+            assertEquals(404, e.getResponseCode());
+        }
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void reportsFailureAfterLastAttempt() throws Exception {
+        mServer.setDefault(500, "");
+        try {
+            ResilientFetcher.fetch(mServer.url(), null);
+            fail("The failure must be reported, not turned into an empty result");
+        } catch (BooksFetchException e) {
+            assertTrue(e.isTransient());
+        }
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void emptyResultIsNotAFailure() throws Exception {
+        mServer.enqueue(200, 0, FaultInjectingServer.NO_BOOK);
+        assertNull(ResilientFetcher.fetch(mServer.url(), null));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void keepsTheIdOfTheItems() throws Exception {
+        mServer.enqueue(200, 0, "{\"totalItems\": 2, \"items\": ["
+                + "{\"id\": \"first\", \"volumeInfo\": {\"title\": \"One\"}},"
+                + "{\"volumeInfo\": {\"title\": \"Two\"}, \"id\": \"second\"}]}");
+
+        List<Book> books = ResilientFetcher.fetch(mServer.url(), null).getBooks();
+
+        assertEquals("first", books.get(0).getId());
+        assertEquals("second", books.get(1).getId());
+    }
+
+    @Test
+    public void nonNumericTotalItemsIsNotACrash() throws Exception {
+        mServer.enqueue(200, 0, "{\"totalItems\": \"many\"}");
+        assertNull(ResilientFetcher.fetch(mServer.url(), null));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void opensCircuitAfterRepeatedFailures() throws Exception {
+        mServer.setDefault(503, "");
+        for (int i = 0; i < 2; i++) {
+            try {
+                ResilientFetcher.fetch(mServer.url(), null);
+                fail();
+            } catch (BooksFetchException expected) {
+                // The server keeps failing
+            }
+        }
+        assertTrue(ResilientFetcher.isCircuitOpen());
+        int requestCount = mServer.getRequestCount();
+
+        // While the circuit is open the requests fail without reaching the server
+        long start = SystemClock.elapsedRealtime();
+        try {
+            ResilientFetcher.fetch(mServer.url(), null);
+            fail();
+        } catch (BooksFetchException expected) {
+            // Failed right away
+        }
+        assertTrue(SystemClock.elapsedRealtime() - start < 100);
+        assertEquals(requestCount, mServer.getRequestCount());
+    }
+
+    @Test
+    public void hedgesSlowRequest() throws Exception {
+        ResilientFetcher.setHedgingEnabled(true);
+        ResilientFetcher.setHedgeDelay(200);
+        int hedgeWins = ResilientFetcher.getHedgeWinCount();
+        mServer.enqueue(200, 5000, FaultInjectingServer.ONE_BOOK);
+        mServer.enqueue(200, 0, FaultInjectingServer.ONE_BOOK);
+
+        long start = SystemClock.elapsedRealtime();
+        BooksModel booksModel = ResilientFetcher.fetch(mServer.url(), null);
+
+        assertNotNull(booksModel);
+        assertTrue(SystemClock.elapsedRealtime() - start < 2000);
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(hedgeWins + 1, ResilientFetcher.getHedgeWinCount());
+    }
+
+    @Test
+    public void prefetchIsHedgedOnThePrefetchPool() throws Exception {
+        ResilientFetcher.setHedgingEnabled(true);
+        ResilientFetcher.setHedgeDelay(200);
+        int hedges = ResilientFetcher.getHedgeCount();
+        mServer.enqueue(200, 1000, FaultInjectingServer.ONE_BOOK);
+        mServer.enqueue(200, 0, FaultInjectingServer.ONE_BOOK);
+
+        // The single thread of the prefetch pool makes the first request: the hedged one
+        // is queued behind it instead of running on a thread of its own
+        final BooksModel[] booksModel = new BooksModel[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        FetchScheduler.getInstance().submit(FetchScheduler.POOL_PREFETCH,
+                new FetchScheduler.Task(FetchScheduler.PRIORITY_LOW) {
+                    @Override
+                    protected void execute() {
+                        try {
+                            booksModel[0] = ResilientFetcher.fetch(mServer.url(), null);
+                        } catch (IOException e) {
+                            // booksModel stays null
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNotNull(booksModel[0]);
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(hedges, ResilientFetcher.getHedgeCount());
+    }
+
+    @Test
+    public void cancelledProbeLetsTheNextRequestProbe() throws Exception {
+        openCircuitUntilProbe();
+
+        // The probe is cancelled while the server fails it
+        assertNull(ResilientFetcher.fetch(mServer.url(), null, new CancellingHandle(false)));
+
+        mServer.enqueue(200, 0, FaultInjectingServer.ONE_BOOK);
+        BooksModel booksModel = ResilientFetcher.fetch(mServer.url(), null);
+        assertNotNull(booksModel);
+        assertFalse(ResilientFetcher.isCircuitOpen());
+    }
+
+    @Test
+    public void cancelledProbeDoesNotCloseTheCircuit() throws Exception {
+        openCircuitUntilProbe();
+
+        // The probe is cancelled before it's read
+        assertNull(ResilientFetcher.fetch(mServer.url(), null, new CancellingHandle(true)));
+        int requestCount = mServer.getRequestCount();
+
+        // The next request is the probe: its failure opens the circuit again, without retry
+        try {
+            ResilientFetcher.fetch(mServer.url(), null);
+            fail();
+        } catch (BooksFetchException expected) {
+            // The server keeps failing
+        }
+        assertEquals(requestCount + 1, mServer.getRequestCount());
+        assertTrue(ResilientFetcher.isCircuitOpen());
+    }
+}
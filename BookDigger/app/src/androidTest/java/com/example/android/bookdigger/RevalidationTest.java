@@ -0,0 +1,131 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the revalidation of the cached pages with conditional requests
+ * against a {@link FaultInjectingServer} counting its full and 304 responses.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RevalidationTest {
+
+    /** Time the background revalidation is given to complete */
+    private static final long REVALIDATION_TIMEOUT_MILLIS = 5000;
+
+    private static final String TWO_BOOKS = "{\"totalItems\": 2, \"items\": ["
+            + "{\"volumeInfo\": {\"title\": \"Stub\", \"authors\": [\"Stub Author\"]}}, "
+            + "{\"volumeInfo\": {\"title\": \"Second stub\", \"authors\": [\"Stub Author\"]}}]}";
+
+    private FaultInjectingServer mServer;
+
+    private Context mContext;
+
+    /** Search input of the test, unique so that the cache of a former run isn't hit */
+    private String mSearchInput;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FaultInjectingServer();
+        mContext = InstrumentationRegistry.getTargetContext();
+        mSearchInput = "revalidation" + System.nanoTime();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+    }
+
+    @Test
+    public void notModifiedServesTheStoredPage() throws Exception {
+        mServer.serveWithEtag(FaultInjectingServer.ONE_BOOK, "\"v1\"", "max-age=0");
+
+        BooksResponse first = ResilientFetcher.fetch(mServer.url(), null, null);
+        BooksResponse second = ResilientFetcher.fetch(mServer.url(), first, null);
+
+        assertEquals("\"v1\"", first.getEtag());
+        assertFalse(first.isNotModified());
+        assertTrue(second.isNotModified());
+        // The stored page is served as it is, neither downloaded nor parsed again
+        assertSame(first.getBooksModel(), second.getBooksModel());
+        assertEquals(1, mServer.getFullResponseCount());
+        assertEquals(1, mServer.getNotModifiedCount());
+    }
+
+    @Test
+    public void stalePageIsServedWhileRevalidated() throws Exception {
+        mServer.serveWithEtag(FaultInjectingServer.ONE_BOOK, "\"v1\"", "max-age=0, stale-while-revalidate=60");
+
+        BooksModel first = loadPage();
+        BooksModel second = loadPage();
+
+        // The stale page is served at once, the conditional request runs in the background
+        assertSame(first, second);
+        awaitNotModifiedCount(1);
+        assertEquals(1, mServer.getFullResponseCount());
+    }
+
+    @Test
+    public void changedPageReplacesTheStoredOne() throws Exception {
+        mServer.serveWithEtag(FaultInjectingServer.ONE_BOOK, "\"v1\"", "max-age=0, stale-while-revalidate=0");
+        assertEquals(1, loadPage().getBooks().size());
+
+        // Without stale-while-revalidate the page is revalidated before being served
+        mServer.serveWithEtag(TWO_BOOKS, "\"v2\"", "max-age=60");
+        assertEquals(2, loadPage().getBooks().size());
+        assertEquals(2, mServer.getFullResponseCount());
+        assertEquals(0, mServer.getNotModifiedCount());
+
+        // Fresh now: served from the cache without request
+        assertEquals(2, loadPage().getBooks().size());
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void noStorePageIsFetchedAgain() throws Exception {
+        mServer.serveWithEtag(FaultInjectingServer.ONE_BOOK, "\"v1\"", "no-store");
+        assertEquals(1, loadPage().getBooks().size());
+        assertEquals(1, loadPage().getBooks().size());
+
+        // Nothing was stored to revalidate: both are full requests
+        assertEquals(2, mServer.getFullResponseCount());
+        assertEquals(0, mServer.getNotModifiedCount());
+    }
+
+    @Test
+    public void truncatedPageIsNotStored() throws Exception {
+        // The second item is cut in the middle of its title
+        mServer.serveWithEtag("{\"totalItems\": 2, \"items\": [{\"volumeInfo\": {\"title\": \"Stub\"}}, "
+                + "{\"volumeInfo\": {\"title\": }]}", "\"v1\"", "max-age=60");
+        assertEquals(1, loadPage().getBooks().size());
+        assertEquals(1, loadPage().getBooks().size());
+
+        // The books read before the error are shown, but the page is fetched again
+        assertEquals(2, mServer.getFullResponseCount());
+        assertEquals(0, mServer.getNotModifiedCount());
+    }
+
+    private BooksModel loadPage() throws Exception {
+        return BooksLoader.loadPage(mContext, mServer.baseUrl(), mSearchInput, 0, 10,
+                new BooksRequestRegistry.Ticket());
+    }
+
+    /** Wait for the server to have answered the given number of 304s */
+    private void awaitNotModifiedCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + REVALIDATION_TIMEOUT_MILLIS;
+        while (mServer.getNotModifiedCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The page wasn't revalidated in the background");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.android.bookdigger;
+
+import android.app.LoaderManager;
+import android.content.Context;
+import android.content.Loader;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the {@link ScheduledLoader}s restarted by the LoaderManager of
+ * the {@link BooksActivity}, as the instant search and the paging do.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScheduledLoaderTest {
+
+    /** Id not used by the activity */
+    private static final int LOADER_ID = 100;
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    @Rule
+    public ActivityTestRule<BooksActivity> mActivityRule = new ActivityTestRule<>(BooksActivity.class);
+
+    /**
+     * Loader whose load returns its number once released.
+     */
+    private static class BlockingLoader extends ScheduledLoader<Integer> {
+        private final int mNumber;
+        private final CountDownLatch mRelease;
+
+        BlockingLoader(Context context, int number, CountDownLatch release) {
+            super(context, FetchScheduler.PRIORITY_IMMEDIATE);
+            mNumber = number;
+            mRelease = release;
+        }
+
+        @Override
+        public Integer loadInBackground() {
+            try {
+                mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return mNumber;
+        }
+    }
+
+    @Test
+    public void quickRestartsDeliverTheLastLoad() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final int[] created = new int[1];
+        final int[] delivered = new int[1];
+        final LoaderManager.LoaderCallbacks<Integer> callbacks = new LoaderManager.LoaderCallbacks<Integer>() {
+            @Override
+            public Loader<Integer> onCreateLoader(int id, Bundle args) {
+                created[0]++;
+                return new BlockingLoader(mActivityRule.getActivity(), created[0], release);
+            }
+
+            @Override
+            public void onLoadFinished(Loader<Integer> loader, Integer number) {
+                delivered[0] = number;
+                finished.countDown();
+            }
+
+            @Override
+            public void onLoaderReset(Loader<Integer> loader) {
+            }
+        };
+
+        // The first load is running when the two next restarts come
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                LoaderManager loaderManager = mActivityRule.getActivity().getLoaderManager();
+                for (int i = 0; i < 3; i++) {
+                    loaderManager.restartLoader(LOADER_ID, null, callbacks);
+                }
+            }
+        });
+        release.countDown();
+
+        assertTrue("The restarted loader never delivered", finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertEquals(3, created[0]);
+        assertEquals(3, delivered[0]);
+    }
+}
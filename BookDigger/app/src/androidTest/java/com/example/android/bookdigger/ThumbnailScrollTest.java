@@ -0,0 +1,177 @@
+package com.example.android.bookdigger;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.ViewGroup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Flings a list of 500 books down and back up while their thumbnails are served by a
+ * {@link FaultInjectingServer}, and logs the statistics of the {@link ThumbnailLoader}:
+ * decodes, load time, memory cache hit rate and peak bitmap memory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ThumbnailScrollTest {
+
+    private static final String LOG_TAG = ThumbnailScrollTest.class.getSimpleName();
+
+    private static final int BOOK_COUNT = 500;
+
+    /** Bigger than the thumbnail view, as the covers of the Books API are */
+    private static final int IMAGE_WIDTH = 256;
+    private static final int IMAGE_HEIGHT = 384;
+
+    private static final int FLING_VELOCITY = 6000;
+
+    /** Time the last thumbnail loads are given once the list is idle */
+    private static final long SETTLE_MILLIS = 1000;
+
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    /** Upper bound of the memory cache of the {@link ThumbnailLoader} */
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    @Rule
+    public ActivityTestRule<BooksActivity> mActivityRule = new ActivityTestRule<>(BooksActivity.class);
+
+    private FaultInjectingServer mServer;
+
+    private RecyclerView mRecyclerView;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FaultInjectingServer();
+        Bitmap image = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+        image.eraseColor(Color.DKGRAY);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        image.compress(Bitmap.CompressFormat.PNG, 100, png);
+        mServer.serveImage(png.toByteArray());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+    }
+
+    @Test
+    public void flingThroughFiveHundredBooks() throws Exception {
+        final Activity activity = mActivityRule.getActivity();
+        final List<Book> books = new BookColumns(BOOK_COUNT);
+        for (int i = 0; i < BOOK_COUNT; i++) {
+            // A url per book: every row downloads and decodes its own thumbnail
+            books.add(new Book("volume" + i, "Book " + i,
+                    new String[]{"Author " + (i % 7)}, mServer.thumbnailUrl(i)));
+        }
+        final BookRecyclerAdapter adapter = new BookRecyclerAdapter(activity);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecyclerView = new RecyclerView(activity);
+                mRecyclerView.setLayoutManager(new LinearLayoutManager(activity));
+                mRecyclerView.setAdapter(adapter);
+                // The thumbnail loads follow the scroll state, as in BooksActivity
+                mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                    @Override
+                    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                        if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+                            ThumbnailLoader.getInstance(activity).pause();
+                        } else {
+                            ThumbnailLoader.getInstance(activity).resume();
+                        }
+                    }
+                });
+                activity.addContentView(mRecyclerView, new ViewGroup.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+                adapter.replaceAll(books);
+            }
+        });
+        awaitItemCount(adapter, BOOK_COUNT);
+
+        ThumbnailLoader loader = ThumbnailLoader.getInstance(activity);
+        int decodesBefore = loader.getDecodeCount();
+        flingToTheEnd(FLING_VELOCITY);
+        flingToTheEnd(-FLING_VELOCITY);
+        SystemClock.sleep(SETTLE_MILLIS);
+
+        int decodes = loader.getDecodeCount() - decodesBefore;
+        Log.i(LOG_TAG, BOOK_COUNT + " books flung: " + mServer.getImageCount() + " images served, "
+                + decodes + " decoded from " + loader.getAverageDecodedBytes() / 1024
+                + " KB on average, loaded in " + loader.getAverageLoadMicros() + " us on average, "
+                + Math.round(loader.getMemoryHitRate() * 100) + "% memory cache hits, peak "
+                + loader.getPeakMemoryBytes() / 1024 + " KB of bitmaps");
+        assertTrue(decodes > 0);
+        assertTrue(loader.getPeakMemoryBytes() <= MEMORY_CACHE_BYTES);
+    }
+
+    /** Fling the list until it can't scroll further in the direction of the velocity */
+    private void flingToTheEnd(final int velocity) {
+        final int direction = velocity > 0 ? 1 : -1;
+        final boolean[] canScroll = {true};
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while (canScroll[0]) {
+            assertTrue("The list didn't reach its end", SystemClock.elapsedRealtime() < deadline);
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mRecyclerView.fling(0, velocity);
+                }
+            });
+            awaitIdle();
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    canScroll[0] = mRecyclerView.canScrollVertically(direction);
+                }
+            });
+        }
+    }
+
+    /** Wait for the fling to stop */
+    private void awaitIdle() {
+        final boolean[] idle = {false};
+        while (!idle[0]) {
+            SystemClock.sleep(50);
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    idle[0] = mRecyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE;
+                }
+            });
+        }
+    }
+
+    /** Wait for the adapter to hold the books, the diff being computed in the background */
+    private static void awaitItemCount(final BookRecyclerAdapter adapter, int count) {
+        final int[] itemCount = {0};
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while (itemCount[0] != count) {
+            assertTrue("The books weren't displayed", SystemClock.elapsedRealtime() < deadline);
+            SystemClock.sleep(50);
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    itemCount[0] = adapter.getItemCount();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.android.bookdigger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary of the author names of a result set, held by its {@link BookColumns}. Every
+ * distinct name is stored once and identified by an int id, so that the books only keep the
+ * ids of their authors and the names are joined when they are displayed. The dictionary
+ * lives as long as its result set.
+ * The name Strings are shared between the dictionaries through a bounded table of the
+ * names interned last, so that a prolific author is a single String across the pages.
+ * Not thread safe: it can be read from several threads once it isn't modified anymore.
+ */
+public final class AuthorDictionary {
+
+    /** Text displayed for a book without author */
+    public static final String NO_AUTHOR = "No author";
+
+    /** Separator between the authors of a book */
+    private static final String SEPARATOR = ", ";
+
+    /** Number of names kept by the shared table */
+    private static final int SHARED_NAMES = 4096;
+
+    /** Names interned last by any dictionary, the least recently used first */
+    private static final Map<String, String> sSharedNames = new LinkedHashMap<String, String>(
+            SHARED_NAMES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > SHARED_NAMES;
+        }
+    };
+
+    /** Number of names found in the shared table, i.e. not stored again */
+    private static long sSharedHitCount;
+
+    /** Id of each name */
+    private final Map<String, Integer> mIds = new HashMap<>();
+
+    /** Name of each id */
+    private final List<String> mNames = new ArrayList<>();
+
+    /**
+     * Return the id of the given author name, adding it to the dictionary if needed.
+     */
+    public int intern(String name) {
+        Integer id = mIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        name = share(name);
+        int newId = mNames.size();
+        mNames.add(name);
+        mIds.put(name, newId);
+        return newId;
+    }
+
+    /**
+     * Return the name of the given author id.
+     */
+    public String getName(int id) {
+        return mNames.get(id);
+    }
+
+    /**
+     * Join the names of count authors, read from ids starting at offset, in a comma separated
+     * String for display. Return {@link #NO_AUTHOR} when there is none.
+     */
+    public String join(int[] ids, int offset, int count) {
+        if (count == 0) {
+            return NO_AUTHOR;
+        }
+        // A single author doesn't need a StringBuilder
+        if (count == 1) {
+            return getName(ids[offset]);
+        }
+        StringBuilder authors = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                authors.append(SEPARATOR);
+            }
+            authors.append(getName(ids[offset + i]));
+        }
+        return authors.toString();
+    }
+
+    /** Return the number of distinct author names */
+    public int size() {
+        return mNames.size();
+    }
+
+    /**
+     * Join the given author names in a comma separated String for display. Return
+     * {@link #NO_AUTHOR} when there is none.
+     */
+    public static String join(String[] names) {
+        if (names.length == 0) {
+            return NO_AUTHOR;
+        }
+        if (names.length == 1) {
+            return names[0];
+        }
+        StringBuilder authors = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                authors.append(SEPARATOR);
+            }
+            authors.append(names[i]);
+        }
+        return authors.toString();
+    }
+
+    /**
+     * Return the String of the shared table equal to the given name, adding it if there is none.
+     */
+    static String share(String name) {
+        synchronized (sSharedNames) {
+            String shared = sSharedNames.get(name);
+            if (shared != null) {
+                sSharedHitCount++;
+                return shared;
+            }
+            sSharedNames.put(name, name);
+            return name;
+        }
+    }
+
+    /** Return the number of names found in the shared table, i.e. not stored again */
+    public static long getSharedHitCount() {
+        synchronized (sSharedNames) {
+            return sSharedHitCount;
+        }
+    }
+}
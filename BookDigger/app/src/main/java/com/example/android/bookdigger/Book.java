@@ -6,38 +6,79 @@ package com.example.android.bookdigger;
  */
 public class Book {
 
+    /** Google Books id of the volume, or null if unknown */
+    private String mId;
+
     /** Title of the book */
     private String mTitle;
 
-    /** Author of the book */
-    private String mAuthor;
+    /** Names of the authors of the book */
+    private String[] mAuthors;
 
     /** Url for the small thumbnail of the book */
     private String mSmallThumbnailUrl;
 
+    /**
+     * Constructs a {@link Book} whose getters are overridden, e.g. a view over a
+     * {@link BookColumns}.
+     */
+    protected Book() {
+    }
+
     /**
      * Constructs a new {@link Book} object.
      *
+     * @param id is the Google Books id of the volume (may be null)
      * @param title is the title of the book
-     * @param author is the author of the book
+     * @param authors are the names of the authors of the book
      * @param smallThumbnailUrl is the url for the image of the book
      */
-    public Book (String title, String author, String smallThumbnailUrl){
+    public Book(String id, String title, String[] authors, String smallThumbnailUrl) {
+        mId = id;
         mTitle = title;
-        mAuthor = author;
+        mAuthors = authors;
         mSmallThumbnailUrl = smallThumbnailUrl;
     }
 
+    /**
+     * Constructs a new {@link Book} object from authors already joined for display: they are
+     * kept as a single entry.
+     *
+     * @param title is the title of the book
+     * @param author is the author of the book
+     * @param smallThumbnailUrl is the url for the image of the book
+     */
+    public Book (String title, String author, String smallThumbnailUrl){
+        this(null, title, author == null || AuthorDictionary.NO_AUTHOR.equals(author)
+                ? new String[0] : new String[]{author}, smallThumbnailUrl);
+    }
+
+    public String getId() {
+        return mId;
+    }
+
     public String getTitle() {
         return mTitle;
     }
 
+    /**
+     * Return the authors joined for display.
+     */
     public String getAuthor() {
-        return mAuthor;
+        return AuthorDictionary.join(mAuthors);
+    }
+
+    /** Return the number of authors of the book */
+    public int getAuthorCount() {
+        return mAuthors.length;
+    }
+
+    /** Return the name of the author at the given position */
+    public String getAuthorName(int position) {
+        return mAuthors[position];
     }
 
     public String getSmallThumbnailUrl() {
         return mSmallThumbnailUrl;
     }
 }
-
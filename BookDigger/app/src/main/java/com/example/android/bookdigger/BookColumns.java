@@ -0,0 +1,485 @@
+package com.example.android.bookdigger;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Compact list of books: the ids, titles and thumbnail urls of every book are stored as UTF-8 in a
+ * single shared byte buffer, addressed by int offset and length arrays, and the ids of their authors
+ * in a shared int buffer, instead of String objects per {@link Book}. The author ids belong to
+ * the {@link AuthorDictionary} of the list, which is dropped or rebuilt with its books.
+ * {@link #get(int)} returns a flyweight {@link Book} view which reads the buffer when its
+ * getters are called, and keeps the Strings it read. The views of the last rows returned are
+ * reused, so that binding the rows of a screen again allocates nothing.
+ * Not thread safe, even to read it: {@link #get(int)} updates the cached views. A list read
+ * by another thread is given its own {@link #snapshot()}.
+ */
+public class BookColumns extends AbstractList<Book> implements RandomAccess {
+
+    // Fields of a book, in the order of the offset and length arrays
+    private static final int ID = 0;
+    private static final int TITLE = 1;
+    private static final int THUMBNAIL = 2;
+    private static final int FIELDS = 3;
+
+    /** Number of views kept by {@link #get(int)}, a few screens of rows (a power of two) */
+    private static final int VIEW_CACHE_SIZE = 64;
+
+    /**
+     * Encoding of the fields: one byte per char of the ASCII ids and urls, where the chars of
+     * a String take two on the runtimes which don't compress them
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** UTF-8 bytes of every field, appended one after the other */
+    private byte[] mBytes;
+
+    /** Number of bytes used in mBytes */
+    private int mByteCount;
+
+    /** Number of bytes of mBytes which belong to removed books */
+    private int mGarbageCount;
+
+    /** Start of each field of each book in mBytes (FIELDS ints per book) */
+    private int[] mStarts;
+
+    /** Length in bytes of each field of each book, -1 for a null field (FIELDS ints per book) */
+    private int[] mLengths;
+
+    /** Names of the authors of the books */
+    private AuthorDictionary mAuthorDictionary = new AuthorDictionary();
+
+    /** mAuthorDictionary ids of the authors of every book, appended one after the other */
+    private int[] mAuthorIds;
+
+    /** Number of ids used in mAuthorIds */
+    private int mAuthorIdCount;
+
+    /** Number of ids of mAuthorIds which belong to removed books */
+    private int mAuthorGarbageCount;
+
+    /** Start of the author ids of each book in mAuthorIds */
+    private int[] mAuthorStarts;
+
+    /** Number of authors of each book */
+    private int[] mAuthorCounts;
+
+    /** Number of books */
+    private int mSize;
+
+    /** Views returned by {@link #get(int)}, at their index modulo VIEW_CACHE_SIZE */
+    private BookView[] mViews;
+
+    /** modCount when the views were cached: they are dropped when the list is modified */
+    private int mViewsModCount;
+
+    /**
+     * Constructs an empty {@link BookColumns}.
+     */
+    public BookColumns() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty {@link BookColumns} sized for the given number of books.
+     */
+    public BookColumns(int capacity) {
+        capacity = Math.max(1, capacity);
+        mBytes = new byte[capacity * 64];
+        mStarts = new int[capacity * FIELDS];
+        mLengths = new int[capacity * FIELDS];
+        mAuthorIds = new int[capacity * 2];
+        mAuthorStarts = new int[capacity];
+        mAuthorCounts = new int[capacity];
+    }
+
+    /**
+     * Flyweight {@link Book} reading its fields from the buffers of a {@link BookColumns}.
+     * A view is only valid until the list is structurally modified.
+     * The fields are read once and kept; as for String.hashCode() a race between two threads
+     * reading the same field only creates it twice.
+     */
+    private static class BookView extends Book {
+        private final BookColumns mColumns;
+        private final int mIndex;
+
+        // Fields already read, null until then
+        private String mId;
+        private String mTitle;
+        private String mAuthor;
+        private String mSmallThumbnailUrl;
+
+        BookView(BookColumns columns, int index) {
+            mColumns = columns;
+            mIndex = index;
+        }
+
+        @Override
+        public String getId() {
+            String id = mId;
+            if (id == null) {
+                id = mColumns.field(mIndex, ID);
+                mId = id;
+            }
+            return id;
+        }
+
+        @Override
+        public String getTitle() {
+            String title = mTitle;
+            if (title == null) {
+                title = mColumns.field(mIndex, TITLE);
+                mTitle = title;
+            }
+            return title;
+        }
+
+        @Override
+        public String getAuthor() {
+            String author = mAuthor;
+            if (author == null) {
+                author = mColumns.mAuthorDictionary.join(mColumns.mAuthorIds,
+                        mColumns.mAuthorStarts[mIndex], mColumns.mAuthorCounts[mIndex]);
+                mAuthor = author;
+            }
+            return author;
+        }
+
+        @Override
+        public int getAuthorCount() {
+            return mColumns.getAuthorCount(mIndex);
+        }
+
+        @Override
+        public String getAuthorName(int position) {
+            return mColumns.getAuthorName(mColumns.getAuthorId(mIndex, position));
+        }
+
+        @Override
+        public String getSmallThumbnailUrl() {
+            String url = mSmallThumbnailUrl;
+            if (url == null) {
+                url = mColumns.field(mIndex, THUMBNAIL);
+                mSmallThumbnailUrl = url;
+            }
+            return url;
+        }
+
+        // Two views of the same row are the same book, so that List.remove(Object) works
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof BookView)) {
+                return false;
+            }
+            BookView view = (BookView) other;
+            return view.mColumns == mColumns && view.mIndex == mIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mColumns) * 31 + mIndex;
+        }
+    }
+
+    @Override
+    public Book get(int index) {
+        checkIndex(index, mSize);
+        BookView[] views = mViews;
+        if (views == null) {
+            views = new BookView[VIEW_CACHE_SIZE];
+            mViews = views;
+            mViewsModCount = modCount;
+        } else if (mViewsModCount != modCount) {
+            Arrays.fill(views, null);
+            mViewsModCount = modCount;
+        }
+        int slot = index & (VIEW_CACHE_SIZE - 1);
+        BookView view = views[slot];
+        if (view == null || view.mIndex != index) {
+            view = new BookView(this, index);
+            views[slot] = view;
+        }
+        return view;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public void add(int index, Book book) {
+        checkIndex(index, mSize + 1);
+        ensureBookCapacity(mSize + 1);
+
+        // Make room for the new book in the offset arrays
+        int slot = index * FIELDS;
+        int moved = (mSize - index) * FIELDS;
+        System.arraycopy(mStarts, slot, mStarts, slot + FIELDS, moved);
+        System.arraycopy(mLengths, slot, mLengths, slot + FIELDS, moved);
+        System.arraycopy(mAuthorStarts, index, mAuthorStarts, index + 1, mSize - index);
+        System.arraycopy(mAuthorCounts, index, mAuthorCounts, index + 1, mSize - index);
+        mSize++;
+        modCount++;
+
+        // The bytes and the author ids are always appended at the end of the buffers
+        if (book instanceof BookView && ((BookView) book).mColumns != this) {
+            // Copy straight from the other buffers, without creating Strings
+            BookView view = (BookView) book;
+            BookColumns other = view.mColumns;
+            for (int field = 0; field < FIELDS; field++) {
+                int from = view.mIndex * FIELDS + field;
+                append(slot + field, other.mBytes, other.mStarts[from], other.mLengths[from]);
+            }
+            // The ids of the other dictionary are translated by name
+            int count = other.mAuthorCounts[view.mIndex];
+            startAuthors(index, count);
+            for (int i = 0; i < count; i++) {
+                appendAuthor(other.getAuthorName(other.getAuthorId(view.mIndex, i)));
+            }
+        } else {
+            append(slot + ID, book.getId());
+            append(slot + TITLE, book.getTitle());
+            append(slot + THUMBNAIL, book.getSmallThumbnailUrl());
+            int count = book.getAuthorCount();
+            startAuthors(index, count);
+            for (int i = 0; i < count; i++) {
+                appendAuthor(book.getAuthorName(i));
+            }
+        }
+    }
+
+    @Override
+    public Book remove(int index) {
+        checkIndex(index, mSize);
+        // The removed book is copied out: a view would point to another book afterwards
+        String[] authors = new String[mAuthorCounts[index]];
+        for (int i = 0; i < authors.length; i++) {
+            authors[i] = getAuthorName(getAuthorId(index, i));
+        }
+        Book removed = new Book(field(index, ID), field(index, TITLE), authors, field(index, THUMBNAIL));
+
+        int slot = index * FIELDS;
+        for (int field = 0; field < FIELDS; field++) {
+            mGarbageCount += Math.max(0, mLengths[slot + field]);
+        }
+        int moved = (mSize - index - 1) * FIELDS;
+        System.arraycopy(mStarts, slot + FIELDS, mStarts, slot, moved);
+        System.arraycopy(mLengths, slot + FIELDS, mLengths, slot, moved);
+        mAuthorGarbageCount += mAuthorCounts[index];
+        System.arraycopy(mAuthorStarts, index + 1, mAuthorStarts, index, mSize - index - 1);
+        System.arraycopy(mAuthorCounts, index + 1, mAuthorCounts, index, mSize - index - 1);
+        mSize--;
+        modCount++;
+
+        // Reclaim the space of the removed books once they are the majority
+        if (mGarbageCount > mByteCount / 2 || mAuthorGarbageCount > mAuthorIdCount / 2) {
+            compact();
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        mSize = 0;
+        mByteCount = 0;
+        mGarbageCount = 0;
+        mAuthorIdCount = 0;
+        mAuthorGarbageCount = 0;
+        mAuthorDictionary = new AuthorDictionary();
+        modCount++;
+    }
+
+    /**
+     * Return a copy of the list which shares nothing with it, so that it can be read by
+     * another thread while this one is used.
+     */
+    BookColumns snapshot() {
+        BookColumns snapshot = new BookColumns(mSize);
+        snapshot.addAll(this);
+        return snapshot;
+    }
+
+    /** Return the number of bytes held by the shared buffer, for footprint measurements */
+    public int getByteCapacity() {
+        return mBytes.length;
+    }
+
+    /** Return the number of distinct author names held by the list, for footprint measurements */
+    public int getAuthorNameCount() {
+        return mAuthorDictionary.size();
+    }
+
+    /** Return the number of authors of the book at the given index */
+    int getAuthorCount(int index) {
+        return mAuthorCounts[index];
+    }
+
+    /** Return the id of the author at the given position of the book at the given index */
+    int getAuthorId(int index, int position) {
+        return mAuthorIds[mAuthorStarts[index] + position];
+    }
+
+    /** Return the name of the given author id */
+    String getAuthorName(int authorId) {
+        return mAuthorDictionary.getName(authorId);
+    }
+
+    private String field(int index, int field) {
+        int slot = index * FIELDS + field;
+        int length = mLengths[slot];
+        return length < 0 ? null : new String(mBytes, mStarts[slot], length, UTF_8);
+    }
+
+    /** Append the UTF-8 bytes of the given value, without the temporary array of getBytes() */
+    private void append(int slot, String value) {
+        if (value == null) {
+            mStarts[slot] = mByteCount;
+            mLengths[slot] = -1;
+            return;
+        }
+        int length = utf8Length(value);
+        ensureByteCapacity(mByteCount + length);
+        byte[] bytes = mBytes;
+        int count = mByteCount;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[count++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[count++] = (byte) (0xC0 | c >> 6);
+                bytes[count++] = (byte) (0x80 | c & 0x3F);
+            } else if (isSurrogatePair(value, i)) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[count++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[count++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // A lone surrogate, as String.getBytes() encodes it
+                bytes[count++] = '?';
+            } else {
+                bytes[count++] = (byte) (0xE0 | c >> 12);
+                bytes[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[count++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        mStarts[slot] = mByteCount;
+        mLengths[slot] = length;
+        mByteCount = count;
+    }
+
+    private void append(int slot, byte[] source, int start, int length) {
+        if (length < 0) {
+            mStarts[slot] = mByteCount;
+            mLengths[slot] = -1;
+            return;
+        }
+        ensureByteCapacity(mByteCount + length);
+        System.arraycopy(source, start, mBytes, mByteCount, length);
+        mStarts[slot] = mByteCount;
+        mLengths[slot] = length;
+        mByteCount += length;
+    }
+
+    /** Return the number of bytes of the given value in UTF-8 */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isSurrogatePair(value, i)) {
+                length += 4;
+                i++;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    /** Make room for the given number of authors of the book at index, appended next */
+    private void startAuthors(int index, int count) {
+        if (mAuthorIdCount + count > mAuthorIds.length) {
+            mAuthorIds = Arrays.copyOf(mAuthorIds,
+                    Math.max(mAuthorIdCount + count, mAuthorIds.length * 2));
+        }
+        mAuthorStarts[index] = mAuthorIdCount;
+        mAuthorCounts[index] = count;
+    }
+
+    private void appendAuthor(String name) {
+        mAuthorIds[mAuthorIdCount++] = mAuthorDictionary.intern(name);
+    }
+
+    /**
+     * Rewrite the buffers with the bytes and the author ids of the remaining books only,
+     * and the dictionary with their authors only.
+     */
+    private void compact() {
+        byte[] bytes = new byte[Math.max(64, mByteCount - mGarbageCount)];
+        int count = 0;
+        for (int slot = 0; slot < mSize * FIELDS; slot++) {
+            int length = mLengths[slot];
+            if (length > 0) {
+                System.arraycopy(mBytes, mStarts[slot], bytes, count, length);
+            }
+            mStarts[slot] = count;
+            count += Math.max(0, length);
+        }
+        mBytes = bytes;
+        mByteCount = count;
+        mGarbageCount = 0;
+
+        AuthorDictionary authorDictionary = new AuthorDictionary();
+        int[] authorIds = new int[Math.max(2, mAuthorIdCount - mAuthorGarbageCount)];
+        int idCount = 0;
+        for (int index = 0; index < mSize; index++) {
+            int start = mAuthorStarts[index];
+            for (int i = 0; i < mAuthorCounts[index]; i++) {
+                authorIds[idCount + i] = authorDictionary.intern(
+                        mAuthorDictionary.getName(mAuthorIds[start + i]));
+            }
+            mAuthorStarts[index] = idCount;
+            idCount += mAuthorCounts[index];
+        }
+        mAuthorDictionary = authorDictionary;
+        mAuthorIds = authorIds;
+        mAuthorIdCount = idCount;
+        mAuthorGarbageCount = 0;
+    }
+
+    private void ensureByteCapacity(int capacity) {
+        if (capacity > mBytes.length) {
+            mBytes = Arrays.copyOf(mBytes, Math.max(capacity, mBytes.length * 2));
+        }
+    }
+
+    private void ensureBookCapacity(int books) {
+        if (books * FIELDS > mStarts.length) {
+            int length = Math.max(books * FIELDS, mStarts.length * 2);
+            mStarts = Arrays.copyOf(mStarts, length);
+            mLengths = Arrays.copyOf(mLengths, length);
+            mAuthorStarts = Arrays.copyOf(mAuthorStarts, length / FIELDS);
+            mAuthorCounts = Arrays.copyOf(mAuthorCounts, length / FIELDS);
+        }
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
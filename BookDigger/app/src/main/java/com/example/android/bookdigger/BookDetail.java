@@ -0,0 +1,103 @@
+package com.example.android.bookdigger;
+
+/**
+ * {@link BookDetail} holds what is only shown once a {@link Book} is opened: its description,
+ * publisher, page count, ISBNs and larger images. It's read from the volume endpoint of the
+ * Books API on demand, never with the list. Immutable.
+ */
+public class BookDetail {
+
+    /** Google Books id of the volume */
+    private final String mId;
+
+    /** Description of the book, which may contain simple HTML tags */
+    private final String mDescription;
+
+    private final String mPublisher;
+
+    /** Publication date as given by the API (a year, a month or a day) */
+    private final String mPublishedDate;
+
+    /** Number of pages, or 0 if unknown */
+    private final int mPageCount;
+
+    private final String mIsbn10;
+
+    private final String mIsbn13;
+
+    // Urls of the images of the volume, from the smallest to the largest (each may be null)
+    private final String mThumbnailUrl;
+    private final String mSmallImageUrl;
+    private final String mMediumImageUrl;
+    private final String mLargeImageUrl;
+
+    /**
+     * Constructs a new {@link BookDetail} object. Every value but the id may be null.
+     *
+     * @param id is the Google Books id of the volume
+     * @param pageCount is the number of pages, or 0 if unknown
+     * @param imageUrls are the thumbnail, small, medium and large image urls
+     */
+    public BookDetail(String id, String description, String publisher, String publishedDate,
+                      int pageCount, String isbn10, String isbn13, String[] imageUrls) {
+        mId = id;
+        mDescription = description;
+        mPublisher = publisher;
+        mPublishedDate = publishedDate;
+        mPageCount = pageCount;
+        mIsbn10 = isbn10;
+        mIsbn13 = isbn13;
+        mThumbnailUrl = imageUrls[0];
+        mSmallImageUrl = imageUrls[1];
+        mMediumImageUrl = imageUrls[2];
+        mLargeImageUrl = imageUrls[3];
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public String getPublisher() {
+        return mPublisher;
+    }
+
+    public String getPublishedDate() {
+        return mPublishedDate;
+    }
+
+    public int getPageCount() {
+        return mPageCount;
+    }
+
+    public String getIsbn10() {
+        return mIsbn10;
+    }
+
+    public String getIsbn13() {
+        return mIsbn13;
+    }
+
+    /**
+     * Return the thumbnail, small, medium and large image urls, each may be null.
+     */
+    public String[] getImageUrls() {
+        return new String[]{mThumbnailUrl, mSmallImageUrl, mMediumImageUrl, mLargeImageUrl};
+    }
+
+    /**
+     * Return the url of the largest image of the volume, or null if it has none.
+     */
+    public String getLargestImageUrl() {
+        if (mLargeImageUrl != null) {
+            return mLargeImageUrl;
+        }
+        if (mMediumImageUrl != null) {
+            return mMediumImageUrl;
+        }
+        return mSmallImageUrl != null ? mSmallImageUrl : mThumbnailUrl;
+    }
+}
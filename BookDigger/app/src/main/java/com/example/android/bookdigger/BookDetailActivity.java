@@ -0,0 +1,156 @@
+package com.example.android.bookdigger;
+
+import android.app.LoaderManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.Loader;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.Html;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows an opened book: its title, authors and thumbnail come with the intent and are
+ * displayed at once, the {@link BookDetail} is loaded by a {@link BookDetailLoader}.
+ */
+public class BookDetailActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<BookDetail> {
+
+    // Extras of the intent: the summary of the book from the list
+    private static final String EXTRA_ID = "id";
+    private static final String EXTRA_TITLE = "title";
+    private static final String EXTRA_AUTHOR = "author";
+    private static final String EXTRA_THUMBNAIL = "thumbnail";
+
+    /** Constant value for the detail loader ID. */
+    private static final int DETAIL_LOADER_ID = 1;
+
+    private String mId;
+
+    private ImageView mCoverView;
+
+    private TextView mPublisherView;
+
+    private TextView mPagesView;
+
+    private TextView mIsbnView;
+
+    private TextView mDescriptionView;
+
+    private ProgressBar mLoadingIndicator;
+
+    /**
+     * Return the intent opening the given book, which must have an id.
+     */
+    public static Intent newIntent(Context context, Book book) {
+        return new Intent(context, BookDetailActivity.class)
+                .putExtra(EXTRA_ID, book.getId())
+                .putExtra(EXTRA_TITLE, book.getTitle())
+                .putExtra(EXTRA_AUTHOR, book.getAuthor())
+                .putExtra(EXTRA_THUMBNAIL, book.getSmallThumbnailUrl());
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_book_detail);
+
+        Intent intent = getIntent();
+        mId = intent.getStringExtra(EXTRA_ID);
+
+        // The summary is already known: show it while the detail loads
+        ((TextView) findViewById(R.id.detail_title)).setText(intent.getStringExtra(EXTRA_TITLE));
+        ((TextView) findViewById(R.id.detail_authors)).setText(intent.getStringExtra(EXTRA_AUTHOR));
+        mCoverView = (ImageView) findViewById(R.id.detail_cover);
+        ThumbnailLoader.getInstance(this).loadCover(intent.getStringExtra(EXTRA_THUMBNAIL), mCoverView);
+
+        mPublisherView = (TextView) findViewById(R.id.detail_publisher);
+        mPagesView = (TextView) findViewById(R.id.detail_pages);
+        mIsbnView = (TextView) findViewById(R.id.detail_isbn);
+        mDescriptionView = (TextView) findViewById(R.id.detail_description);
+        mLoadingIndicator = (ProgressBar) findViewById(R.id.detail_loading_indicator);
+
+        // A retained loader delivers its detail again after a rotation
+        getLoaderManager().initLoader(DETAIL_LOADER_ID, null, this);
+    }
+
+    @Override
+    public Loader<BookDetail> onCreateLoader(int i, Bundle bundle) {
+        return new BookDetailLoader(this, mId);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<BookDetail> loader, BookDetail detail) {
+        mLoadingIndicator.setVisibility(View.GONE);
+        if (detail == null) {
+            boolean failed = ((BookDetailLoader) loader).hasFailed();
+            mDescriptionView.setText(failed ? R.string.error_loading_detail : R.string.no_description);
+            return;
+        }
+        showDetail(detail);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<BookDetail> loader) {
+    }
+
+    /**
+     * Display the given detail below the summary.
+     */
+    private void showDetail(BookDetail detail) {
+        // Replace the thumbnail of the list with the largest image
+        String imageUrl = detail.getLargestImageUrl();
+        if (imageUrl != null) {
+            ThumbnailLoader.getInstance(this).loadCover(imageUrl, mCoverView);
+        }
+
+        List<String> published = new ArrayList<>();
+        if (detail.getPublisher() != null) {
+            published.add(detail.getPublisher());
+        }
+        if (detail.getPublishedDate() != null) {
+            published.add(detail.getPublishedDate());
+        }
+        setOptionalText(mPublisherView, published.isEmpty() ? null : TextUtils.join(", ", published));
+
+        setOptionalText(mPagesView, detail.getPageCount() > 0
+                ? getString(R.string.detail_pages, detail.getPageCount()) : null);
+
+        String isbn = detail.getIsbn13() != null ? detail.getIsbn13() : detail.getIsbn10();
+        setOptionalText(mIsbnView, isbn != null ? getString(R.string.detail_isbn, isbn) : null);
+
+        // The description of the API contains simple HTML tags (<p>, <b>, <i>, <br>)
+        if (detail.getDescription() != null) {
+            mDescriptionView.setText(fromHtml(detail.getDescription()));
+        } else {
+            mDescriptionView.setText(R.string.no_description);
+        }
+    }
+
+    /**
+     * Return the styled text of the given HTML, with the flags of API 24 when they exist.
+     */
+    @SuppressWarnings("deprecation")
+    private static Spanned fromHtml(String html) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Html.fromHtml(html, Html.FROM_HTML_MODE_LEGACY);
+        }
+        return Html.fromHtml(html);
+    }
+
+    /**
+     * Show the given text in the view, or hide the view if the text is null.
+     */
+    private static void setOptionalText(TextView view, String text) {
+        view.setText(text);
+        view.setVisibility(text == null ? View.GONE : View.VISIBLE);
+    }
+}
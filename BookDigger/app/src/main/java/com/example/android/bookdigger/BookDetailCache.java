@@ -0,0 +1,204 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Cache of the {@link BookDetail}s of the opened books, keyed by volume id: a small in-memory
+ * LRU backed by one file per volume in the app cache dir. It's independent of the
+ * {@link BooksCache}, so the pages of the list never carry nor evict the details.
+ */
+public class BookDetailCache {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = BookDetailCache.class.getSimpleName();
+
+    /** Number of details kept in memory */
+    private static final int MEMORY_MAX_DETAILS = 30;
+
+    /** Maximum size of the disk tier, in bytes */
+    private static final long DISK_MAX_BYTES = 1024 * 1024;
+
+    /** Time after which a detail is loaded again (7 days): it rarely changes */
+    private static final long DISK_TTL_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    /** Time during which a stale detail is kept as a fallback for failed requests (30 days) */
+    private static final long DISK_STALE_MILLIS = 30 * 24 * 60 * 60 * 1000L;
+
+    /** Name of the cache sub-directory */
+    private static final String DISK_DIR_NAME = "details";
+
+    /** Version of the format of the disk entries */
+    private static final int FORMAT_VERSION = 1;
+
+    private static BookDetailCache sInstance;
+
+    private final LruCache<String, BookDetail> mMemoryCache;
+
+    private final DiskTier mDiskTier;
+
+    /** Lock guarding every disk operation */
+    private final Object mDiskLock = new Object();
+
+    /**
+     * Return the single {@link BookDetailCache} of the application.
+     */
+    public static synchronized BookDetailCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BookDetailCache(new File(context.getApplicationContext().getCacheDir(), DISK_DIR_NAME));
+        }
+        return sInstance;
+    }
+
+    private BookDetailCache(File diskDir) {
+        mMemoryCache = new LruCache<>(MEMORY_MAX_DETAILS);
+        mDiskTier = new DiskTier(diskDir, DISK_MAX_BYTES, DISK_STALE_MILLIS);
+    }
+
+    /**
+     * Return the cached {@link BookDetail} of the given volume, or null if there is none.
+     * A detail found on disk is promoted to the memory tier.
+     */
+    public BookDetail get(String id) {
+        BookDetail detail = mMemoryCache.get(id);
+        if (detail != null) {
+            return detail;
+        }
+        detail = readFromDisk(id, DISK_TTL_MILLIS);
+        if (detail != null) {
+            mMemoryCache.put(id, detail);
+        }
+        return detail;
+    }
+
+    /**
+     * Return the cached {@link BookDetail} of the given volume even if it's stale, or null
+     * if there is none. Used when the detail can't be loaded from the network.
+     */
+    public BookDetail getStale(String id) {
+        BookDetail detail = mMemoryCache.get(id);
+        if (detail != null) {
+            return detail;
+        }
+        return readFromDisk(id, DISK_STALE_MILLIS);
+    }
+
+    /**
+     * Store the given {@link BookDetail} in both tiers.
+     */
+    public void put(BookDetail detail) {
+        if (detail == null || detail.getId() == null) {
+            return;
+        }
+        mMemoryCache.put(detail.getId(), detail);
+        writeToDisk(detail);
+    }
+
+    /**
+     * Return the given {@link BookDetail} written with the primitives of the
+     * {@link BooksModelCodec}.
+     */
+    static byte[] toByteArray(BookDetail detail) {
+        return write(detail).toByteArray();
+    }
+
+    private static BooksModelCodec.Output write(BookDetail detail) {
+        BooksModelCodec.Output out = new BooksModelCodec.Output();
+        out.writeVarInt(FORMAT_VERSION);
+        out.writeNullableString(detail.getId());
+        out.writeNullableString(detail.getDescription());
+        out.writeNullableString(detail.getPublisher());
+        out.writeNullableString(detail.getPublishedDate());
+        out.writeVarInt(detail.getPageCount());
+        out.writeNullableString(detail.getIsbn10());
+        out.writeNullableString(detail.getIsbn13());
+        String[] imageUrls = detail.getImageUrls();
+        out.writeVarInt(imageUrls.length);
+        for (String imageUrl : imageUrls) {
+            out.writeNullableString(imageUrl);
+        }
+        return out;
+    }
+
+    /**
+     * Read a {@link BookDetail} written by {@link #toByteArray(BookDetail)}.
+     *
+     * @throws IOException if the data is in another format or is corrupted
+     */
+    static BookDetail fromByteArray(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            int version = BooksModelCodec.readVarInt(in);
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown detail format version " + version);
+            }
+            String id = BooksModelCodec.readNullableString(in);
+            String description = BooksModelCodec.readNullableString(in);
+            String publisher = BooksModelCodec.readNullableString(in);
+            String publishedDate = BooksModelCodec.readNullableString(in);
+            int pageCount = BooksModelCodec.readVarInt(in);
+            String isbn10 = BooksModelCodec.readNullableString(in);
+            String isbn13 = BooksModelCodec.readNullableString(in);
+            int imageCount = BooksModelCodec.readVarInt(in);
+            if (imageCount != 4) {
+                throw new IOException("Malformed image count " + imageCount);
+            }
+            String[] imageUrls = new String[imageCount];
+            for (int i = 0; i < imageCount; i++) {
+                imageUrls[i] = BooksModelCodec.readNullableString(in);
+            }
+            return new BookDetail(id, description, publisher, publishedDate, pageCount, isbn10, isbn13, imageUrls);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted detail data", e);
+        }
+    }
+
+    private BookDetail readFromDisk(String id, long maxAgeMillis) {
+        synchronized (mDiskLock) {
+            File file = mDiskTier.fileForKey(id);
+            if (!file.exists()) {
+                return null;
+            }
+
+            // Ignore the entry if it's too old, and drop it if it can't even be a fallback
+            long age = System.currentTimeMillis() - file.lastModified();
+            if (age > DISK_STALE_MILLIS) {
+                mDiskTier.evict(file);
+                return null;
+            }
+            if (age > maxAgeMillis) {
+                return null;
+            }
+
+            RandomAccessFile in = null;
+            try {
+                in = new RandomAccessFile(file, "r");
+                byte[] bytes = new byte[(int) in.length()];
+                in.readFully(bytes);
+                BookDetail detail = fromByteArray(bytes);
+                // Two ids can share the same file name: check that it's really our entry
+                return id.equals(detail.getId()) ? detail : null;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading the cached detail", e);
+                file.delete();
+                return null;
+            } finally {
+                DiskTier.closeQuietly(in);
+            }
+        }
+    }
+
+    private void writeToDisk(BookDetail detail) {
+        BooksModelCodec.Output entry = write(detail);
+        synchronized (mDiskLock) {
+            mDiskTier.write(detail.getId(), entry);
+        }
+    }
+}
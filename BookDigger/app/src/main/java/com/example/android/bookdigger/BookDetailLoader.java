@@ -0,0 +1,143 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Loads the {@link BookDetail} of an opened book from the {@link BookDetailCache}, or from
+ * the volume endpoint of the Books API on the user pool of the {@link FetchScheduler}.
+ */
+public class BookDetailLoader extends ScheduledLoader<BookDetail> {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = BookDetailLoader.class.getSimpleName();
+
+    /** URL of the volumes, followed by the id of the volume */
+    static final String VOLUME_REQUEST_URL = "https://www.googleapis.com/books/v1/volumes/";
+
+    /** Id of the volume */
+    private String mId;
+
+    /** True if the last load failed, as opposed to finding no detail */
+    private volatile boolean mFailed;
+
+    /** Handle of the running request, used to cancel it */
+    private volatile RequestCancellation mCancellation;
+
+    /**
+     * Constructs a new {@link BookDetailLoader}.
+     *
+     * @param context of the activity
+     * @param id is the Google Books id of the volume
+     */
+    public BookDetailLoader(Context context, String id) {
+        // The user is waiting for this one screen
+        super(context, FetchScheduler.PRIORITY_IMMEDIATE);
+        mId = id;
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public BookDetail loadInBackground() {
+        if (mId == null) {
+            return null;
+        }
+
+        RequestCancellation cancellation = new RequestCancellation();
+        mCancellation = cancellation;
+        try {
+            BookDetail detail = loadDetail(getContext(), VOLUME_REQUEST_URL, mId, cancellation);
+            mFailed = false;
+            return detail;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem loading the detail", e);
+            mFailed = true;
+            return null;
+        }
+    }
+
+    /**
+     * Return true if the last load failed, in which case the delivered result is null.
+     */
+    public boolean hasFailed() {
+        return mFailed;
+    }
+
+    /**
+     * Called on the main thread when the running load is superseded: abort its request.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        RequestCancellation cancellation = mCancellation;
+        if (cancellation != null) {
+            cancellation.cancel();
+        }
+    }
+
+    /**
+     * Return the detail of the given volume, from the {@link BookDetailCache} if it has
+     * already been loaded, or from the network otherwise.
+     * This is a blocking call which must be made on a background thread.
+     *
+     * @param context used to get the {@link BookDetailCache}
+     * @param url of the volumes, to which the id is appended
+     * @param id is the Google Books id of the volume
+     * @param handle is used to cancel the request (may be null)
+     * @throws IOException if the request failed and the detail isn't in the cache, even stale
+     */
+    static BookDetail loadDetail(Context context, String url, String id, BooksUtils.RequestHandle handle)
+            throws IOException {
+        BookDetailCache detailCache = BookDetailCache.getInstance(context);
+        BookDetail detail = detailCache.get(id);
+        if (detail != null) {
+            return detail;
+        }
+
+        // A single request: the user opening the book again is the retry
+        Log.d(LOG_TAG, "Fetching the detail of " + id);
+        try {
+            detail = BooksUtils.requestBookDetail(url + id + "?fields=" + BooksUtils.DETAIL_FIELDS_PROJECTION, handle);
+        } catch (IOException e) {
+            BookDetail staleDetail = detailCache.getStale(id);
+            if (staleDetail == null) {
+                throw e;
+            }
+            Log.d(LOG_TAG, "Serving a stale detail after: " + e.getMessage());
+            return staleDetail;
+        }
+        detailCache.put(detail);
+        return detail;
+    }
+
+    /**
+     * Aborts the request of a load when it's cancelled.
+     */
+    private static class RequestCancellation implements BooksUtils.RequestHandle {
+
+        private BooksTransport.Response mResponse;
+
+        private boolean mCancelled;
+
+        @Override
+        public synchronized boolean onRequestOpened(BooksTransport.Response response) {
+            mResponse = response;
+            return !mCancelled;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+
+        synchronized void cancel() {
+            mCancelled = true;
+            if (mResponse != null) {
+                mResponse.abort();
+            }
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package com.example.android.bookdigger;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory query engine over the loaded books: they can be narrowed to the ones with a
+ * thumbnail, by an author or by words of their title, and sorted by title or author, without
+ * any request. The index is built once for the books: the sort orders are precomputed
+ * permutations of the rows, and the authors and the title words are inverted indexes to the
+ * sorted rows of the books containing them, so that a {@link Filter} costs about the number
+ * of books it keeps. Immutable once built, so it can be built and used on any thread.
+ */
+public class BookFacets {
+
+    // Orders of the books
+    public static final int SORT_RELEVANCE = 0;
+    public static final int SORT_TITLE = 1;
+    public static final int SORT_AUTHOR = 2;
+
+    /** Below this fraction of the books, the candidates are sorted instead of scanning an order */
+    private static final int SORT_CANDIDATES_DIVISOR = 8;
+
+    /** The indexed books, in their order of relevance (the order of the API) */
+    private final BookColumns mBooks;
+
+    /** Rows of the books which have a thumbnail */
+    private final BitSet mWithThumbnail;
+
+    /** Rows of the books of each author name, sorted */
+    private final Map<String, int[]> mAuthorRows;
+
+    /** Distinct title words, sorted, for prefix searches */
+    private final String[] mTitleWords;
+
+    /** Rows of the books whose title contains each word of {@link #mTitleWords}, sorted */
+    private final int[][] mTitleWordRows;
+
+    /** Rows sorted by title, and position of each row in that order */
+    private final int[] mTitleOrder;
+    private final int[] mTitleRanks;
+
+    /** Rows sorted by first author then title, and position of each row in that order */
+    private final int[] mAuthorOrder;
+    private final int[] mAuthorRanks;
+
+    /**
+     * What the books are narrowed to, and how they are sorted. Narrowing by author or by title
+     * can also be done by the Books API ({@link #toQuery}), narrowing by thumbnail can't.
+     */
+    public static class Filter {
+        private boolean mWithThumbnailOnly;
+        private String mAuthor;
+        private String mTitleWords;
+        private int mSort = SORT_RELEVANCE;
+
+        public boolean isWithThumbnailOnly() {
+            return mWithThumbnailOnly;
+        }
+
+        public void setWithThumbnailOnly(boolean withThumbnailOnly) {
+            mWithThumbnailOnly = withThumbnailOnly;
+        }
+
+        /** Return the author name the books must have, or null */
+        public String getAuthor() {
+            return mAuthor;
+        }
+
+        public void setAuthor(String author) {
+            mAuthor = author;
+        }
+
+        /** Return the words (or starts of words) the titles must contain, or null */
+        public String getTitleWords() {
+            return mTitleWords;
+        }
+
+        public void setTitleWords(String titleWords) {
+            mTitleWords = titleWords == null || titleWords.trim().isEmpty() ? null : titleWords.trim();
+        }
+
+        /** Return one of the SORT_ constants */
+        public int getSort() {
+            return mSort;
+        }
+
+        public void setSort(int sort) {
+            mSort = sort;
+        }
+
+        /**
+         * Return true if the filter removes books, as opposed to only sorting them.
+         */
+        public boolean isNarrowing() {
+            return mWithThumbnailOnly || mAuthor != null || mTitleWords != null;
+        }
+
+        /**
+         * Return true if the filter changes the displayed books in any way.
+         */
+        public boolean isActive() {
+            return isNarrowing() || mSort != SORT_RELEVANCE;
+        }
+
+        /**
+         * Return true if the API can narrow a search the same way, i.e. if more matching
+         * books can be requested.
+         */
+        public boolean canQuery() {
+            return mAuthor != null || mTitleWords != null;
+        }
+
+        /**
+         * Return the search input narrowed by the author and the title words of the filter
+         * with the operators of the Books API.
+         */
+        public String toQuery(String searchInput) {
+            StringBuilder query = new StringBuilder(searchInput);
+            if (mAuthor != null) {
+                query.append(' ').append(BooksQuery.INAUTHOR).append(":\"").append(unquoted(mAuthor)).append('"');
+            }
+            if (mTitleWords != null) {
+                query.append(' ').append(BooksQuery.INTITLE).append(":\"").append(unquoted(mTitleWords)).append('"');
+            }
+            return query.toString();
+        }
+
+        /** A quote in a value would end it */
+        private static String unquoted(String value) {
+            return value.replace('"', ' ');
+        }
+
+        /** Remove every narrowing and sort */
+        public void clear() {
+            mWithThumbnailOnly = false;
+            mAuthor = null;
+            mTitleWords = null;
+            mSort = SORT_RELEVANCE;
+        }
+    }
+
+    /**
+     * Index the given books. They are copied, so the list can change afterwards.
+     */
+    public BookFacets(List<Book> books) {
+        mBooks = new BookColumns(books.size());
+        mBooks.addAll(books);
+        int size = mBooks.size();
+
+        mWithThumbnail = new BitSet(size);
+        Map<Integer, IntList> authorRows = new HashMap<>();
+        Map<String, IntList> titleWordRows = new HashMap<>();
+        final String[] titleKeys = new String[size];
+        final int[] firstAuthors = new int[size];
+        for (int row = 0; row < size; row++) {
+            Book book = mBooks.get(row);
+            if (book.getSmallThumbnailUrl() != null) {
+                mWithThumbnail.set(row);
+            }
+
+            int authorCount = mBooks.getAuthorCount(row);
+            firstAuthors[row] = authorCount == 0 ? -1 : mBooks.getAuthorId(row, 0);
+            for (int i = 0; i < authorCount; i++) {
+                add(authorRows, mBooks.getAuthorId(row, i), row);
+            }
+
+            titleKeys[row] = fold(book.getTitle());
+            for (String word : words(titleKeys[row])) {
+                add(titleWordRows, word, row);
+            }
+        }
+
+        // The dictionary is only read once per author
+        mAuthorRows = new HashMap<>(authorRows.size() * 2);
+        for (Map.Entry<Integer, IntList> entry : authorRows.entrySet()) {
+            mAuthorRows.put(mBooks.getAuthorName(entry.getKey()), entry.getValue().toArray());
+        }
+
+        mTitleWords = titleWordRows.keySet().toArray(new String[titleWordRows.size()]);
+        Arrays.sort(mTitleWords);
+        mTitleWordRows = new int[mTitleWords.length][];
+        for (int i = 0; i < mTitleWords.length; i++) {
+            mTitleWordRows[i] = titleWordRows.get(mTitleWords[i]).toArray();
+        }
+
+        final Map<Integer, String> authorKeys = new HashMap<>();
+        for (Map.Entry<Integer, IntList> entry : authorRows.entrySet()) {
+            authorKeys.put(entry.getKey(), fold(mBooks.getAuthorName(entry.getKey())));
+        }
+
+        mTitleOrder = sortRows(size, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return titleKeys[a].compareTo(titleKeys[b]);
+            }
+        });
+        mAuthorOrder = sortRows(size, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int authorA = firstAuthors[a];
+                int authorB = firstAuthors[b];
+                if (authorA != authorB) {
+                    // The books without author come last
+                    if (authorA < 0 || authorB < 0) {
+                        return authorA < 0 ? 1 : -1;
+                    }
+                    int order = authorKeys.get(authorA).compareTo(authorKeys.get(authorB));
+                    if (order != 0) {
+                        return order;
+                    }
+                }
+                return titleKeys[a].compareTo(titleKeys[b]);
+            }
+        });
+        mTitleRanks = ranks(mTitleOrder);
+        mAuthorRanks = ranks(mAuthorOrder);
+    }
+
+    /**
+     * Return the indexed books, in their original order. The list must not be modified.
+     */
+    public List<Book> getBooks() {
+        return mBooks;
+    }
+
+    /**
+     * Return the author names of the books, the most frequent first.
+     */
+    public List<String> getAuthors() {
+        List<String> authors = new ArrayList<>(mAuthorRows.keySet());
+        Collections.sort(authors, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int countA = mAuthorRows.get(a).length;
+                int countB = mAuthorRows.get(b).length;
+                return countA != countB ? (countA > countB ? -1 : 1) : a.compareTo(b);
+            }
+        });
+        return authors;
+    }
+
+    /**
+     * Return the books kept by the filter, in its order.
+     */
+    public List<Book> apply(Filter filter) {
+        int[] rows = select(filter);
+        BookColumns books = new BookColumns(rows.length);
+        for (int row : rows) {
+            books.add(mBooks.get(row));
+        }
+        return books;
+    }
+
+    /**
+     * Return the rows of the books kept by the filter, in its order.
+     */
+    public int[] select(Filter filter) {
+        // The candidates given by the inverted indexes, or null for every book
+        int[] candidates = null;
+        if (filter.getAuthor() != null) {
+            int[] rows = mAuthorRows.get(filter.getAuthor());
+            candidates = rows == null ? new int[0] : rows;
+        }
+        if (filter.getTitleWords() != null) {
+            for (String prefix : words(fold(filter.getTitleWords()))) {
+                int[] rows = titleRows(prefix);
+                candidates = candidates == null ? rows : intersect(candidates, rows);
+            }
+        }
+        if (filter.isWithThumbnailOnly()) {
+            candidates = candidates == null ? toArray(mWithThumbnail) : retain(candidates, mWithThumbnail);
+        }
+
+        int[] order;
+        int[] ranks;
+        switch (filter.getSort()) {
+            case SORT_TITLE:
+                order = mTitleOrder;
+                ranks = mTitleRanks;
+                break;
+            case SORT_AUTHOR:
+                order = mAuthorOrder;
+                ranks = mAuthorRanks;
+                break;
+            default:
+                // The candidates are already in the original order
+                return candidates == null ? identity(mBooks.size()) : candidates;
+        }
+        if (candidates == null) {
+            return order.clone();
+        }
+
+        // A few candidates are sorted by their rank, many are picked from the order
+        if (candidates.length < mBooks.size() / SORT_CANDIDATES_DIVISOR) {
+            long[] ranked = new long[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                ranked[i] = ((long) ranks[candidates[i]] << 32) | candidates[i];
+            }
+            Arrays.sort(ranked);
+            int[] sorted = new int[ranked.length];
+            for (int i = 0; i < ranked.length; i++) {
+                sorted[i] = (int) ranked[i];
+            }
+            return sorted;
+        }
+        BitSet kept = new BitSet(mBooks.size());
+        for (int row : candidates) {
+            kept.set(row);
+        }
+        int[] sorted = new int[candidates.length];
+        int count = 0;
+        for (int row : order) {
+            if (kept.get(row)) {
+                sorted[count++] = row;
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Return the rows of the books with a title word starting with the given prefix.
+     */
+    private int[] titleRows(String prefix) {
+        int first = Arrays.binarySearch(mTitleWords, prefix);
+        if (first < 0) {
+            first = -first - 1;
+        }
+        int last = first;
+        while (last < mTitleWords.length && mTitleWords[last].startsWith(prefix)) {
+            last++;
+        }
+        if (last - first == 1) {
+            return mTitleWordRows[first];
+        }
+        BitSet rows = new BitSet(mBooks.size());
+        for (int i = first; i < last; i++) {
+            for (int row : mTitleWordRows[i]) {
+                rows.set(row);
+            }
+        }
+        return toArray(rows);
+    }
+
+    /**
+     * Return the text in lower case and without accents, to sort and search it. A Collator
+     * gives a finer order, but its keys cost about a hundred times more to build.
+     */
+    private static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(Character.toLowerCase(c));
+            }
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Return the words of a folded text: its runs of letters and digits.
+     */
+    private static List<String> words(String folded) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean inWord = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static <K> void add(Map<K, IntList> index, K key, int row) {
+        IntList rows = index.get(key);
+        if (rows == null) {
+            rows = new IntList();
+            index.put(key, rows);
+        }
+        rows.add(row);
+    }
+
+    private static int[] sortRows(int size, Comparator<Integer> comparator) {
+        Integer[] rows = new Integer[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        Arrays.sort(rows, comparator);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = rows[i];
+        }
+        return order;
+    }
+
+    private static int[] ranks(int[] order) {
+        int[] ranks = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ranks[order[i]] = i;
+        }
+        return ranks;
+    }
+
+    private static int[] identity(int size) {
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    /** Return the rows of both sorted arrays */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] rows = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                rows[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /** Return the rows of the sorted array which are set in the bits */
+    private static int[] retain(int[] rows, BitSet bits) {
+        int[] retained = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            if (bits.get(row)) {
+                retained[count++] = row;
+            }
+        }
+        return Arrays.copyOf(retained, count);
+    }
+
+    private static int[] toArray(BitSet bits) {
+        int[] rows = new int[bits.cardinality()];
+        int count = 0;
+        for (int row = bits.nextSetBit(0); row >= 0; row = bits.nextSetBit(row + 1)) {
+            rows[count++] = row;
+        }
+        return rows;
+    }
+
+    /** Growable array of rows, without boxing */
+    private static class IntList {
+        private int[] mValues = new int[4];
+        private int mSize;
+
+        /** Add a row, unless it's the last one added (e.g. a word repeated in a title) */
+        void add(int value) {
+            if (mSize > 0 && mValues[mSize - 1] == value) {
+                return;
+            }
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.android.bookdigger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Keeps track of the consecutive pages currently held by the adapter when the list is
+ * scrolled incrementally, and of the startIndex of the pages around them.
+ * The window holds at most maxPages pages: beyond that the page at the opposite end
+ * has to be recycled.
+ */
+public class BookPageWindow {
+
+    /** Maximum number of pages held at the same time */
+    private final int mMaxPages;
+
+    /** Number of items of the API pages */
+    private int mPageSize;
+
+    /** Number of books of each page held, from the first to the last */
+    private final Deque<Integer> mPageCounts = new ArrayDeque<>();
+
+    /** startIndex of the first page held */
+    private int mFirstStartIndex;
+
+    /**
+     * Constructs a new {@link BookPageWindow}.
+     *
+     * @param maxPages is the maximum number of pages held at the same time
+     */
+    public BookPageWindow(int maxPages) {
+        mMaxPages = maxPages;
+    }
+
+    /**
+     * Empty the window. The next page added will be the one starting at startIndex.
+     *
+     * @param startIndex is the start index of the next page added
+     * @param pageSize is the number of items of the API pages
+     */
+    public void reset(int startIndex, int pageSize) {
+        mPageCounts.clear();
+        mFirstStartIndex = startIndex;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Empty the window and hold the given pages, e.g. the ones of a saved window.
+     *
+     * @param firstStartIndex is the start index of the first page
+     * @param pageSize is the number of items of the API pages
+     * @param pageCounts is the number of books of each page, from the first to the last
+     */
+    public void restore(int firstStartIndex, int pageSize, int[] pageCounts) {
+        reset(firstStartIndex, pageSize);
+        for (int pageCount : pageCounts) {
+            mPageCounts.addLast(pageCount);
+        }
+    }
+
+    /** Number of books of each page held, from the first to the last */
+    public int[] getPageCounts() {
+        int[] pageCounts = new int[mPageCounts.size()];
+        int i = 0;
+        for (int pageCount : mPageCounts) {
+            pageCounts[i++] = pageCount;
+        }
+        return pageCounts;
+    }
+
+    public boolean isEmpty() {
+        return mPageCounts.isEmpty();
+    }
+
+    /** startIndex of the first page held */
+    public int getFirstStartIndex() {
+        return mFirstStartIndex;
+    }
+
+    /** startIndex of the page following the last one held */
+    public int getNextStartIndex() {
+        return mFirstStartIndex + mPageCounts.size() * mPageSize;
+    }
+
+    /** startIndex of the page preceding the first one held, or -1 if there is none */
+    public int getPreviousStartIndex() {
+        return mFirstStartIndex > 0 ? Math.max(0, mFirstStartIndex - mPageSize) : -1;
+    }
+
+    /** Number of books held by the window */
+    public int getBookCount() {
+        int count = 0;
+        for (int pageCount : mPageCounts) {
+            count += pageCount;
+        }
+        return count;
+    }
+
+    /**
+     * Add a page after the last one held.
+     *
+     * @param bookCount is the number of books of the page
+     * @return the number of books to remove from the start of the list, because the first
+     * page had to be recycled (0 if the window wasn't full)
+     */
+    public int append(int bookCount) {
+        mPageCounts.addLast(bookCount);
+        if (mPageCounts.size() <= mMaxPages) {
+            return 0;
+        }
+        mFirstStartIndex += mPageSize;
+        return mPageCounts.removeFirst();
+    }
+
+    /**
+     * Add a page before the first one held.
+     *
+     * @param bookCount is the number of books of the page
+     * @return the number of books to remove from the end of the list, because the last
+     * page had to be recycled (0 if the window wasn't full)
+     */
+    public int prepend(int bookCount) {
+        mPageCounts.addFirst(bookCount);
+        mFirstStartIndex = Math.max(0, mFirstStartIndex - mPageSize);
+        if (mPageCounts.size() <= mMaxPages) {
+            return 0;
+        }
+        return mPageCounts.removeLast();
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import java.util.List;
+
+/**
+ * Adapter of the books for a RecyclerView. The rows have stable ids derived from the volume
+ * id, and a new list replacing the displayed one is diffed on the user pool of the
+ * {@link FetchScheduler}, so that only the rows which really changed are bound again (and
+ * reload their thumbnail).
+ * Pages added or removed by incremental paging are notified as ranges.
+ * Must be used from the main thread.
+ */
+public class BookRecyclerAdapter extends RecyclerView.Adapter<BookRecyclerAdapter.ViewHolder> {
+
+    private final Context mContext;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Books displayed by the RecyclerView */
+    private BookColumns mBooks = new BookColumns();
+
+    /** Books given to {@link #replaceAll(List)} while their diff is calculated, or null */
+    private BookColumns mPendingBooks;
+
+    /** Incremented by every change, so that the result of an outdated diff is dropped */
+    private int mGeneration;
+
+    /** Diff of the pending books, or null */
+    private FetchScheduler.Task mDiffTask;
+
+    /** Notified when a row is clicked, or null */
+    private OnBookClickListener mOnBookClickListener;
+
+    /**
+     * Listener of the clicks on the rows.
+     */
+    public interface OnBookClickListener {
+        void onBookClick(Book book);
+    }
+
+    // The ViewHolder which caches the ImageView and the two TextViews
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        public final TextView title;
+        public final TextView author;
+        public final ImageView bookCover;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            title = (TextView) itemView.findViewById(R.id.book_title);
+            author = (TextView) itemView.findViewById(R.id.book_authors);
+            bookCover = (ImageView) itemView.findViewById(R.id.book_thumbnail);
+        }
+    }
+
+    public BookRecyclerAdapter(Context context) {
+        mContext = context;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Set the listener notified when a row is clicked.
+     */
+    public void setOnBookClickListener(OnBookClickListener listener) {
+        mOnBookClickListener = listener;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        final ViewHolder holder = new ViewHolder(LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false));
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                // The row may have been removed since it was laid out
+                int position = holder.getAdapterPosition();
+                if (mOnBookClickListener != null && position != RecyclerView.NO_POSITION) {
+                    mOnBookClickListener.onBookClick(getItem(position));
+                }
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        BooksTracer.Span span = BooksTracer.begin(BooksTracer.PHASE_BIND_ROW);
+        Book currentBook = mBooks.get(position);
+        holder.title.setText(currentBook.getTitle());
+        holder.author.setText(currentBook.getAuthor());
+
+        // Use the ThumbnailLoader to display the smallThumbnail of the current book.
+        // If there is no thumbnail or if after three try the thumbnail can't be downloaded:
+        // an image placeholder is displayed instead.
+        ThumbnailLoader.getInstance(mContext).load(currentBook.getSmallThumbnailUrl(), holder.bookCover);
+        span.end();
+    }
+
+    @Override
+    public int getItemCount() {
+        return mBooks.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return stableId(mBooks.get(position));
+    }
+
+    /**
+     * Return the displayed book at the given position.
+     */
+    public Book getItem(int position) {
+        return mBooks.get(position);
+    }
+
+    /**
+     * Return the books of the adapter, including the ones of a {@link #replaceAll(List)}
+     * which aren't displayed yet. The list must not be modified.
+     */
+    public List<Book> getBooks() {
+        return mPendingBooks != null ? mPendingBooks : mBooks;
+    }
+
+    /**
+     * Replace the books of the adapter. The rows are updated once the new books are diffed
+     * with the displayed ones, which only happens in the background if both lists have books.
+     */
+    public void replaceAll(List<Book> books) {
+        final BookColumns newBooks = new BookColumns(books == null ? 0 : books.size());
+        if (books != null) {
+            newBooks.addAll(books);
+        }
+        final int generation = ++mGeneration;
+        cancelDiff();
+
+        // Nothing to diff: the rows are all inserted or all removed
+        if (mBooks.isEmpty() || newBooks.isEmpty()) {
+            mPendingBooks = null;
+            int oldCount = mBooks.size();
+            mBooks = newBooks;
+            if (oldCount > 0) {
+                notifyItemRangeRemoved(0, oldCount);
+            }
+            if (!newBooks.isEmpty()) {
+                notifyItemRangeInserted(0, newBooks.size());
+            }
+            return;
+        }
+
+        // The rows keep reading both lists while they are diffed, and even a read updates
+        // the views cached by a BookColumns: the diff reads its own snapshots of them
+        final BookColumns oldSnapshot = mBooks.snapshot();
+        final BookColumns newSnapshot = newBooks.snapshot();
+        mPendingBooks = newBooks;
+        // The user is waiting for the rows: the diff runs before the queued loads
+        mDiffTask = new FetchScheduler.Task(FetchScheduler.PRIORITY_IMMEDIATE) {
+            @Override
+            protected void execute() {
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                        new BooksDiffCallback(oldSnapshot, newSnapshot));
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mBooks = newBooks;
+                        mPendingBooks = null;
+                        mDiffTask = null;
+                        diff.dispatchUpdatesTo(BookRecyclerAdapter.this);
+                    }
+                });
+            }
+        };
+        FetchScheduler.getInstance().submit(FetchScheduler.POOL_USER, mDiffTask);
+    }
+
+    /** Cancel the diff of the pending books, whose result would be dropped anyway */
+    private void cancelDiff() {
+        if (mDiffTask != null) {
+            mDiffTask.cancel();
+            mDiffTask = null;
+        }
+    }
+
+    /**
+     * Remove every book.
+     */
+    public void clear() {
+        replaceAll(null);
+    }
+
+    /**
+     * Add the books after the displayed ones.
+     */
+    public void append(List<Book> books) {
+        flushPending();
+        int start = mBooks.size();
+        mBooks.addAll(books);
+        notifyItemRangeInserted(start, books.size());
+    }
+
+    /**
+     * Add the books before the displayed ones.
+     */
+    public void prepend(List<Book> books) {
+        flushPending();
+        mBooks.addAll(0, books);
+        notifyItemRangeInserted(0, books.size());
+    }
+
+    /**
+     * Remove count books from the given position.
+     */
+    public void removeRange(int start, int count) {
+        if (count <= 0) {
+            return;
+        }
+        flushPending();
+        for (int i = 0; i < count; i++) {
+            mBooks.remove(start);
+        }
+        notifyItemRangeRemoved(start, count);
+    }
+
+    /**
+     * Display the books of a pending {@link #replaceAll(List)} right away, without waiting
+     * for their diff, so that they can be modified.
+     */
+    private void flushPending() {
+        if (mPendingBooks == null) {
+            return;
+        }
+        mGeneration++;
+        cancelDiff();
+
+        // The diff only reads its snapshots: the pending books can be modified
+        mBooks = mPendingBooks;
+        mPendingBooks = null;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Return the id of the row of the given book, a 64-bit FNV-1a hash of the key
+     * identifying it across pages.
+     */
+    static long stableId(Book book) {
+        String key = PageMerger.key(book);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Compares the displayed books with the ones replacing them: a book is the same item if it
+     * has the same key, and it keeps its row as is if it's also displayed the same way.
+     */
+    private static class BooksDiffCallback extends DiffUtil.Callback {
+
+        private final List<Book> mOldBooks;
+        private final List<Book> mNewBooks;
+
+        // The keys are compared many times: build them once
+        private final String[] mOldKeys;
+        private final String[] mNewKeys;
+
+        BooksDiffCallback(List<Book> oldBooks, List<Book> newBooks) {
+            mOldBooks = oldBooks;
+            mNewBooks = newBooks;
+            mOldKeys = keys(oldBooks);
+            mNewKeys = keys(newBooks);
+        }
+
+        private static String[] keys(List<Book> books) {
+            String[] keys = new String[books.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = PageMerger.key(books.get(i));
+            }
+            return keys;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldKeys.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewKeys.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldKeys[oldItemPosition].equals(mNewKeys[newItemPosition]);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            Book oldBook = mOldBooks.get(oldItemPosition);
+            Book newBook = mNewBooks.get(newItemPosition);
+            return oldBook.getTitle().equals(newBook.getTitle())
+                    && oldBook.getAuthor().equals(newBook.getAuthor())
+                    && equal(oldBook.getSmallThumbnailUrl(), newBook.getSmallThumbnailUrl());
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.android.bookdigger;
+
+import android.os.Bundle;
+
+import java.util.List;
+
+/**
+ * Narrows and sorts the books loaded by the {@link BooksActivity} from the options menu,
+ * without any request: while its {@link BookFacets.Filter} is active, the adapter shows the
+ * loaded books through it.
+ * Not thread safe: used from the main thread.
+ */
+public class BookRefinement {
+
+    // Keys of the saved state
+    private static final String STATE_FILTER_THUMBNAIL = "filterThumbnail";
+    private static final String STATE_FILTER_AUTHOR = "filterAuthor";
+    private static final String STATE_FILTER_TITLE = "filterTitle";
+    private static final String STATE_FILTER_SORT = "filterSort";
+
+    private final BookRecyclerAdapter mAdapter;
+
+    private final BookFacets.Filter mFilter = new BookFacets.Filter();
+
+    /** Index of the loaded books while the list shows them through the filter, null otherwise */
+    private BookFacets mFacets;
+
+    /**
+     * @param adapter is the adapter displaying the books
+     */
+    public BookRefinement(BookRecyclerAdapter adapter) {
+        mAdapter = adapter;
+    }
+
+    public BookFacets.Filter getFilter() {
+        return mFilter;
+    }
+
+    /** Return true while the list shows the loaded books through the filter */
+    public boolean isFiltering() {
+        return mFacets != null;
+    }
+
+    /**
+     * Forget the author and title words, which were chosen among the results of the
+     * previous search.
+     */
+    public void newSearch() {
+        mFilter.setAuthor(null);
+        mFilter.setTitleWords(null);
+    }
+
+    /**
+     * Replace the loaded books, and display them through the filter if it's active.
+     */
+    public void setLoadedBooks(List<Book> books) {
+        mFacets = null;
+        if (mFilter.isActive() && books != null && !books.isEmpty()) {
+            mFacets = new BookFacets(books);
+            mAdapter.replaceAll(mFacets.apply(mFilter));
+        } else {
+            mAdapter.replaceAll(books);
+        }
+    }
+
+    /**
+     * Return the loaded books, filtered out or not. The list must not be modified.
+     */
+    public List<Book> getLoadedBooks() {
+        return mFacets != null ? mFacets.getBooks() : mAdapter.getBooks();
+    }
+
+    /**
+     * Display the loaded books without the filter, e.g. to add a page to them.
+     *
+     * @return true if they were displayed through the filter
+     */
+    public boolean showUnfiltered() {
+        if (mFacets == null) {
+            return false;
+        }
+        mAdapter.replaceAll(mFacets.getBooks());
+        mFacets = null;
+        return true;
+    }
+
+    /**
+     * Display the loaded books through the filter after it changed.
+     *
+     * @return the books matching the filter, or null if it isn't active anymore
+     */
+    public List<Book> apply() {
+        if (!mFilter.isActive()) {
+            showUnfiltered();
+            return null;
+        }
+        if (mFacets == null) {
+            mFacets = new BookFacets(mAdapter.getBooks());
+        }
+        List<Book> matches = mFacets.apply(mFilter);
+        mAdapter.replaceAll(matches);
+        return matches;
+    }
+
+    /**
+     * Return the authors of the loaded books, the most frequent first.
+     */
+    public List<String> getAuthors() {
+        return (mFacets != null ? mFacets : new BookFacets(mAdapter.getBooks())).getAuthors();
+    }
+
+    /**
+     * Save the filter.
+     */
+    public void save(Bundle outState) {
+        outState.putBoolean(STATE_FILTER_THUMBNAIL, mFilter.isWithThumbnailOnly());
+        outState.putString(STATE_FILTER_AUTHOR, mFilter.getAuthor());
+        outState.putString(STATE_FILTER_TITLE, mFilter.getTitleWords());
+        outState.putInt(STATE_FILTER_SORT, mFilter.getSort());
+    }
+
+    /**
+     * Restore the filter saved by {@link #save(Bundle)}. It applies to the books loaded next.
+     */
+    public void restore(Bundle state) {
+        mFilter.setWithThumbnailOnly(state.getBoolean(STATE_FILTER_THUMBNAIL));
+        mFilter.setAuthor(state.getString(STATE_FILTER_AUTHOR));
+        mFilter.setTitleWords(state.getString(STATE_FILTER_TITLE));
+        mFilter.setSort(state.getInt(STATE_FILTER_SORT, BookFacets.SORT_RELEVANCE));
+    }
+}
@@ -3,27 +3,38 @@ package com.example.android.bookdigger;
 import android.app.Activity;
 import android.app.LoaderManager;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Loader;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.os.Bundle;
+import android.support.v7.app.AlertDialog;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ImageView;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * BookDigger created by JCoupier on 07/06/2017.
  */
 public class BooksActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<BooksModel> {
 
+    /** Tag for log messages */
+    private static final String LOG_TAG = BooksActivity.class.getSimpleName();
+
     /** URL for book data from the Google API dataset */
     private static final String GOOGLEAPI_REQUEST_URL =
             "https://www.googleapis.com/books/v1/volumes?q=";
@@ -32,7 +43,7 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
     private String searchInput;
 
     /** Adapter for the list of books */
-    private BookAdapter mAdapter;
+    private BookRecyclerAdapter mAdapter;
 
     /** TextView that is displayed when the list is empty */
     private TextView mEmptyStateTextView;
@@ -40,38 +51,178 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
     /** TextView displaying pagination info */
     private TextView mResultsTextView;
 
-    /** The startIndex for the query url */
-    private int startIndex = 0;
+    /** Page size read from the configuration */
+    private int mConfiguredPageSize;
 
-    /** Number of items displayed in the list (default = 10) */
-    private int itemsNumber = 10;
+    /** True if the page size is chosen from the network conditions at each search */
+    private boolean mAdaptivePageSize;
 
     /** Constant value for the book loader ID. */
     private static final int BOOK_LOADER_ID = 1;
 
+    /** Constant value for the local search loader ID. */
+    private static final int LOCAL_LOADER_ID = 2;
+
+    /** Runs the queries typed in the search field */
+    private InstantSearch mInstantSearch;
+
+    /** True while the list shows the books found in the local index */
+    private boolean mShowingLocalResults;
+
+    /** True once the network results of the current search have been displayed */
+    private boolean mNetworkResultsShown;
+
     private BooksModel booksModel;
 
+    /** Fetches the pages next to the displayed one in the background */
+    private PrefetchScheduler mPrefetchScheduler;
+
+    /** The list displaying the books */
+    private RecyclerView mBookListView;
+
+    private LinearLayoutManager mLayoutManager;
+
+    /** Incremental paging: pages are added while scrolling instead of being swapped */
+    private boolean mInfiniteScroll;
+
+    /** Number of items before the end (or the start) of the list at which a page is loaded */
+    private int mPrefetchDistance;
+
+    /** The page being loaded, the pages displayed and how they are merged */
+    private SearchPaging mPaging;
+
+    /** Narrows and sorts the loaded books from the options menu, without any request */
+    private BookRefinement mRefinement;
+
+    /** Cancels the background work of the activity when it's destroyed */
+    private FetchScheduler.Scope mScope;
+
+    /** True once the activity is destroyed: the results of its background work are dropped */
+    private boolean mDestroyed;
+
+    // Keys of the state saved when the activity is destroyed (rotation, process death)
+    private static final String STATE_SEARCH_INPUT = "searchInput";
+    private static final String STATE_LOCAL_RESULTS = "localResults";
+    private static final String STATE_NETWORK_RESULTS = "networkResults";
+    private static final String STATE_POSITION = "position";
+    private static final String STATE_POSITION_TOP = "positionTop";
+    private static final String STATE_RESULTS_TEXT = "resultsText";
+    private static final String STATE_EMPTY_TEXT = "emptyText";
+    private static final String STATE_BOOKS = "books";
+
+    /** The displayed books aren't saved above this size: the whole state must fit in a Binder transaction */
+    private static final int MAX_SAVED_BOOKS_BYTES = 256 * 1024;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_books);
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView bookListView = (ListView) findViewById(R.id.list);
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView bookListView = (RecyclerView) findViewById(R.id.list);
+        mBookListView = bookListView;
+        mLayoutManager = new LinearLayoutManager(this);
+        bookListView.setLayoutManager(mLayoutManager);
 
         // Find the emptyStateTextView
         mEmptyStateTextView = (TextView) findViewById(R.id.empty_view);
-        bookListView.setEmptyView(mEmptyStateTextView);
 
         // Find the resultsTextView
         mResultsTextView = (TextView) findViewById(R.id.item_range);
 
-        // Create a new adapter that takes an empty list of books as input
-        mAdapter = new BookAdapter(this, new ArrayList<Book>());
+        // A long click on the resultsTextView shows the tracing summary and exports it
+        mResultsTextView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View view) {
+                showTraces();
+                return true;
+            }
+        });
+
+        // Create a new adapter without any book. The books are stored in compact columns
+        // and the rows read them through flyweight views
+        mAdapter = new BookRecyclerAdapter(this);
 
-        // Set the adapter on the {@link ListView}
+        // Open the detail of a book when its row is clicked. Only the books with a volume id
+        // can be opened: the detail is loaded with it
+        mAdapter.setOnBookClickListener(new BookRecyclerAdapter.OnBookClickListener() {
+            @Override
+            public void onBookClick(Book book) {
+                if (book.getId() == null) {
+                    Toast.makeText(BooksActivity.this, R.string.no_detail, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                startActivity(BookDetailActivity.newIntent(BooksActivity.this, book));
+            }
+        });
+
+        // The empty view is only visible when the list has no items
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
         bookListView.setAdapter(mAdapter);
+        updateEmptyView();
+        mRefinement = new BookRefinement(mAdapter);
+        mScope = FetchScheduler.getInstance().newScope();
+
+        // Read the paging configuration
+        mConfiguredPageSize = BooksLoader.clampPageSize(getResources().getInteger(R.integer.page_size));
+        mAdaptivePageSize = getResources().getBoolean(R.bool.adaptive_page_size);
+        mInfiniteScroll = getResources().getBoolean(R.bool.infinite_scroll);
+        mPrefetchDistance = getResources().getInteger(R.integer.scroll_prefetch_distance);
+        mPaging = new SearchPaging(mConfiguredPageSize, getResources().getInteger(R.integer.scroll_max_pages));
+
+        // Read the fetch policy configuration
+        ResilientFetcher.setHedgingEnabled(getResources().getBoolean(R.bool.hedged_requests));
+
+        // In incremental paging, load the next (or previous) page when the list
+        // gets close to its end (or its start). The thumbnail loads follow the scroll state.
+        bookListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                // Don't start thumbnail loads for the rows which are only flung past
+                if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+                    ThumbnailLoader.getInstance(BooksActivity.this).pause();
+                } else {
+                    ThumbnailLoader.getInstance(BooksActivity.this).resume();
+                }
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                // The filtered list isn't in the order of the pages: the paging waits
+                if (!mInfiniteScroll || booksModel == null || mRefinement.isFiltering()) {
+                    return;
+                }
+                int firstVisibleItem = mLayoutManager.findFirstVisibleItemPosition();
+                int visibleItemCount = recyclerView.getChildCount();
+                int totalItemCount = mLayoutManager.getItemCount();
+                boolean nearEnd = firstVisibleItem + visibleItemCount >= totalItemCount - mPrefetchDistance;
+                int pageStartIndex = mPaging.getIncrementalPage(booksModel.getTotalItems(), nearEnd,
+                        firstVisibleItem <= mPrefetchDistance);
+                if (pageStartIndex >= 0) {
+                    loadIncrementalPage(pageStartIndex,
+                            pageStartIndex == mPaging.getWindow().getNextStartIndex()
+                                    ? SearchPaging.LOAD_APPEND : SearchPaging.LOAD_PREPEND);
+                }
+            }
+        });
 
         // Find the editTextView
         final EditText searchField = (EditText) findViewById(R.id.search_edit_text);
@@ -79,19 +230,50 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
         // Find the searchButton
         final ImageButton searchButton = (ImageButton) findViewById(R.id.search_button);
 
+        // Search as the user types. The field is watched from onPostCreate(), once its text
+        // is restored, so that the restored text isn't taken as typed
+        mInstantSearch = new InstantSearch(new InstantSearch.Listener() {
+            @Override
+            public void onQuery(String query) {
+                runInstantSearch(query);
+            }
+        });
+
         // Find the previousButton
         final ImageView previousButton = (ImageView) findViewById(R.id.previous);
 
         // Find the nextButton
         final ImageView nextButton = (ImageView) findViewById(R.id.next);
 
+        // The previous and next buttons are replaced by scrolling in incremental paging
+        if (mInfiniteScroll) {
+            previousButton.setVisibility(View.GONE);
+            nextButton.setVisibility(View.GONE);
+        }
+
+        // Create the scheduler which will prefetch the next and previous pages
+        mPrefetchScheduler = new PrefetchScheduler(this, GOOGLEAPI_REQUEST_URL);
+
+        // After a rotation or a process death, display the saved search again
+        boolean restored = savedInstanceState != null && restoreState(savedInstanceState);
+
         // Get a reference to the LoaderManager, in order to interact with loaders.
         LoaderManager loaderManager = getLoaderManager();
 
-        // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-        // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-        // because this activity implements the LoaderCallbacks interface).
-        loaderManager.initLoader(BOOK_LOADER_ID, null, BooksActivity.this);
+        if (restored && !mPaging.isLoading()) {
+            // The restored books are displayed: the result of a retained loader is obsolete
+            loaderManager.destroyLoader(BOOK_LOADER_ID);
+        } else if (!restored && searchInput != null) {
+            // The books couldn't be restored: a retained loader would deliver its last page,
+            // e.g. an appended one, so the first page of the window is loaded again
+            loaderManager.restartLoader(BOOK_LOADER_ID, null, BooksActivity.this);
+        } else {
+            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
+            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
+            // because this activity implements the LoaderCallbacks interface).
+            // A retained loader still running delivers its page to this activity
+            loaderManager.initLoader(BOOK_LOADER_ID, null, BooksActivity.this);
+        }
 
         searchButton.setOnClickListener(new ImageButton.OnClickListener() {
                 @Override
@@ -100,35 +282,9 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
                     // Hide the keyboard when the searchButton is clicked on
                     hideKeyboard(BooksActivity.this);
 
-                    // Reset the startIndex
-                    startIndex = 0;
-                    
-                    // Get the Input text that the user typed
-                    searchInput = searchField.getText().toString().trim();
-
-                    // Get a reference to the ConnectivityManager to check state of network connectivity
-                    ConnectivityManager connectivityManager = (ConnectivityManager)
-                            getSystemService(Context.CONNECTIVITY_SERVICE);
-
-                    // Get details on the currently active default data network
-                    NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-
-                    // If there is a network connection, fetch data
-                    if (networkInfo != null && networkInfo.isConnected()) {
-                        // Restart the loader
-                        getLoaderManager().restartLoader(BOOK_LOADER_ID, null, BooksActivity.this);
-                    } else {
-                        // Otherwise, display error
-                        // First, hide loading indicator so error message will be visible
-                        View loadingIndicator = findViewById(R.id.loading_indicator);
-                        loadingIndicator.setVisibility(View.GONE);
-
-                        // Clear the adapter of previous book data
-                        mAdapter.clear();
-
-                        // Update empty state with no connection error message
-                        mEmptyStateTextView.setText(R.string.no_internet_connection);
-                    }
+                    // Run the search for the Input text that the user typed
+                    mInstantSearch.cancel();
+                    startSearch(searchField.getText().toString().trim());
                 }
         });
 
@@ -137,36 +293,11 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
             public void onClick(View view) {
 
                 // Prevent the startIndex to be negative and display a help message for the user
-                if (startIndex == 0){
-                    Toast.makeText(BooksActivity.this, "No previous page", Toast.LENGTH_SHORT).show();
+                int previousPage = mPaging.getPreviousPage();
+                if (previousPage < 0) {
+                    Toast.makeText(BooksActivity.this, R.string.no_previous_page, Toast.LENGTH_SHORT).show();
                 } else {
-
-                    // Remove 10 to the startIndex
-                    startIndex -= itemsNumber;
-
-                    // Get a reference to the ConnectivityManager to check state of network connectivity
-                    ConnectivityManager connectivityManager = (ConnectivityManager)
-                            getSystemService(Context.CONNECTIVITY_SERVICE);
-
-                    // Get details on the currently active default data network
-                    NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-
-                    // If there is a network connection, fetch data
-                    if (networkInfo != null && networkInfo.isConnected()) {
-                        // Restart the loader
-                        getLoaderManager().restartLoader(BOOK_LOADER_ID, null, BooksActivity.this);
-                    } else {
-                        // Otherwise, display error
-                        // First, hide loading indicator so error message will be visible
-                        View loadingIndicator = findViewById(R.id.loading_indicator);
-                        loadingIndicator.setVisibility(View.GONE);
-
-                        // Clear the adapter of previous book data
-                        mAdapter.clear();
-
-                        // Update empty state with no connection error message
-                        mEmptyStateTextView.setText(R.string.no_internet_connection);
-                    }
+                    loadPage(previousPage);
                 }
             }
         });
@@ -175,76 +306,609 @@ public class BooksActivity extends AppCompatActivity implements LoaderManager.Lo
             @Override
             public void onClick(View view) {
 
-                if (startIndex + itemsNumber >= booksModel.getTotalItems()){
-                    Toast.makeText(BooksActivity.this, "No next page", Toast.LENGTH_SHORT).show();
+                // The last page is the one reaching the number of results, or an empty one
+                int nextPage = booksModel == null ? -1 : mPaging.getNextPage(booksModel.getTotalItems());
+                if (nextPage < 0) {
+                    Toast.makeText(BooksActivity.this, R.string.no_next_page, Toast.LENGTH_SHORT).show();
                 } else {
+                    loadPage(nextPage);
+                }
+            }
+        });
+    }
+
+    /**
+     * Start a new search: the local index answers first, then the network if there is a
+     * connection.
+     *
+     * @param input is the search input
+     */
+    private void startSearch(String input) {
+        // The page size only changes between searches so that the pages stay aligned
+        int pageSize = mPaging.getPageSize();
+        if (mAdaptivePageSize) {
+            pageSize = PageSizePolicy.choosePageSize(BooksActivity.this, mConfiguredPageSize);
+        }
+        mRefinement.newSearch();
+        mPaging.newSearch(pageSize);
 
-                    // Add 10 to the startIndex
-                    startIndex += itemsNumber;
+        // The pages prefetched for the previous search aren't needed anymore
+        mPrefetchScheduler.cancelAll();
 
-                    // Get a reference to the ConnectivityManager to check state of network connectivity
-                    ConnectivityManager connectivityManager = (ConnectivityManager)
-                            getSystemService(Context.CONNECTIVITY_SERVICE);
+        // Remember the search input for the loaders
+        searchInput = input;
 
-                    // Get details on the currently active default data network
-                    NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        // Answer from the local index right away, online or not
+        mNetworkResultsShown = false;
+        getLoaderManager().restartLoader(LOCAL_LOADER_ID, null, BooksActivity.this);
 
-                    // If there is a network connection, fetch data
-                    if (networkInfo != null && networkInfo.isConnected()) {
-                        // Restart the loader
-                        getLoaderManager().restartLoader(BOOK_LOADER_ID, null, BooksActivity.this);
-                    } else {
-                        // Otherwise, display error
-                        // First, hide loading indicator so error message will be visible
-                        View loadingIndicator = findViewById(R.id.loading_indicator);
-                        loadingIndicator.setVisibility(View.GONE);
+        loadPage(0);
+    }
 
-                        // Clear the adapter of previous book data
-                        mAdapter.clear();
+    /**
+     * Load the page of the search at the given startIndex in place of the displayed books,
+     * if there is a network connection. Otherwise the books are cleared and the missing
+     * connection is displayed instead.
+     */
+    private void loadPage(int pageStartIndex) {
+        if (isConnected()) {
+            mPaging.startLoad(pageStartIndex, SearchPaging.LOAD_REPLACE);
+            getLoaderManager().restartLoader(BOOK_LOADER_ID, null, BooksActivity.this);
+        } else {
+            // Otherwise, display error
+            // First, hide loading indicator so error message will be visible
+            View loadingIndicator = findViewById(R.id.loading_indicator);
+            loadingIndicator.setVisibility(View.GONE);
+
+            // Clear the adapter of previous book data
+            mRefinement.setLoadedBooks(null);
+
+            // Update empty state with no connection error message
+            mEmptyStateTextView.setText(R.string.no_internet_connection);
+        }
+    }
 
-                        // Update empty state with no connection error message
-                        mEmptyStateTextView.setText(R.string.no_internet_connection);
-                    }
-                }
-            }
-        });
+    /**
+     * Return true if there is a network connection.
+     */
+    private boolean isConnected() {
+        // Get a reference to the ConnectivityManager to check state of network connectivity
+        ConnectivityManager connectivityManager = (ConnectivityManager)
+                getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        // Get details on the currently active default data network
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    /**
+     * Run a query typed in the search field. If it only extends the query of the displayed
+     * results, they are filtered instead, and the network is only used when this leaves
+     * less than a page of books.
+     */
+    private void runInstantSearch(String query) {
+        // Only the case, the spacing or the punctuation changed: same results
+        if (searchInput != null && BooksQuery.parse(query).equals(BooksQuery.parse(searchInput))) {
+            return;
+        }
+
+        // The adapter copies the refined books, so they can be views of its own
+        List<Book> refined = InstantSearch.refine(mRefinement.getLoadedBooks(), searchInput, query);
+        if (refined != null && refined.size() >= mPaging.getPageSize()) {
+            // The displayed results are enough: no request at all. The paging of the previous
+            // query doesn't apply to them, a new search starts it again
+            searchInput = query;
+            booksModel = null;
+            mPrefetchScheduler.cancelAll();
+            mRefinement.setLoadedBooks(refined);
+            mPaging.showAll(refined);
+            mResultsTextView.setText(getResources().getQuantityString(R.plurals.refined_results,
+                    refined.size(), refined.size()));
+            return;
+        }
+
+        mInstantSearch.onNetworkSearch();
+        startSearch(query);
+    }
+
+    @Override
+    protected void onPostCreate(Bundle savedInstanceState) {
+        super.onPostCreate(savedInstanceState);
+        ((EditText) findViewById(R.id.search_edit_text)).addTextChangedListener(mInstantSearch);
     }
 
     @Override
     public Loader<BooksModel> onCreateLoader(int i, Bundle bundle) {
+        // Search the local index
+        if (i == LOCAL_LOADER_ID) {
+            return new LocalBooksLoader(this, searchInput);
+        }
+
         // Create a new loader for the given URL
-        return new BooksLoader(this, GOOGLEAPI_REQUEST_URL, searchInput, startIndex);
+        return new BooksLoader(this, GOOGLEAPI_REQUEST_URL, searchInput, mPaging.getStartIndex(),
+                mPaging.getPageSize());
     }
 
     @Override
     public void onLoadFinished(Loader<BooksModel> loader, BooksModel booksModel) {
 
-        this.booksModel = booksModel;
+        // The local results are only shown until the network ones arrive
+        if (loader.getId() == LOCAL_LOADER_ID) {
+            showLocalResults(booksModel);
+            return;
+        }
+
+        // A failed request must not look like a search without results
+        boolean failed = loader instanceof BooksLoader && ((BooksLoader) loader).hasFailed();
+
+        BooksTracer.Span span = BooksTracer.begin(BooksTracer.PHASE_BIND);
+        try {
+            displayResults(booksModel, failed);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Display a page delivered by the {@link BooksLoader}, replacing the list or adding
+     * the page to it depending on the load mode.
+     *
+     * @param failed is true if the page couldn't be loaded (booksModel is then null)
+     */
+    private void displayResults(BooksModel booksModel, boolean failed) {
+
+        // Ignore a page which is delivered again while it's already displayed
+        if (!mPaging.isLoading() && booksModel != null && booksModel == this.booksModel) {
+            return;
+        }
+        int loadMode = mPaging.finishLoad();
 
         // Hide loading indicator because the data has been loaded
         View loadingIndicator = findViewById(R.id.loading_indicator);
         loadingIndicator.setVisibility(View.GONE);
 
-        // Set empty state text to display "No corresponding book found."
-        mEmptyStateTextView.setText(R.string.no_books);
+        // A page loaded by scrolling is added to the ones already displayed
+        if (loadMode != SearchPaging.LOAD_REPLACE) {
+            if (failed) {
+                // The incremental loading stops here, a new search starts it again
+                Toast.makeText(this, R.string.error_loading, Toast.LENGTH_SHORT).show();
+            }
+            addPage(booksModel, loadMode);
+            return;
+        }
+
+        // If the network has nothing better (e.g. the request failed), keep the local results
+        boolean hasBooks = booksModel != null && booksModel.getBooks() != null && !booksModel.getBooks().isEmpty();
+        if (!hasBooks && mShowingLocalResults) {
+            return;
+        }
+
+        // The books of the page which were already shown by the previous page of the search
+        // (the results may have shifted in between) aren't shown again
+        List<Book> books = null;
+        int savedCount = 0;
+        if (hasBooks) {
+            books = mPaging.mergeFirstPage(booksModel.getBooks(), mNetworkResultsShown);
+
+            // The books of the local index which the network page doesn't have stay below it
+            if (mShowingLocalResults) {
+                List<Book> saved = mPaging.mergeSavedBooks(mRefinement.getLoadedBooks());
+                savedCount = saved.size();
+                if (savedCount > 0) {
+                    List<Book> merged = new BookColumns(books.size() + savedCount);
+                    merged.addAll(books);
+                    merged.addAll(saved);
+                    books = merged;
+                }
+            }
+        }
+        mShowingLocalResults = false;
+        mNetworkResultsShown = hasBooks;
+
+        this.booksModel = booksModel;
+
+        // Set empty state text to display "No corresponding book found.", or the error
+        mEmptyStateTextView.setText(failed ? R.string.error_loading : R.string.no_books);
+
+        // Replace the previous book data: only the rows of the books which weren't displayed
+        // are bound. If there is no valid list of {@link Book}s, the adapter is just cleared
+        mRefinement.setLoadedBooks(books);
+        if (hasBooks) {
+
+            // Update the Results TextView in the UI with the index of the books displayed: the
+            // repeated ones which were dropped are at the start of the page
+            int bookCount = books.size() - savedCount;
+            int firstShown = mPaging.getFirstShownIndex();
+            mResultsTextView.setText(getString(R.string.results_range, firstShown + 1,
+                    firstShown + bookCount, booksModel.getTotalItems()));
+
+            // This page is the first one of the incremental window, with the saved books
+            mPaging.firstPageShown(books.size(), booksModel.getTotalItems());
+
+            // Now that the page is displayed, prefetch its neighbours
+            schedulePrefetch(booksModel.getTotalItems());
+        }
+    }
+
+    /**
+     * Display the books found in the local index, unless the network results of the
+     * search are already displayed. The network results are merged with them when they
+     * arrive: the books of the first page come first, then the other saved ones.
+     */
+    private void showLocalResults(BooksModel localModel) {
+        if (mNetworkResultsShown || localModel == null || localModel.getBooks().isEmpty()) {
+            return;
+        }
+        mShowingLocalResults = true;
+
+        // The list isn't empty anymore: the loading indicator would cover it
+        View loadingIndicator = findViewById(R.id.loading_indicator);
+        loadingIndicator.setVisibility(View.GONE);
+
+        mRefinement.setLoadedBooks(localModel.getBooks());
+
+        // No incremental paging over the local results
+        mPaging.showLocal();
+
+        int savedCount = localModel.getBooks().size();
+        mResultsTextView.setText(getResources().getQuantityString(R.plurals.saved_results,
+                savedCount, savedCount));
+    }
+
+    /**
+     * Add a page loaded by scrolling before or after the ones already displayed, and
+     * recycle the page at the opposite end if the window is full. The scroll position
+     * is kept on the same book.
+     */
+    private void addPage(BooksModel pageModel, int loadMode) {
+        if (pageModel == null || pageModel.getBooks() == null || pageModel.getBooks().isEmpty()) {
+            // Nothing more to load after this page
+            mPaging.emptyPage(loadMode);
+            return;
+        }
+        this.booksModel = pageModel;
+
+        // The page is added to the loaded books, which are filtered again afterwards
+        boolean filtered = mRefinement.showUnfiltered();
+
+        // Only add the books which aren't displayed yet
+        List<Book> books = mPaging.mergePage(pageModel.getBooks(), loadMode, pageModel.getTotalItems());
+        boolean shortened = books.size() < pageModel.getBooks().size();
+
+        // Remember the position of the first visible book
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        View firstChild = mLayoutManager.findViewByPosition(firstVisible);
+        int top = firstChild == null ? 0 : firstChild.getTop();
+        int shift;
+
+        // Only the added rows are bound, the others are kept as they are
+        if (loadMode == SearchPaging.LOAD_APPEND) {
+            mAdapter.append(books);
+            int recycled = mPaging.getWindow().append(books.size());
+            // A recycled book can be shown again if it's loaded again
+            for (int i = 0; i < recycled; i++) {
+                mPaging.forget(mAdapter.getItem(i));
+            }
+            mAdapter.removeRange(0, recycled);
+            shift = -recycled;
+        } else {
+            mAdapter.prepend(books);
+            int recycled = mPaging.getWindow().prepend(books.size());
+            int recycledStart = mAdapter.getItemCount() - recycled;
+            for (int i = recycledStart; i < recycledStart + recycled; i++) {
+                mPaging.forget(mAdapter.getItem(i));
+            }
+            mAdapter.removeRange(recycledStart, recycled);
+            shift = books.size();
+        }
+        if (shift != 0) {
+            mLayoutManager.scrollToPositionWithOffset(Math.max(0, firstVisible + shift), top);
+        }
+
+        // Update the Results TextView with the range of books held by the window
+        BookPageWindow window = mPaging.getWindow();
+        int firstIndex = window.getFirstStartIndex();
+        mResultsTextView.setText(getString(R.string.results_range, firstIndex + 1,
+                firstIndex + window.getBookCount(), pageModel.getTotalItems()));
 
-        // Clear the adapter of previous book data
-        mAdapter.clear();
+        // Prefetch the pages around the one which has just been added
+        schedulePrefetch(pageModel.getTotalItems());
 
-        // If there is a valid list of {@link Book}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if (booksModel != null && booksModel.getBooks() != null && !booksModel.getBooks().isEmpty()) {
-            mAdapter.addAll(booksModel.getBooks());
+        if (filtered) {
+            mRefinement.setLoadedBooks(mAdapter.getBooks());
+        }
+
+        // Duplicates may have left too few new books to scroll further: load the next page now
+        if (loadMode == SearchPaging.LOAD_APPEND && shortened && !mPaging.isEndReached()) {
+            loadIncrementalPage(window.getNextStartIndex(), SearchPaging.LOAD_APPEND);
+        }
+    }
+
+    /**
+     * Prefetch the pages around the one loaded last.
+     */
+    private void schedulePrefetch(int totalItems) {
+        mPrefetchScheduler.schedule(searchInput, mPaging.getStartIndex(), mPaging.getPageSize(),
+                totalItems + mPaging.getResultsShift());
+    }
 
-            // Update the Results TextView in the UI with the index of the books displayed
-            mResultsTextView.setText("Results " + startIndex + " to " + (startIndex + itemsNumber) + " out of approximately " + booksModel.getTotalItems() + " Books");
+    /**
+     * Load the page starting at pageStartIndex to add it to the list (incremental paging).
+     */
+    private void loadIncrementalPage(int pageStartIndex, int loadMode) {
+        // Without network the pages already displayed stay as they are
+        if (!isConnected()) {
+            return;
         }
+
+        mPaging.startLoad(pageStartIndex, loadMode);
+        getLoaderManager().restartLoader(BOOK_LOADER_ID, null, BooksActivity.this);
     }
 
     @Override
     public void onLoaderReset(Loader<BooksModel> loader) {
         // Loader reset, so we can clear out our existing data.
-        mAdapter.clear();
+        mRefinement.setLoadedBooks(null);
+    }
+
+    /**
+     * Show the empty view instead of the list when there is no book.
+     */
+    private void updateEmptyView() {
+        boolean empty = mAdapter.getItemCount() == 0;
+        mEmptyStateTextView.setVisibility(empty ? View.VISIBLE : View.GONE);
+        mBookListView.setVisibility(empty ? View.GONE : View.VISIBLE);
+    }
+
+    /**
+     * Display the loaded books through the filter after it changed. When too few of them
+     * match and the Books API can narrow the search the same way, the narrowed search is
+     * run: only then is there a request.
+     */
+    private void applyFilter() {
+        List<Book> matches = mRefinement.apply();
+        if (matches == null) {
+            return;
+        }
+        int loadedCount = mRefinement.getLoadedBooks().size();
+        mLayoutManager.scrollToPosition(0);
+        Toast.makeText(this, getString(R.string.filtered_books, matches.size(), loadedCount),
+                Toast.LENGTH_SHORT).show();
+
+        // More matching books can only be in the pages which aren't loaded
+        BookFacets.Filter filter = mRefinement.getFilter();
+        if (matches.size() < mPaging.getPageSize() && filter.canQuery() && mNetworkResultsShown
+                && booksModel != null && loadedCount < booksModel.getTotalItems()) {
+            String narrowed = filter.toQuery(searchInput);
+            mInstantSearch.setText((EditText) findViewById(R.id.search_edit_text), narrowed);
+            mInstantSearch.cancel();
+            startSearch(narrowed);
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_books, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        BookFacets.Filter filter = mRefinement.getFilter();
+        menu.findItem(R.id.action_with_thumbnail).setChecked(filter.isWithThumbnailOnly());
+        switch (filter.getSort()) {
+            case BookFacets.SORT_TITLE:
+                menu.findItem(R.id.action_sort_title).setChecked(true);
+                break;
+            case BookFacets.SORT_AUTHOR:
+                menu.findItem(R.id.action_sort_author).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.action_sort_relevance).setChecked(true);
+        }
+        menu.findItem(R.id.action_clear_filters).setEnabled(filter.isActive());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        BookFacets.Filter filter = mRefinement.getFilter();
+        switch (item.getItemId()) {
+            case R.id.action_with_thumbnail:
+                filter.setWithThumbnailOnly(!item.isChecked());
+                break;
+            case R.id.action_sort_relevance:
+                filter.setSort(BookFacets.SORT_RELEVANCE);
+                break;
+            case R.id.action_sort_title:
+                filter.setSort(BookFacets.SORT_TITLE);
+                break;
+            case R.id.action_sort_author:
+                filter.setSort(BookFacets.SORT_AUTHOR);
+                break;
+            case R.id.action_filter_author:
+                chooseAuthor();
+                return true;
+            case R.id.action_filter_title:
+                chooseTitleWords();
+                return true;
+            case R.id.action_clear_filters:
+                filter.clear();
+                break;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+        applyFilter();
+        return true;
+    }
+
+    /**
+     * Let the user pick the author of the books among the authors of the loaded books,
+     * the most frequent first.
+     */
+    private void chooseAuthor() {
+        final List<String> authors = mRefinement.getAuthors();
+        if (authors.isEmpty()) {
+            Toast.makeText(this, R.string.no_books, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.filter_author)
+                .setItems(authors.toArray(new CharSequence[authors.size()]), new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        mRefinement.getFilter().setAuthor(authors.get(which));
+                        applyFilter();
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * Let the user type words (or starts of words) which the titles of the books must contain.
+     */
+    private void chooseTitleWords() {
+        final EditText titleWords = new EditText(this);
+        titleWords.setSingleLine();
+        titleWords.setText(mRefinement.getFilter().getTitleWords());
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.filter_title)
+                .setView(titleWords)
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        mRefinement.getFilter().setTitleWords(titleWords.getText().toString());
+                        applyFilter();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        // Nothing to save before the first search
+        if (searchInput == null) {
+            return;
+        }
+        outState.putString(STATE_SEARCH_INPUT, searchInput);
+        mPaging.save(outState);
+        mRefinement.save(outState);
+        outState.putBoolean(STATE_LOCAL_RESULTS, mShowingLocalResults);
+        outState.putBoolean(STATE_NETWORK_RESULTS, mNetworkResultsShown);
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        View firstChild = mLayoutManager.findViewByPosition(firstVisible);
+        outState.putInt(STATE_POSITION, Math.max(0, firstVisible));
+        outState.putInt(STATE_POSITION_TOP, firstChild == null ? 0 : firstChild.getTop());
+        outState.putCharSequence(STATE_RESULTS_TEXT, mResultsTextView.getText());
+        outState.putCharSequence(STATE_EMPTY_TEXT, mEmptyStateTextView.getText());
+
+        // The loaded books, which span several pages in incremental paging, in the
+        // binary format of the cache. The filter is applied again to them
+        List<Book> displayed = mRefinement.getLoadedBooks();
+        int totalItems = booksModel == null ? displayed.size() : booksModel.getTotalItems();
+        byte[] books = BooksModelCodec.toByteArray(new BooksModel(totalItems, displayed));
+        if (books.length <= MAX_SAVED_BOOKS_BYTES) {
+            outState.putByteArray(STATE_BOOKS, books);
+        }
+    }
+
+    /**
+     * Restore the search saved by {@link #onSaveInstanceState(Bundle)}. The displayed books
+     * are restored from the saved state, without any request.
+     *
+     * @return true if the displayed books were restored, false if they must be loaded again
+     */
+    private boolean restoreState(Bundle state) {
+        searchInput = state.getString(STATE_SEARCH_INPUT);
+        if (searchInput == null) {
+            return false;
+        }
+        mPaging.restore(state);
+        mShowingLocalResults = state.getBoolean(STATE_LOCAL_RESULTS);
+        mNetworkResultsShown = state.getBoolean(STATE_NETWORK_RESULTS);
+        mRefinement.restore(state);
+
+        BooksTracer.Span span = BooksTracer.begin(BooksTracer.PHASE_RESTORE);
+        try {
+            byte[] books = state.getByteArray(STATE_BOOKS);
+            if (books == null) {
+                throw new IOException("The books weren't saved");
+            }
+            BooksModel restoredModel = BooksModelCodec.fromByteArray(books);
+
+            // The local results aren't a page of the network results
+            if (mNetworkResultsShown) {
+                booksModel = restoredModel;
+            }
+            mRefinement.setLoadedBooks(restoredModel.getBooks());
+            mPaging.restoreBooks(restoredModel.getBooks());
+            mPaging.restoreWindow(state);
+            mLayoutManager.scrollToPositionWithOffset(state.getInt(STATE_POSITION), state.getInt(STATE_POSITION_TOP));
+            mResultsTextView.setText(state.getCharSequence(STATE_RESULTS_TEXT));
+            mEmptyStateTextView.setText(state.getCharSequence(STATE_EMPTY_TEXT));
+            findViewById(R.id.loading_indicator).setVisibility(View.GONE);
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem restoring the books", e);
+
+            // Load the first page of the window again in place of the books
+            mPaging.reloadWindow(state);
+            return false;
+        } finally {
+            span.end();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mDestroyed = true;
+        // Stop prefetching for this activity
+        mPrefetchScheduler.shutdown();
+        mInstantSearch.cancel();
+        mScope.close();
+    }
+
+    /**
+     * Display the percentiles of the traced phases and the counters of the {@link BooksCache},
+     * and export every trace to a file which can be pulled from the device for offline analysis.
+     * The file is written on the prefetch pool, the summary is shown once it's done unless
+     * the activity is destroyed in between.
+     */
+    private void showTraces() {
+        final String summary = BooksTracer.getSummary() + BooksCache.getInstance(this).getSummary();
+        final Context context = getApplicationContext();
+        mScope.submit(FetchScheduler.POOL_PREFETCH,
+                new FetchScheduler.Task(FetchScheduler.PRIORITY_LOW) {
+                    @Override
+                    protected void execute() {
+                        File directory = context.getExternalFilesDir(null);
+                        if (directory == null) {
+                            directory = context.getFilesDir();
+                        }
+                        File file = new File(directory, "traces.csv");
+                        String message = summary;
+                        try {
+                            BooksTracer.export(file);
+                            message += context.getString(R.string.traces_exported, file.getAbsolutePath());
+                        } catch (IOException e) {
+                            Log.e(LOG_TAG, "Problem exporting the traces", e);
+                        }
+                        final String text = message;
+                        runOnUiThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (mDestroyed) {
+                                    return;
+                                }
+                                Toast.makeText(context, text, Toast.LENGTH_LONG).show();
+                            }
+                        });
+                    }
+                });
     }
 
     /** This method is used to hide the keyboard */
@@ -0,0 +1,244 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Two-tier cache of parsed {@link BooksModel} pages: a small in-memory LRU backed by
+ * files in the app cache dir. Entries are keyed by the canonical form of the
+ * {@link BooksQuery}, the startIndex and the page size. Each page is stored as a
+ * {@link BooksResponse}, with the validators and the freshness of its HTTP response, so
+ * that it can be revalidated with a conditional request once it's stale.
+ */
+public class BooksCache {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = BooksCache.class.getSimpleName();
+
+    /** Number of pages kept in memory */
+    private static final int MEMORY_MAX_PAGES = 20;
+
+    /** Maximum size of the disk tier, in bytes */
+    private static final long DISK_MAX_BYTES = 2 * 1024 * 1024;
+
+    /** Time during which a stale disk entry is kept, to be revalidated or as a fallback (7 days) */
+    private static final long DISK_STALE_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    /** Name of the cache sub-directory */
+    private static final String DISK_DIR_NAME = "books";
+
+    private static BooksCache sInstance;
+
+    private final LruCache<String, BooksResponse> mMemoryCache;
+
+    private final DiskTier mDiskTier;
+
+    /** Lock guarding every disk operation */
+    private final Object mDiskLock = new Object();
+
+    // Counters exposed for monitoring
+    private int mMemoryHits;
+    private int mDiskHits;
+    private int mMisses;
+
+    /**
+     * Return the single {@link BooksCache} of the application.
+     */
+    public static synchronized BooksCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BooksCache(new File(context.getApplicationContext().getCacheDir(), DISK_DIR_NAME));
+        }
+        return sInstance;
+    }
+
+    private BooksCache(File diskDir) {
+        mMemoryCache = new LruCache<>(MEMORY_MAX_PAGES);
+        mDiskTier = new DiskTier(diskDir, DISK_MAX_BYTES, DISK_STALE_MILLIS);
+    }
+
+    /**
+     * Build the cache key of a page.
+     *
+     * @param query is the parsed input of the user
+     * @param startIndex is the start index of the page
+     * @param pageSize is the number of items of the page
+     */
+    public static String key(BooksQuery query, int startIndex, int pageSize) {
+        return query.getKey() + "|" + startIndex + "|" + pageSize;
+    }
+
+    /**
+     * Return the cached page for the given key, fresh or not, or null if there is none.
+     * A page found on disk is promoted to the memory tier. Use {@link BooksResponse#isFresh}
+     * to tell whether it must be revalidated.
+     */
+    public BooksResponse get(String key) {
+        BooksResponse booksResponse = mMemoryCache.get(key);
+        if (booksResponse != null) {
+            synchronized (this) {
+                mMemoryHits++;
+            }
+            return booksResponse;
+        }
+
+        booksResponse = readFromDisk(key);
+        synchronized (this) {
+            if (booksResponse != null) {
+                mDiskHits++;
+            } else {
+                mMisses++;
+            }
+        }
+        if (booksResponse != null) {
+            mMemoryCache.put(key, booksResponse);
+        }
+        return booksResponse;
+    }
+
+    /**
+     * Return true if there is a fresh entry for the given key in either tier.
+     * Unlike {@link #get(String)} this doesn't update the counters.
+     */
+    public boolean contains(String key) {
+        BooksResponse booksResponse = mMemoryCache.get(key);
+        if (booksResponse == null) {
+            booksResponse = readFromDisk(key);
+        }
+        return booksResponse != null && booksResponse.isFresh(System.currentTimeMillis());
+    }
+
+    /**
+     * Store the given page in both tiers, replacing the previous one (e.g. by the same page
+     * revalidated by a 304). A response without books isn't stored. A response which must
+     * not be stored (no-store) isn't either, and the previous one is removed.
+     */
+    public void put(String key, BooksResponse booksResponse) {
+        if (booksResponse == null || booksResponse.getBooksModel() == null) {
+            return;
+        }
+        if (!booksResponse.isStorable()) {
+            mMemoryCache.remove(key);
+            synchronized (mDiskLock) {
+                mDiskTier.remove(key);
+            }
+            return;
+        }
+        mMemoryCache.put(key, booksResponse);
+        writeToDisk(key, booksResponse);
+    }
+
+    /** Number of requests served from memory */
+    public synchronized int getMemoryHitCount() {
+        return mMemoryHits;
+    }
+
+    /** Number of requests served from disk */
+    public synchronized int getDiskHitCount() {
+        return mDiskHits;
+    }
+
+    /** Number of requests found in neither tier */
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    /** Number of pages evicted from memory (LRU) or from disk (TTL or size) */
+    public int getEvictionCount() {
+        int diskEvictions;
+        synchronized (mDiskLock) {
+            diskEvictions = mDiskTier.getEvictionCount();
+        }
+        return mMemoryCache.evictionCount() + diskEvictions;
+    }
+
+    /**
+     * Return a readable summary of the counters.
+     */
+    public String getSummary() {
+        return "cache: " + getMemoryHitCount() + " memory hits, " + getDiskHitCount() + " disk hits, "
+                + getMissCount() + " misses, " + getEvictionCount() + " evictions\n";
+    }
+
+    private BooksResponse readFromDisk(String key) {
+        synchronized (mDiskLock) {
+            File file = mDiskTier.fileForKey(key);
+            if (!file.exists()) {
+                return null;
+            }
+
+            // Drop the entry if it's too old to be revalidated or to be a fallback
+            if (System.currentTimeMillis() - file.lastModified() > DISK_STALE_MILLIS) {
+                mDiskTier.evict(file);
+                return null;
+            }
+
+            // The entry is decoded straight from the mapped file, which stays valid once closed
+            RandomAccessFile in = null;
+            try {
+                in = new RandomAccessFile(file, "r");
+                FileChannel channel = in.getChannel();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                // Two keys can share the same file name: check that it's really our entry
+                if (!key.equals(BooksModelCodec.readString(buffer))) {
+                    return null;
+                }
+                BooksModel booksModel = BooksModelCodec.read(buffer);
+
+                // The entries written before the validators only have the age of their file
+                if (!buffer.hasRemaining()) {
+                    return new BooksResponse(booksModel, null, null, file.lastModified(),
+                            BooksResponse.DEFAULT_FRESH_MILLIS, BooksResponse.DEFAULT_STALE_WHILE_REVALIDATE_MILLIS, false);
+                }
+                String etag = BooksModelCodec.readNullableString(buffer);
+                String lastModified = BooksModelCodec.readNullableString(buffer);
+                long receivedAt = readLong(buffer);
+                long freshMillis = readLong(buffer);
+                long staleWhileRevalidateMillis = readLong(buffer);
+                return new BooksResponse(booksModel, etag, lastModified, receivedAt, freshMillis,
+                        staleWhileRevalidateMillis, false);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading the cached books", e);
+                file.delete();
+                return null;
+            } finally {
+                DiskTier.closeQuietly(in);
+            }
+        }
+    }
+
+    private void writeToDisk(String key, BooksResponse booksResponse) {
+        BooksModelCodec.Output entry = new BooksModelCodec.Output();
+        entry.writeString(key);
+        BooksModelCodec.write(booksResponse.getBooksModel(), entry);
+        // The validators follow the page
+        entry.writeNullableString(booksResponse.getEtag());
+        entry.writeNullableString(booksResponse.getLastModified());
+        writeLong(entry, booksResponse.getReceivedAt());
+        writeLong(entry, booksResponse.getFreshMillis());
+        writeLong(entry, booksResponse.getStaleWhileRevalidateMillis());
+        synchronized (mDiskLock) {
+            mDiskTier.write(key, entry);
+        }
+    }
+
+    private static long readLong(ByteBuffer in) throws IOException {
+        if (in.remaining() < 8) {
+            throw new IOException("Truncated validators");
+        }
+        return in.getLong();
+    }
+
+    /** Write a long in the big-endian order of {@link ByteBuffer#getLong()} */
+    private static void writeLong(BooksModelCodec.Output out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift) & 0xFF);
+        }
+    }
+}
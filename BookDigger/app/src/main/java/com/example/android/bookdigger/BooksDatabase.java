@@ -0,0 +1,240 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Local index of every {@link Book} the app has received, searchable with SQLite full-text
+ * search. It answers the searches right away, and when there is no connection at all.
+ */
+public class BooksDatabase extends SQLiteOpenHelper {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = BooksDatabase.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "books.db";
+    private static final int DATABASE_VERSION = 3;
+
+    // Table holding the books, one row per book identified as the network results are
+    private static final String TABLE_BOOKS = "books";
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_KEY = "book_key";
+    private static final String COLUMN_VOLUME_ID = "volume_id";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_AUTHOR = "author";
+    private static final String COLUMN_AUTHORS = "authors";
+    private static final String COLUMN_THUMBNAIL = "thumbnail";
+    private static final String COLUMN_SEEN_AT = "seen_at";
+
+    /** Separator between the names of the authors column, which can't be in a name */
+    private static final char AUTHOR_SEPARATOR = '\u001F';
+
+    // Full-text index of the books table, its docid is the _id of the book
+    private static final String TABLE_BOOKS_FTS = "books_fts";
+
+    /** Maximum number of books returned by a local search */
+    private static final int SEARCH_LIMIT = 50;
+
+    private static BooksDatabase sInstance;
+
+    /**
+     * Return the single {@link BooksDatabase} of the application.
+     */
+    public static synchronized BooksDatabase getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BooksDatabase(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private BooksDatabase(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a {@link BooksDatabase} stored in the given file, e.g. for a benchmark.
+     */
+    BooksDatabase(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_BOOKS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_KEY + " TEXT NOT NULL UNIQUE, "
+                + COLUMN_VOLUME_ID + " TEXT, "
+                + COLUMN_TITLE + " TEXT NOT NULL, "
+                + COLUMN_AUTHORS + " TEXT NOT NULL, "
+                + COLUMN_THUMBNAIL + " TEXT, "
+                + COLUMN_SEEN_AT + " INTEGER NOT NULL)");
+        // FTS3 is available on every supported API level
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_BOOKS_FTS + " USING fts3("
+                + COLUMN_TITLE + ", " + COLUMN_AUTHOR + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The index only holds data which can be downloaded again
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKS_FTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKS);
+        onCreate(db);
+    }
+
+    /**
+     * Add the given books to the index. The books already indexed are skipped: they are
+     * identified by their volume id, as {@link PageMerger} does.
+     * This must be called on a background thread.
+     */
+    public void storeBooks(List<Book> books) {
+        if (books == null || books.isEmpty()) {
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement insertBook = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_BOOKS
+                    + " (" + COLUMN_KEY + ", " + COLUMN_VOLUME_ID + ", " + COLUMN_TITLE + ", "
+                    + COLUMN_AUTHORS + ", " + COLUMN_THUMBNAIL + ", " + COLUMN_SEEN_AT
+                    + ") VALUES (?, ?, ?, ?, ?, ?)");
+            SQLiteStatement insertFts = db.compileStatement("INSERT INTO " + TABLE_BOOKS_FTS
+                    + " (docid, " + COLUMN_TITLE + ", " + COLUMN_AUTHOR + ") VALUES (?, ?, ?)");
+            long now = System.currentTimeMillis();
+
+            // A single transaction for the whole page
+            db.beginTransaction();
+            try {
+                for (Book book : books) {
+                    insertBook.clearBindings();
+                    insertBook.bindString(1, PageMerger.key(book));
+                    if (book.getId() != null) {
+                        insertBook.bindString(2, book.getId());
+                    } else {
+                        insertBook.bindNull(2);
+                    }
+                    insertBook.bindString(3, book.getTitle());
+                    insertBook.bindString(4, joinAuthors(book));
+                    if (book.getSmallThumbnailUrl() != null) {
+                        insertBook.bindString(5, book.getSmallThumbnailUrl());
+                    } else {
+                        insertBook.bindNull(5);
+                    }
+                    insertBook.bindLong(6, now);
+
+                    // -1 means that the book was already indexed
+                    long id = insertBook.executeInsert();
+                    if (id != -1) {
+                        insertFts.bindLong(1, id);
+                        insertFts.bindString(2, book.getTitle());
+                        insertFts.bindString(3, book.getAuthor());
+                        insertFts.executeInsert();
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insertBook.close();
+                insertFts.close();
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem storing the books", e);
+        }
+    }
+
+    /**
+     * Return the indexed books matching every word of the search input (as prefixes), the
+     * most recently seen first, or an empty list if there is none.
+     * This must be called on a background thread.
+     */
+    public List<Book> searchBooks(String searchInput) {
+        List<Book> books = new ArrayList<>();
+        String match = toMatchExpression(searchInput);
+        if (match.isEmpty()) {
+            return books;
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().rawQuery("SELECT b." + COLUMN_VOLUME_ID + ", b." + COLUMN_TITLE
+                    + ", b." + COLUMN_AUTHORS
+                    + ", b." + COLUMN_THUMBNAIL + " FROM " + TABLE_BOOKS_FTS + " f JOIN " + TABLE_BOOKS
+                    + " b ON b." + COLUMN_ID + " = f.docid WHERE " + TABLE_BOOKS_FTS + " MATCH ?"
+                    + " ORDER BY b." + COLUMN_SEEN_AT + " DESC LIMIT " + SEARCH_LIMIT,
+                    new String[]{match});
+            while (cursor.moveToNext()) {
+                books.add(new Book(cursor.getString(0), cursor.getString(1),
+                        splitAuthors(cursor.getString(2)), cursor.getString(3)));
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem searching the books", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Return the names of the authors of the book separated by {@link #AUTHOR_SEPARATOR}, so
+     * that they are read back one by one rather than as a single "A, B" author.
+     */
+    static String joinAuthors(Book book) {
+        StringBuilder authors = new StringBuilder();
+        for (int i = 0; i < book.getAuthorCount(); i++) {
+            if (i > 0) {
+                authors.append(AUTHOR_SEPARATOR);
+            }
+            authors.append(book.getAuthorName(i));
+        }
+        return authors.toString();
+    }
+
+    /**
+     * Return the names of the authors joined by {@link #joinAuthors(Book)}.
+     */
+    static String[] splitAuthors(String authors) {
+        if (authors.isEmpty()) {
+            return new String[0];
+        }
+        List<String> names = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = authors.indexOf(AUTHOR_SEPARATOR, start)) >= 0) {
+            names.add(authors.substring(start, end));
+            start = end + 1;
+        }
+        names.add(authors.substring(start));
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Turn the search input into an FTS MATCH expression: every word becomes a prefix
+     * query, and the FTS operators typed by the user are dropped.
+     */
+    static String toMatchExpression(String searchInput) {
+        StringBuilder match = new StringBuilder();
+        if (searchInput == null) {
+            return "";
+        }
+        for (String word : searchInput.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+        return match.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.android.bookdigger;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the Books API couldn't be queried: an error response, or an I/O error before
+ * the response was read. Tells whether trying again later could succeed.
+ */
+public class BooksFetchException extends IOException {
+
+    /** Response code of the failures which happened before any response */
+    public static final int NO_RESPONSE = -1;
+
+    /** HTTP status of the rate limiting responses */
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final int mResponseCode;
+
+    /**
+     * Constructs a {@link BooksFetchException} for an error response.
+     *
+     * @param responseCode is the HTTP status of the response
+     */
+    public BooksFetchException(int responseCode) {
+        super("Error response code: " + responseCode);
+        mResponseCode = responseCode;
+    }
+
+    /**
+     * Constructs a {@link BooksFetchException} for a failure without response.
+     */
+    public BooksFetchException(String message, Throwable cause) {
+        super(message);
+        initCause(cause);
+        mResponseCode = NO_RESPONSE;
+    }
+
+    /** Return the HTTP status of the response, or {@link #NO_RESPONSE} */
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    /**
+     * Return true if the failure is likely temporary: I/O errors, server errors (5xx) and
+     * rate limiting (429). Client errors (4xx) would fail again.
+     */
+    public boolean isTransient() {
+        return mResponseCode == NO_RESPONSE || mResponseCode == TOO_MANY_REQUESTS
+                || mResponseCode >= 500;
+    }
+}
@@ -1,16 +1,18 @@
 package com.example.android.bookdigger;
 
-import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.util.Log;
 
-import java.util.List;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * BookDigger created by JCoupier on 07/06/2017.
- * Loads a list of books by using an AsyncTask to perform the
- * network request to the given URL.
+ * Loads a list of books by performing the network request to the given URL on the
+ * user pool of the {@link FetchScheduler}.
  */
-public class BooksLoader extends AsyncTaskLoader<BooksModel> {
+public class BooksLoader extends ScheduledLoader<BooksModel> {
 
     /** Tag for log messages */
     private static final String LOG_TAG = BooksLoader.class.getName();
@@ -24,6 +26,21 @@ public class BooksLoader extends AsyncTaskLoader<BooksModel> {
     /** Start index */
     private int mStartIndex;
 
+    /** True if the last load failed, as opposed to finding no book */
+    private volatile boolean mFailed;
+
+    /** Subscription of the running load to its request, used to cancel it */
+    private volatile BooksRequestRegistry.Ticket mTicket;
+
+    /** Number of items per page */
+    private int mPageSize;
+
+    /** Maximum value of maxResults accepted by the API */
+    public static final int MAX_PAGE_SIZE = 40;
+
+    /** Cache keys of the pages being revalidated in the background */
+    private static final Set<String> sRevalidating = new HashSet<>();
+
     /**
      * Constructs a new {@link BooksLoader}.
      *
@@ -31,17 +48,14 @@ public class BooksLoader extends AsyncTaskLoader<BooksModel> {
      * @param url to load data from
      * @param searchInput is the input of the user
      * @param startIndex is the start index for the request
+     * @param pageSize is the number of items per page (at most {@link #MAX_PAGE_SIZE})
      */
-    public BooksLoader(Context context, String url, String searchInput, int startIndex) {
-        super(context);
+    public BooksLoader(Context context, String url, String searchInput, int startIndex, int pageSize) {
+        super(context, FetchScheduler.PRIORITY_HIGH);
         mUrl = url;
         mSearchInput = searchInput;
         mStartIndex = startIndex;
-    }
-
-    @Override
-    protected void onStartLoading() {
-        forceLoad();
+        mPageSize = pageSize;
     }
 
     /**
@@ -49,11 +63,173 @@ public class BooksLoader extends AsyncTaskLoader<BooksModel> {
      */
     @Override
     public BooksModel loadInBackground() {
-        if (mUrl == null || mSearchInput == null) {
+        // A blank input has nothing to search: the API would reject it
+        if (mUrl == null || BooksQuery.parse(mSearchInput).isEmpty()) {
+            return null;
+        }
+
+        BooksRequestRegistry.Ticket ticket = new BooksRequestRegistry.Ticket();
+        mTicket = ticket;
+        BooksTracer.Span span = BooksTracer.begin(BooksTracer.PHASE_LOAD);
+        try {
+            BooksModel booksModel = loadPage(getContext(), mUrl, mSearchInput, mStartIndex,
+                    mPageSize, ticket);
+            mFailed = false;
+            return booksModel;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem loading the books", e);
+            mFailed = true;
             return null;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Return true if the last load failed (e.g. the Books API is unreachable), in which
+     * case the delivered result is null although there may be books.
+     */
+    public boolean hasFailed() {
+        return mFailed;
+    }
+
+    /**
+     * Called on the main thread when the running load is superseded: abort its request.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        BooksRequestRegistry.Ticket ticket = mTicket;
+        if (ticket != null) {
+            BooksRequestRegistry.cancel(ticket);
+        }
+    }
+
+    /**
+     * Return the page of books starting at startIndex for the given search input, from the
+     * {@link BooksCache} if it has already been loaded, or from the network otherwise.
+     * The search input is canonicalized by {@link BooksQuery}, so equivalent inputs share
+     * their cached pages and their requests.
+     * A fresh cached page is returned as is. A stale one is returned at once while it's
+     * revalidated in the background, or revalidated first once it's too old for that. The
+     * revalidation is a conditional request: a 304 keeps the cached page without
+     * downloading nor parsing it again.
+     * This is a blocking call which must be made on a background thread.
+     *
+     * @param context used to get the {@link BooksCache} and the {@link BooksDatabase}
+     * @param url to load data from
+     * @param searchInput is the input of the user
+     * @param startIndex is the start index for the request
+     * @param pageSize is the number of items per page (at most {@link #MAX_PAGE_SIZE})
+     * @param ticket is used to cancel the request, see {@link BooksRequestRegistry#cancel}
+     * @throws IOException if the request failed and the page isn't in the cache, even stale
+     */
+    static BooksModel loadPage(Context context, String url, String searchInput, int startIndex,
+                               int pageSize, BooksRequestRegistry.Ticket ticket) throws IOException {
+        pageSize = clampPageSize(pageSize);
+        BooksQuery query = BooksQuery.parse(searchInput);
+        String requestUrl = url + query.toQueryParameter() + "&startIndex=" + startIndex
+                + "&maxResults=" + pageSize + "&fields=" + BooksUtils.FIELDS_PROJECTION;
+
+        // Serve the page from the cache if it has already been loaded
+        BooksCache booksCache = BooksCache.getInstance(context);
+        String cacheKey = BooksCache.key(query, startIndex, pageSize);
+        BooksTracer.Span cacheSpan = BooksTracer.begin(BooksTracer.PHASE_CACHE);
+        BooksResponse cached = booksCache.get(cacheKey);
+        cacheSpan.end();
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.isFresh(now)) {
+            return cached.getBooksModel();
+        }
+        if (cached != null && cached.canServeWhileRevalidating(now)) {
+            revalidateInBackground(context.getApplicationContext(), requestUrl, cacheKey, cached);
+            return cached.getBooksModel();
         }
 
         // Perform the network request, parse the response, and extract a list of books.
-        return BooksUtils.fetchBookData(mUrl + mSearchInput + "&startIndex=" + mStartIndex);
+        // Identical requests already in flight (e.g. a prefetch of this page) are joined
+        BooksResponse booksResponse;
+        try {
+            booksResponse = BooksRequestRegistry.fetch(requestUrl, cached, ticket);
+        } catch (IOException e) {
+            // Better show the page as it was than nothing
+            if (cached == null) {
+                throw e;
+            }
+            Log.d(LOG_TAG, "Serving a stale page after: " + e.getMessage());
+            return cached.getBooksModel();
+        }
+        if (booksResponse == null) {
+            // Cancelled
+            return null;
+        }
+        storeResponse(context, cacheKey, booksResponse);
+        return booksResponse.getBooksModel();
+    }
+
+    /**
+     * Revalidate a stale cached page on the prefetch pool, unless it's already being
+     * revalidated. The cache is updated for the next loads of the page.
+     */
+    private static void revalidateInBackground(final Context context, final String requestUrl,
+                                               final String cacheKey, final BooksResponse cached) {
+        synchronized (sRevalidating) {
+            if (!sRevalidating.add(cacheKey)) {
+                return;
+            }
+        }
+        FetchScheduler.getInstance().submit(FetchScheduler.POOL_PREFETCH,
+                new FetchScheduler.Task(FetchScheduler.PRIORITY_LOW) {
+                    @Override
+                    protected void execute() {
+                        try {
+                            BooksResponse booksResponse = BooksRequestRegistry.fetch(requestUrl, cached,
+                                    new BooksRequestRegistry.Ticket());
+                            if (booksResponse != null) {
+                                storeResponse(context, cacheKey, booksResponse);
+                            }
+                        } catch (IOException e) {
+                            // The stale page stays in the cache until the next attempt
+                            Log.d(LOG_TAG, "Problem revalidating a page: " + e.getMessage());
+                        } finally {
+                            synchronized (sRevalidating) {
+                                sRevalidating.remove(cacheKey);
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Store a fetched page in the {@link BooksCache}, and index its books unless it's the
+     * cached page confirmed by a 304 or the server forbade storing it. A page which couldn't
+     * be parsed to the end isn't stored at all: the next load fetches it again.
+     */
+    private static void storeResponse(Context context, String cacheKey, BooksResponse booksResponse) {
+        if (booksResponse.getBooksModel() != null && !booksResponse.getBooksModel().isComplete()) {
+            Log.d(LOG_TAG, "Not storing a page which couldn't be parsed to the end");
+            return;
+        }
+        BooksCache.getInstance(context).put(cacheKey, booksResponse);
+
+        // Index the books so that they can be found offline
+        if (booksResponse.getBooksModel() != null && !booksResponse.isNotModified()
+                && booksResponse.isStorable()) {
+            BooksDatabase.getInstance(context).storeBooks(booksResponse.getBooksModel().getBooks());
+        }
+    }
+
+    /**
+     * Return true if the given page is already in the {@link BooksCache}.
+     */
+    static boolean isPageCached(Context context, String searchInput, int startIndex, int pageSize) {
+        return BooksCache.getInstance(context).contains(
+                BooksCache.key(BooksQuery.parse(searchInput), startIndex, clampPageSize(pageSize)));
+    }
+
+    /**
+     * Return the given page size bounded to the values accepted by the API.
+     */
+    static int clampPageSize(int pageSize) {
+        return Math.max(1, Math.min(MAX_PAGE_SIZE, pageSize));
     }
 }
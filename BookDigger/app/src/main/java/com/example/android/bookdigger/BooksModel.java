@@ -14,6 +14,9 @@ public class BooksModel {
     // The list of book items obtained from the JSON parsing
     private List<Book> mBooks;
 
+    // False if the response couldn't be parsed to the end
+    private boolean mComplete;
+
     /**
      * Constructs a new {@link BooksModel} object.
      *
@@ -21,8 +24,20 @@ public class BooksModel {
      * @param books is the List of Book object
      */
     public BooksModel(int totalItems, List<Book> books){
+        this(totalItems, books, true);
+    }
+
+    /**
+     * Constructs a new {@link BooksModel} object.
+     *
+     * @param totalItems is the value of totalItems
+     * @param books is the List of Book object
+     * @param complete is false if the parsing failed partway, books being the ones read before
+     */
+    public BooksModel(int totalItems, List<Book> books, boolean complete){
         mTotalItems = totalItems;
         mBooks = books;
+        mComplete = complete;
     }
 
     public int getTotalItems() {
@@ -32,4 +47,12 @@ public class BooksModel {
     public List<Book> getBooks() {
         return mBooks;
     }
+
+    /**
+     * Return false if the response couldn't be parsed to the end: the page can be shown,
+     * but it must not be cached.
+     */
+    public boolean isComplete() {
+        return mComplete;
+    }
 }
@@ -0,0 +1,278 @@
+package com.example.android.bookdigger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes and reads a {@link BooksModel} as compact binary data, so that it can be stored
+ * (disk cache, saved instance state) without keeping the JSON response around.
+ *
+ * <p>The format starts with its version. Integers are unsigned varints and strings are
+ * UTF-8 bytes prefixed with their length. The strings repeated across the books (authors,
+ * thumbnail url parts) are written once in a dictionary and referenced by their index, and
+ * the optional fields of a book are announced by bitflags:</p>
+ * <pre>
+ * version totalItems dictionarySize string*
+ * bookCount (flags [id] title authorCount authorIndex* [thumbnail])*
+ * </pre>
+ * The data is read straight from a {@link ByteBuffer}, e.g. a memory-mapped file.
+ */
+public class BooksModelCodec {
+
+    /** Version of the format, written first so that data in another format is rejected */
+    private static final int FORMAT_VERSION = 4;
+
+    // Flags of the optional fields of a book
+    private static final int FLAG_ID = 1;
+    private static final int FLAG_THUMBNAIL = 1 << 1;
+    /** The thumbnail url contains the id: only the dictionary indexes of the parts around it are written */
+    private static final int FLAG_THUMBNAIL_AROUND_ID = 1 << 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BooksModelCodec}
+     * object. This class only holds static methods.
+     */
+    private BooksModelCodec() {
+    }
+
+    /**
+     * Growable buffer the models are written to, with the primitives of the format.
+     */
+    static class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(1024);
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        /** Write a string which may be null, preceded by a presence byte */
+        void writeNullableString(String value) {
+            write(value == null ? 0 : 1);
+            if (value != null) {
+                writeString(value);
+            }
+        }
+    }
+
+    /**
+     * Write the given {@link BooksModel} to the {@link Output}.
+     */
+    static void write(BooksModel booksModel, Output out) {
+        List<Book> books = booksModel.getBooks();
+
+        // First collect the repeated strings, which are written before the books
+        List<String> dictionary = new ArrayList<>();
+        Map<String, Integer> indexes = new HashMap<>();
+        for (Book book : books) {
+            for (int i = 0; i < book.getAuthorCount(); i++) {
+                addToDictionary(book.getAuthorName(i), dictionary, indexes);
+            }
+            int idStart = thumbnailIdStart(book);
+            if (idStart >= 0) {
+                String smallThumbnailUrl = book.getSmallThumbnailUrl();
+                addToDictionary(smallThumbnailUrl.substring(0, idStart), dictionary, indexes);
+                addToDictionary(smallThumbnailUrl.substring(idStart + book.getId().length()),
+                        dictionary, indexes);
+            }
+        }
+
+        out.writeVarInt(FORMAT_VERSION);
+        out.writeVarInt(booksModel.getTotalItems());
+        out.writeVarInt(dictionary.size());
+        for (String value : dictionary) {
+            out.writeString(value);
+        }
+
+        out.writeVarInt(books.size());
+        for (Book book : books) {
+            String id = book.getId();
+            String smallThumbnailUrl = book.getSmallThumbnailUrl();
+            int idStart = thumbnailIdStart(book);
+            int flags = 0;
+            if (id != null) {
+                flags |= FLAG_ID;
+            }
+            if (idStart >= 0) {
+                flags |= FLAG_THUMBNAIL_AROUND_ID;
+            } else if (smallThumbnailUrl != null) {
+                flags |= FLAG_THUMBNAIL;
+            }
+            out.write(flags);
+
+            if (id != null) {
+                out.writeString(id);
+            }
+            out.writeString(book.getTitle());
+            int authorCount = book.getAuthorCount();
+            out.writeVarInt(authorCount);
+            for (int i = 0; i < authorCount; i++) {
+                out.writeVarInt(indexes.get(book.getAuthorName(i)));
+            }
+            if (idStart >= 0) {
+                out.writeVarInt(indexes.get(smallThumbnailUrl.substring(0, idStart)));
+                out.writeVarInt(indexes.get(smallThumbnailUrl.substring(idStart + id.length())));
+            } else if (smallThumbnailUrl != null) {
+                out.writeString(smallThumbnailUrl);
+            }
+        }
+    }
+
+    /**
+     * Read a {@link BooksModel} from the position of the buffer, which is moved past it.
+     *
+     * @throws IOException if the data is in another format or is corrupted
+     */
+    public static BooksModel read(ByteBuffer in) throws IOException {
+        try {
+            int version = readVarInt(in);
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported books format version " + version);
+            }
+            int totalItems = readVarInt(in);
+
+            String[] dictionary = new String[readCount(in)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readString(in);
+            }
+            int count = readCount(in);
+            List<Book> books = new BookColumns(count);
+            for (int i = 0; i < count; i++) {
+                int flags = in.get();
+                String id = (flags & FLAG_ID) != 0 ? readString(in) : null;
+                String title = readString(in);
+                String[] authors = new String[readCount(in)];
+                for (int j = 0; j < authors.length; j++) {
+                    authors[j] = dictionary[readVarInt(in)];
+                }
+                String smallThumbnailUrl = null;
+                if ((flags & FLAG_THUMBNAIL_AROUND_ID) != 0 && id != null) {
+                    smallThumbnailUrl = dictionary[readVarInt(in)] + id + dictionary[readVarInt(in)];
+                } else if ((flags & FLAG_THUMBNAIL) != 0) {
+                    smallThumbnailUrl = readString(in);
+                }
+                books.add(new Book(id, title, authors, smallThumbnailUrl));
+            }
+            return new BooksModel(totalItems, books);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted books data", e);
+        }
+    }
+
+    /**
+     * Return the given {@link BooksModel} written as a byte array, e.g. to put it in a Bundle.
+     */
+    public static byte[] toByteArray(BooksModel booksModel) {
+        Output out = new Output();
+        write(booksModel, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Read a {@link BooksModel} previously written by {@link #toByteArray(BooksModel)}.
+     */
+    public static BooksModel fromByteArray(byte[] bytes) throws IOException {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Read a varint written by {@link Output#writeVarInt(int)}. A truncated buffer is reported
+     * as an IOException, as any malformed data.
+     */
+    static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new IOException("Truncated varint");
+            }
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Read a string written by {@link Output#writeString(String)}. The characters are decoded
+     * from the backing array of the buffer when it has one, without copying the bytes.
+     */
+    static String readString(ByteBuffer in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Malformed string length " + length);
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Read a string written by {@link Output#writeNullableString(String)}.
+     */
+    static String readNullableString(ByteBuffer in) throws IOException {
+        if (!in.hasRemaining()) {
+            throw new IOException("Truncated string");
+        }
+        return in.get() == 0 ? null : readString(in);
+    }
+
+    /**
+     * Read a number of elements, which can't be more than the remaining bytes.
+     */
+    private static int readCount(ByteBuffer in) throws IOException {
+        int count = readVarInt(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("Malformed count " + count);
+        }
+        return count;
+    }
+
+    private static void addToDictionary(String value, List<String> dictionary, Map<String, Integer> indexes) {
+        if (!indexes.containsKey(value)) {
+            indexes.put(value, dictionary.size());
+            dictionary.add(value);
+        }
+    }
+
+    /**
+     * Return the index of the id in the thumbnail url of the book, or -1 if it isn't there.
+     */
+    private static int thumbnailIdStart(Book book) {
+        String id = book.getId();
+        String smallThumbnailUrl = book.getSmallThumbnailUrl();
+        if (id == null || id.isEmpty() || smallThumbnailUrl == null) {
+            return -1;
+        }
+        return smallThumbnailUrl.indexOf(id);
+    }
+}
@@ -0,0 +1,330 @@
+package com.example.android.bookdigger;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A search input parsed into its terms and its field operators (intitle:, inauthor:...),
+ * folded so that the inputs which only differ in case, whitespace, punctuation around the
+ * words or operator spelling give the same query. Its canonical form is what's sent to the
+ * Books API and what keys the {@link BooksCache}, so equivalent searches share their pages
+ * and their in-flight requests. Immutable.
+ */
+public final class BooksQuery {
+
+    public static final String INTITLE = "intitle";
+    public static final String INAUTHOR = "inauthor";
+    public static final String INPUBLISHER = "inpublisher";
+    public static final String SUBJECT = "subject";
+    public static final String ISBN = "isbn";
+    public static final String LCCN = "lccn";
+    public static final String OCLC = "oclc";
+
+    /** Operators of the Books API, in the order of the canonical form */
+    private static final String[] OPERATORS = {INTITLE, INAUTHOR, INPUBLISHER, SUBJECT, ISBN, LCCN, OCLC};
+
+    /** Free terms: words, and phrases when they contain a space */
+    private final List<String> mTerms;
+
+    /** Values of each operator given, without duplicates */
+    private final Map<String, List<String>> mFilters;
+
+    private final String mCanonical;
+
+    private BooksQuery(List<String> terms, Map<String, List<String>> filters) {
+        mTerms = Collections.unmodifiableList(terms);
+        mFilters = filters;
+        mCanonical = buildCanonical();
+    }
+
+    /**
+     * Parse a search input. Never returns null: a null or blank input gives an empty query.
+     */
+    public static BooksQuery parse(String searchInput) {
+        List<String> terms = new ArrayList<>();
+        Map<String, List<String>> filters = new LinkedHashMap<>();
+        if (searchInput == null) {
+            return new BooksQuery(terms, filters);
+        }
+
+        // Composed and decomposed accents are the same text
+        String input = Normalizer.normalize(searchInput, Normalizer.Form.NFC);
+        int length = input.length();
+        int i = 0;
+        while (i < length) {
+            if (Character.isWhitespace(input.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            // A quoted phrase
+            if (input.charAt(i) == '"') {
+                int end = closingQuote(input, i + 1);
+                addTerm(terms, foldPhrase(input.substring(i + 1, end)));
+                i = Math.min(length, end + 1);
+                continue;
+            }
+
+            int end = i;
+            while (end < length && !Character.isWhitespace(input.charAt(end))) {
+                end++;
+            }
+            String token = input.substring(i, end);
+            String operator = operator(token);
+            if (operator == null) {
+                addTerm(terms, foldWord(token, true));
+                i = end;
+                continue;
+            }
+
+            // The value follows the colon, or the next token if the user typed a space
+            int valueStart = i + operator.length() + 1;
+            if (valueStart == end) {
+                while (valueStart < length && Character.isWhitespace(input.charAt(valueStart))) {
+                    valueStart++;
+                }
+            }
+            int valueEnd;
+            String value;
+            if (valueStart < length && input.charAt(valueStart) == '"') {
+                valueEnd = closingQuote(input, valueStart + 1);
+                value = input.substring(valueStart + 1, valueEnd);
+                valueEnd = Math.min(length, valueEnd + 1);
+            } else {
+                valueEnd = valueStart;
+                while (valueEnd < length && !Character.isWhitespace(input.charAt(valueEnd))) {
+                    valueEnd++;
+                }
+                value = input.substring(valueStart, valueEnd);
+            }
+            addFilter(filters, operator, foldFilter(operator, value));
+            i = valueEnd;
+        }
+        return new BooksQuery(terms, filters);
+    }
+
+    /**
+     * Return the free terms of the query, without operators. A term containing a space is
+     * a phrase.
+     */
+    public List<String> getTerms() {
+        return mTerms;
+    }
+
+    /**
+     * Return the values given to an operator (e.g. {@link #INAUTHOR}), possibly none.
+     */
+    public List<String> getFilters(String operator) {
+        List<String> values = mFilters.get(operator);
+        return values == null ? Collections.<String>emptyList() : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Return true if the query has neither term nor operator, so there is nothing to search.
+     */
+    public boolean isEmpty() {
+        return mCanonical.isEmpty();
+    }
+
+    /**
+     * Return the canonical form of the query, equal for every equivalent search input.
+     * It keys the pages of the query in the {@link BooksCache}.
+     */
+    public String getKey() {
+        return mCanonical;
+    }
+
+    /**
+     * Return a short stable hash of the canonical form (16 hex digits), to count or log the
+     * queries without their text. Unlike {@link #getKey()}, it can collide.
+     */
+    public String getHash() {
+        // 64-bit FNV-1a: String.hashCode is only 32 bits
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < mCanonical.length(); i++) {
+            hash ^= mCanonical.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        String hex = Long.toHexString(hash);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * Return the canonical form encoded for the q parameter of a request URL.
+     */
+    public String toQueryParameter() {
+        try {
+            return URLEncoder.encode(mCanonical, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // Every implementation supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BooksQuery && mCanonical.equals(((BooksQuery) o).mCanonical);
+    }
+
+    @Override
+    public int hashCode() {
+        return mCanonical.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mCanonical;
+    }
+
+    /**
+     * Build the canonical form: the terms in the order typed, then the operators in the
+     * order of {@link #OPERATORS}, a phrase being quoted.
+     */
+    private String buildCanonical() {
+        StringBuilder canonical = new StringBuilder();
+        for (String term : mTerms) {
+            appendValue(canonical, null, term);
+        }
+        for (String operator : OPERATORS) {
+            List<String> values = mFilters.get(operator);
+            if (values != null) {
+                for (String value : values) {
+                    appendValue(canonical, operator, value);
+                }
+            }
+        }
+        return canonical.toString();
+    }
+
+    private static void appendValue(StringBuilder canonical, String operator, String value) {
+        if (canonical.length() > 0) {
+            canonical.append(' ');
+        }
+        if (operator != null) {
+            canonical.append(operator).append(':');
+        }
+        if (value.indexOf(' ') >= 0) {
+            canonical.append('"').append(value).append('"');
+        } else {
+            canonical.append(value);
+        }
+    }
+
+    /**
+     * Return the operator starting the given token (e.g. "InTitle:Java" gives "intitle"),
+     * or null if it doesn't start with one.
+     */
+    private static String operator(String token) {
+        int colon = token.indexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        String name = token.substring(0, colon).toLowerCase(Locale.US);
+        for (String operator : OPERATORS) {
+            if (operator.equals(name)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the index of the quote closing a phrase which starts at the given index, or
+     * the length of the input if the user didn't close it.
+     */
+    private static int closingQuote(String input, int start) {
+        int end = input.indexOf('"', start);
+        return end < 0 ? input.length() : end;
+    }
+
+    private static void addTerm(List<String> terms, String term) {
+        if (!term.isEmpty()) {
+            terms.add(term);
+        }
+    }
+
+    private static void addFilter(Map<String, List<String>> filters, String operator, String value) {
+        if (value.isEmpty()) {
+            return;
+        }
+        List<String> values = filters.get(operator);
+        if (values == null) {
+            values = new ArrayList<>();
+            filters.put(operator, values);
+        }
+        // The operators are combined with AND: a repeated one changes nothing
+        if (!values.contains(value)) {
+            values.add(value);
+        }
+    }
+
+    /**
+     * Fold the value of an operator. The identifiers only keep their letters and digits,
+     * so that an ISBN typed with hyphens is the same as without.
+     */
+    private static String foldFilter(String operator, String value) {
+        if (ISBN.equals(operator) || LCCN.equals(operator) || OCLC.equals(operator)) {
+            StringBuilder identifier = new StringBuilder();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    identifier.append(c);
+                }
+            }
+            return identifier.toString().toLowerCase(Locale.US);
+        }
+        return foldPhrase(value);
+    }
+
+    /**
+     * Fold every word of a phrase and join them with single spaces.
+     */
+    private static String foldPhrase(String phrase) {
+        StringBuilder folded = new StringBuilder();
+        for (String word : phrase.split("\\s+")) {
+            word = foldWord(word, false);
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (folded.length() > 0) {
+                folded.append(' ');
+            }
+            folded.append(word);
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Lower the case of a word and strip the punctuation around it. The punctuation inside
+     * it ("o'reilly") is kept, as are the trailing signs of names like "c++" or "c#", and a
+     * leading minus excluding a free term.
+     *
+     * @param exclusion is true if the word may be excluded by a leading minus
+     */
+    private static String foldWord(String word, boolean exclusion) {
+        int start = 0;
+        int end = word.length();
+        while (start < end && !Character.isLetterOrDigit(word.charAt(start))) {
+            start++;
+        }
+        while (end > start && !Character.isLetterOrDigit(word.charAt(end - 1))
+                && word.charAt(end - 1) != '+' && word.charAt(end - 1) != '#') {
+            end--;
+        }
+        if (start == end) {
+            return "";
+        }
+        String folded = word.substring(start, end).toLowerCase(Locale.US);
+        if (exclusion && start > 0 && word.charAt(start - 1) == '-') {
+            return "-" + folded;
+        }
+        return folded;
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.android.bookdigger;
+
+import android.os.Process;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of the requests in flight. Identical concurrent requests share a single network
+ * call, and a call whose callers have all been cancelled is aborted (its HttpURLConnection
+ * is disconnected).
+ */
+public class BooksRequestRegistry {
+
+    /** Guards every field of the registry, of the calls and of the tickets */
+    private static final Object sLock = new Object();
+
+    /** The calls in flight, by request URL */
+    private static final Map<String, Call> sInFlight = new HashMap<>();
+
+    /** Number of requests which joined a call already in flight */
+    private static int sCoalescedCount;
+
+    /** Number of calls aborted because no caller needed them anymore */
+    private static int sCancelledCount;
+
+    /**
+     * A caller's subscription to a request. Create one per load so that the load can be
+     * cancelled with {@link #cancel(Ticket)} from another thread.
+     */
+    public static class Ticket {
+        private Call mCall;
+        private boolean mCancelled;
+    }
+
+    /**
+     * A network call shared by all the tickets requesting the same URL.
+     */
+    private static class Call implements BooksUtils.RequestHandle {
+        private final String mUrl;
+        private final int mOwnerTid = Process.myTid();
+        private int mSubscribers;
+        private boolean mDone;
+        private boolean mCancelled;
+        private BooksResponse mResult;
+        private IOException mError;
+        private BooksTransport.Response mResponse;
+
+        Call(String url) {
+            mUrl = url;
+        }
+
+        @Override
+        public boolean onRequestOpened(BooksTransport.Response response) {
+            synchronized (sLock) {
+                mResponse = response;
+                return !mCancelled;
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            synchronized (sLock) {
+                return mCancelled;
+            }
+        }
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BooksRequestRegistry}
+     * object. This class only holds static methods.
+     */
+    private BooksRequestRegistry() {
+    }
+
+    /**
+     * Fetch the given URL, joining the identical request in flight if there is one.
+     * This is a blocking call which must be made on a background thread.
+     *
+     * @param requestUrl is the URL to fetch
+     * @param cached is the stored response of the URL to revalidate with a conditional
+     *               request, or null. A joined request uses the one of the first caller.
+     * @param ticket identifies this caller, see {@link #cancel(Ticket)}
+     * @return the {@link BooksResponse}, or null if the request was cancelled
+     * @throws IOException if the request failed, see {@link ResilientFetcher}
+     */
+    public static BooksResponse fetch(String requestUrl, BooksResponse cached, Ticket ticket) throws IOException {
+        Call call;
+        boolean owner;
+        synchronized (sLock) {
+            if (ticket.mCancelled) {
+                return null;
+            }
+            call = sInFlight.get(requestUrl);
+            owner = call == null;
+            if (owner) {
+                call = new Call(requestUrl);
+                sInFlight.put(requestUrl, call);
+            } else {
+                sCoalescedCount++;
+            }
+            call.mSubscribers++;
+            ticket.mCall = call;
+        }
+        if (!owner) {
+            inheritPriority(call.mOwnerTid);
+        }
+
+        if (owner) {
+            // This caller performs the request for every subscriber
+            BooksResponse result = null;
+            IOException error = null;
+            try {
+                result = ResilientFetcher.fetch(requestUrl, cached, call);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (sLock) {
+                if (sInFlight.get(requestUrl) == call) {
+                    sInFlight.remove(requestUrl);
+                }
+                call.mResult = call.mCancelled ? null : result;
+                call.mError = call.mCancelled ? null : error;
+                call.mDone = true;
+                sLock.notifyAll();
+            }
+        } else {
+            // Wait for the owner of the call to deliver the result
+            synchronized (sLock) {
+                while (!call.mDone && !ticket.mCancelled) {
+                    try {
+                        sLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                }
+            }
+        }
+
+        synchronized (sLock) {
+            if (ticket.mCancelled) {
+                return null;
+            }
+            if (call.mError != null) {
+                throw call.mError;
+            }
+            return call.mResult;
+        }
+    }
+
+    /**
+     * Cancel the request of the given ticket. The network call is aborted if no other
+     * ticket is waiting for it.
+     */
+    public static void cancel(Ticket ticket) {
+        BooksTransport.Response response = null;
+        synchronized (sLock) {
+            if (ticket.mCancelled) {
+                return;
+            }
+            ticket.mCancelled = true;
+            sLock.notifyAll();
+
+            Call call = ticket.mCall;
+            if (call == null || call.mDone) {
+                return;
+            }
+            call.mSubscribers--;
+            if (call.mSubscribers == 0) {
+                call.mCancelled = true;
+                sInFlight.remove(call.mUrl);
+                sCancelledCount++;
+                response = call.mResponse;
+            }
+        }
+
+        // Aborting makes the blocked read of the owner fail right away
+        if (response != null) {
+            response.abort();
+        }
+    }
+
+    /**
+     * Raise the priority of the thread making a call to the one of the calling thread, so that
+     * a user load joining a prefetch doesn't wait at the background priority.
+     */
+    private static void inheritPriority(int ownerTid) {
+        try {
+            int priority = Process.getThreadPriority(Process.myTid());
+            if (priority < Process.getThreadPriority(ownerTid)) {
+                Process.setThreadPriority(ownerTid, priority);
+            }
+        } catch (IllegalArgumentException | SecurityException e) {
+            // The owner thread is gone, or can't be changed: it will just be slower
+        }
+    }
+
+    /** Number of requests which were served by a call already in flight */
+    public static int getCoalescedCount() {
+        synchronized (sLock) {
+            return sCoalescedCount;
+        }
+    }
+
+    /** Number of network calls aborted because they were superseded */
+    public static int getCancelledCount() {
+        synchronized (sLock) {
+            return sCancelledCount;
+        }
+    }
+}
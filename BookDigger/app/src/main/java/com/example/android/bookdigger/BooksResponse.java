@@ -0,0 +1,234 @@
+package com.example.android.bookdigger;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A {@link BooksModel} with the validators (ETag, Last-Modified) and the freshness
+ * (Cache-Control) of the HTTP response it was read from, as stored by the {@link BooksCache}.
+ * A stored page is fresh for max-age, then it's served at once while it's revalidated in the
+ * background for stale-while-revalidate, then it's revalidated before being served.
+ * A no-store response isn't stored at all.
+ * Immutable.
+ */
+public class BooksResponse {
+
+    /** Freshness of a page whose response has no max-age, as before the validators (24 hours) */
+    static final long DEFAULT_FRESH_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** Time after freshness during which a page is served while revalidated, if not given (24 hours) */
+    static final long DEFAULT_STALE_WHILE_REVALIDATE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    // Request and response headers
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    /** The page, or null if the search has no book */
+    private final BooksModel mBooksModel;
+
+    private final String mEtag;
+
+    private final String mLastModified;
+
+    /** Wall clock time at which the response was received, or revalidated */
+    private final long mReceivedAt;
+
+    /** Time during which the page is fresh */
+    private final long mFreshMillis;
+
+    /** Time after freshness during which the page can be served while it's revalidated */
+    private final long mStaleWhileRevalidateMillis;
+
+    /** True if the page is a stored one which the server confirmed with a 304 */
+    private final boolean mNotModified;
+
+    /** True if the freshness was sent by the server, false if it's the default one */
+    private final boolean mFreshnessGiven;
+
+    /** True if the response must not be stored (Cache-Control: no-store) */
+    private final boolean mNoStore;
+
+    /**
+     * Constructs a new {@link BooksResponse}.
+     *
+     * @param booksModel is the page, or null if the search has no book
+     * @param etag is the ETag of the response (may be null)
+     * @param lastModified is the Last-Modified of the response (may be null)
+     * @param receivedAt is the wall clock time at which the response was received
+     * @param freshMillis is the time during which the page is fresh
+     * @param staleWhileRevalidateMillis is the time after it during which it's revalidated in the background
+     * @param notModified is true for a stored page confirmed by a 304
+     */
+    public BooksResponse(BooksModel booksModel, String etag, String lastModified, long receivedAt,
+                         long freshMillis, long staleWhileRevalidateMillis, boolean notModified) {
+        this(booksModel, etag, lastModified, receivedAt, freshMillis, staleWhileRevalidateMillis,
+                notModified, true, false);
+    }
+
+    private BooksResponse(BooksModel booksModel, String etag, String lastModified, long receivedAt,
+                          long freshMillis, long staleWhileRevalidateMillis, boolean notModified,
+                          boolean freshnessGiven, boolean noStore) {
+        mBooksModel = booksModel;
+        mEtag = etag;
+        mLastModified = lastModified;
+        mReceivedAt = receivedAt;
+        mFreshMillis = freshMillis;
+        mStaleWhileRevalidateMillis = staleWhileRevalidateMillis;
+        mNotModified = notModified;
+        mFreshnessGiven = freshnessGiven;
+        mNoStore = noStore;
+    }
+
+    /**
+     * Return the {@link BooksResponse} of a response with the given headers.
+     *
+     * @param booksModel is the parsed page, or null if the search has no book
+     * @param etag is the ETag header (may be null)
+     * @param lastModified is the Last-Modified header (may be null)
+     * @param cacheControl is the Cache-Control header (may be null)
+     * @param receivedAt is the wall clock time at which the response was received
+     */
+    public static BooksResponse fromHeaders(BooksModel booksModel, String etag, String lastModified,
+                                            String cacheControl, long receivedAt) {
+        long freshMillis = DEFAULT_FRESH_MILLIS;
+        long staleWhileRevalidateMillis = DEFAULT_STALE_WHILE_REVALIDATE_MILLIS;
+        boolean noCache = false;
+        boolean noStore = false;
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-cache")) {
+                    noCache = true;
+                } else if (directive.equals("no-store")) {
+                    noStore = true;
+                } else if (directive.startsWith("max-age=")) {
+                    freshMillis = seconds(directive, freshMillis);
+                } else if (directive.startsWith("stale-while-revalidate=")) {
+                    staleWhileRevalidateMillis = seconds(directive, staleWhileRevalidateMillis);
+                }
+            }
+        }
+        if (noCache || noStore) {
+            // Always revalidated, never served without asking the server first
+            freshMillis = 0;
+            staleWhileRevalidateMillis = 0;
+        }
+        return new BooksResponse(booksModel, emptyToNull(etag), emptyToNull(lastModified), receivedAt,
+                freshMillis, staleWhileRevalidateMillis, false, cacheControl != null, noStore);
+    }
+
+    /**
+     * Return this stored page confirmed by the given 304 response: it keeps its books, and
+     * takes the validators and the freshness the 304 sent, if any. Its age starts again
+     * from the 304.
+     */
+    public BooksResponse revalidated(BooksResponse notModified) {
+        boolean freshnessGiven = notModified.mFreshnessGiven;
+        return new BooksResponse(mBooksModel,
+                notModified.mEtag != null ? notModified.mEtag : mEtag,
+                notModified.mLastModified != null ? notModified.mLastModified : mLastModified,
+                notModified.mReceivedAt,
+                freshnessGiven ? notModified.mFreshMillis : mFreshMillis,
+                freshnessGiven ? notModified.mStaleWhileRevalidateMillis : mStaleWhileRevalidateMillis,
+                true, true, notModified.mNoStore);
+    }
+
+    public BooksModel getBooksModel() {
+        return mBooksModel;
+    }
+
+    public String getEtag() {
+        return mEtag;
+    }
+
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    public long getReceivedAt() {
+        return mReceivedAt;
+    }
+
+    public long getFreshMillis() {
+        return mFreshMillis;
+    }
+
+    public long getStaleWhileRevalidateMillis() {
+        return mStaleWhileRevalidateMillis;
+    }
+
+    /**
+     * Return true if the page is a stored one which the server confirmed with a 304, so it
+     * wasn't downloaded nor parsed again.
+     */
+    public boolean isNotModified() {
+        return mNotModified;
+    }
+
+    /**
+     * Return false if the server forbade storing the response (Cache-Control: no-store).
+     */
+    public boolean isStorable() {
+        return !mNoStore;
+    }
+
+    /**
+     * Return true if the page can be served without asking the server at the given time.
+     */
+    public boolean isFresh(long now) {
+        long age = now - mReceivedAt;
+        return age >= 0 && age < mFreshMillis;
+    }
+
+    /**
+     * Return true if the page can be served at the given time while it's revalidated in
+     * the background.
+     */
+    public boolean canServeWhileRevalidating(long now) {
+        long age = now - mReceivedAt;
+        return age >= 0 && age < mFreshMillis + mStaleWhileRevalidateMillis;
+    }
+
+    /**
+     * Return true if the page can be revalidated with a conditional request.
+     */
+    public boolean hasValidators() {
+        return mEtag != null || mLastModified != null;
+    }
+
+    /**
+     * Return the headers of a conditional request revalidating this page, empty if it has
+     * no validator.
+     */
+    public Map<String, String> getConditionalHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        if (mEtag != null) {
+            headers.put(HEADER_IF_NONE_MATCH, mEtag);
+        }
+        if (mLastModified != null) {
+            headers.put(HEADER_IF_MODIFIED_SINCE, mLastModified);
+        }
+        return headers;
+    }
+
+    /**
+     * Return the value in milliseconds of a directive given in seconds ("max-age=60"), or
+     * the default value if it's malformed.
+     */
+    private static long seconds(String directive, long defaultMillis) {
+        try {
+            long seconds = Long.parseLong(directive.substring(directive.indexOf('=') + 1).trim());
+            return seconds < 0 ? defaultMillis : seconds * 1000;
+        } catch (NumberFormatException e) {
+            return defaultMillis;
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.android.bookdigger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lightweight tracing of the search path. Each phase (loader, cache lookup, time to first
+ * byte, body download and parse, adapter update and row binding) is timed with a {@link Span}; the last
+ * durations of each phase are kept to compute rolling percentiles, next to counters. The
+ * requests and their bytes are counted by {@link NetworkStats} only, and reported from it.
+ * Recording takes no lock, so that timing every row binding doesn't contend with the loads.
+ */
+public class BooksTracer {
+
+    // Phases of a search
+    public static final String PHASE_LOAD = "load";
+    public static final String PHASE_CACHE = "cache";
+    /** Connection (DNS, TCP, TLS) and wait for the response headers */
+    public static final String PHASE_TTFB = "http_ttfb";
+    /** Body download, parsed as it arrives */
+    public static final String PHASE_BODY_PARSE = "http_body_parse";
+    public static final String PHASE_PARSE_JSON = "parse_json";
+    public static final String PHASE_BIND = "bind";
+    public static final String PHASE_BIND_ROW = "bind_row";
+    /** Restore of the displayed results when the activity is recreated, instead of a load */
+    public static final String PHASE_RESTORE = "restore";
+
+    // Counters
+    /** Requests answered with a 304: the stored page was served without download nor parse */
+    public static final String COUNTER_NOT_MODIFIED = "not_modified";
+
+    /** Number of durations kept per phase for the percentiles */
+    private static final int WINDOW_SIZE = 256;
+
+    /** Durations of each phase, in microseconds. Filled once, then only read */
+    private static final Map<String, Window> sWindows;
+
+    /** Value of each counter. Filled once, then only read */
+    private static final Map<String, AtomicLong> sCounters;
+
+    static {
+        Map<String, Window> windows = new LinkedHashMap<>();
+        for (String phase : new String[]{PHASE_LOAD, PHASE_CACHE, PHASE_TTFB, PHASE_BODY_PARSE,
+                PHASE_PARSE_JSON, PHASE_BIND, PHASE_BIND_ROW, PHASE_RESTORE}) {
+            windows.put(phase, new Window());
+        }
+        sWindows = Collections.unmodifiableMap(windows);
+        Map<String, AtomicLong> counters = new LinkedHashMap<>();
+        for (String counter : new String[]{COUNTER_NOT_MODIFIED}) {
+            counters.put(counter, new AtomicLong());
+        }
+        sCounters = Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * A running phase. Create it with {@link #begin(String)} and close it with {@link #end()}.
+     */
+    public static class Span {
+        private final String mPhase;
+        private final long mStartNanos;
+        private boolean mEnded;
+
+        private Span(String phase) {
+            mPhase = phase;
+            mStartNanos = System.nanoTime();
+        }
+
+        /** Record the duration of the phase. Only the first call counts. */
+        public void end() {
+            if (mEnded) {
+                return;
+            }
+            mEnded = true;
+            record(mPhase, (System.nanoTime() - mStartNanos) / 1000);
+        }
+    }
+
+    /**
+     * Ring buffer of the last durations of a phase. Each writer takes its own slot, so
+     * that concurrent writers don't need a lock; a reader may see a slot being overwritten.
+     */
+    private static class Window {
+        private final AtomicLongArray mValues = new AtomicLongArray(WINDOW_SIZE);
+        private final AtomicLong mTotalCount = new AtomicLong();
+
+        void add(long value) {
+            long index = mTotalCount.getAndIncrement();
+            mValues.set((int) (index % WINDOW_SIZE), value);
+        }
+
+        long totalCount() {
+            return mTotalCount.get();
+        }
+
+        /** Return the durations kept, the oldest first */
+        long[] values() {
+            long total = mTotalCount.get();
+            int count = (int) Math.min(total, WINDOW_SIZE);
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = mValues.get((int) ((total - count + i) % WINDOW_SIZE));
+            }
+            return values;
+        }
+
+        long[] sorted() {
+            long[] values = values();
+            Arrays.sort(values);
+            return values;
+        }
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BooksTracer}
+     * object. This class only holds static methods.
+     */
+    private BooksTracer() {
+    }
+
+    /** Start timing the given phase, one of the PHASE constants */
+    public static Span begin(String phase) {
+        return new Span(phase);
+    }
+
+    /** Add the given value to a counter, one of the COUNTER constants */
+    public static void count(String counter, long value) {
+        AtomicLong current = sCounters.get(counter);
+        if (current != null) {
+            current.addAndGet(value);
+        }
+    }
+
+    private static void record(String phase, long micros) {
+        Window window = sWindows.get(phase);
+        if (window != null) {
+            window.add(micros);
+        }
+    }
+
+    /**
+     * Return the given percentile of the recent durations of a phase, in microseconds,
+     * or -1 if the phase hasn't been recorded yet.
+     *
+     * @param phase is one of the PHASE constants
+     * @param percentile is between 0 and 100
+     */
+    public static long getPercentile(String phase, int percentile) {
+        Window window = sWindows.get(phase);
+        if (window == null || window.totalCount() == 0) {
+            return -1;
+        }
+        return percentile(window.sorted(), percentile);
+    }
+
+    /** Return the number of recent durations of a phase, at most the size of the window */
+    public static int getSampleCount(String phase) {
+        Window window = sWindows.get(phase);
+        return window == null ? 0 : (int) Math.min(window.totalCount(), WINDOW_SIZE);
+    }
+
+    /** Return the value of a counter */
+    public static long getCounter(String counter) {
+        AtomicLong value = sCounters.get(counter);
+        return value == null ? 0 : value.get();
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Return a readable summary: p50 / p90 / p99 of each phase recorded so far in
+     * milliseconds, then the counters.
+     */
+    public static String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Window> entry : sWindows.entrySet()) {
+            long[] sorted = entry.getValue().sorted();
+            if (sorted.length == 0) {
+                continue;
+            }
+            summary.append(String.format(Locale.US, "%s: p50 %.1f, p90 %.1f, p99 %.1f ms (n=%d)\n",
+                    entry.getKey(), percentile(sorted, 50) / 1000.0, percentile(sorted, 90) / 1000.0,
+                    percentile(sorted, 99) / 1000.0, entry.getValue().totalCount()));
+        }
+        summary.append("wire_bytes: ").append(NetworkStats.getTotalWireBytes()).append('\n');
+        summary.append("requests: ").append(NetworkStats.getRequestCount()).append('\n');
+        for (Map.Entry<String, AtomicLong> entry : sCounters.entrySet()) {
+            summary.append(entry.getKey()).append(": ").append(entry.getValue().get()).append('\n');
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Write every recorded duration and counter to the given file, as CSV lines
+     * "kind,name,value" (durations in microseconds).
+     * This does file I/O: it must be called on a background thread.
+     */
+    public static void export(File file) throws IOException {
+        StringBuilder builder = new StringBuilder("kind,name,value\n");
+        for (Map.Entry<String, Window> entry : sWindows.entrySet()) {
+            // Oldest duration first
+            for (long value : entry.getValue().values()) {
+                builder.append("duration_us,").append(entry.getKey()).append(',')
+                        .append(value).append('\n');
+            }
+        }
+        builder.append("counter,wire_bytes,").append(NetworkStats.getTotalWireBytes()).append('\n');
+        builder.append("counter,requests,").append(NetworkStats.getRequestCount()).append('\n');
+        for (Map.Entry<String, AtomicLong> entry : sCounters.entrySet()) {
+            builder.append("counter,").append(entry.getKey()).append(',').append(entry.getValue().get()).append('\n');
+        }
+        String csv = builder.toString();
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write(csv);
+        } finally {
+            writer.close();
+        }
+    }
+}
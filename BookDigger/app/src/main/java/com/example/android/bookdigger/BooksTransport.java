@@ -0,0 +1,41 @@
+package com.example.android.bookdigger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Performs the HTTP GET requests of {@link BooksUtils}. The default implementation is
+ * {@link HttpUrlTransport}; another one can be set with {@link BooksUtils#setTransport}.
+ */
+public interface BooksTransport {
+
+    /**
+     * Send a GET request to the given URL with the given headers (e.g. the validators of a
+     * conditional request). The returned {@link Response} must be closed.
+     */
+    Response get(URL url, Map<String, String> headers) throws IOException;
+
+    /**
+     * Response of a request sent by a {@link BooksTransport}.
+     */
+    interface Response extends Closeable {
+
+        /** Return the HTTP status code of the response */
+        int getResponseCode() throws IOException;
+
+        /** Return the value of the given response header, or null if there is none */
+        String getHeader(String name);
+
+        /** Return the decoded (i.e. uncompressed) body of the response */
+        InputStream getBody() throws IOException;
+
+        /** Return the number of body bytes received so far, as sent on the wire */
+        long getWireBytes();
+
+        /** Abort the request from another thread */
+        void abort();
+    }
+}
@@ -1,7 +1,11 @@
 package com.example.android.bookdigger;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -11,12 +15,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * BookDigger created by JCoupier on 07/06/2017.
@@ -30,11 +36,66 @@ public class BooksUtils {
     // Constant keys
     private static final String KEY_TOTAL_ITEMS = "totalItems";
     private static final String KEY_ITEMS = "items";
+    private static final String KEY_ID = "id";
     private static final String KEY_VOLUME_INFO = "volumeInfo";
     private static final String KEY_TITLE = "title";
     private static final String KEY_AUTHORS = "authors";
     private static final String KEY_IMAGE_LINKS = "imageLinks";
     private static final String KEY_SMALL_THUMBNAIL = "smallThumbnail";
+    private static final String KEY_DESCRIPTION = "description";
+    private static final String KEY_PUBLISHER = "publisher";
+    private static final String KEY_PUBLISHED_DATE = "publishedDate";
+    private static final String KEY_PAGE_COUNT = "pageCount";
+    private static final String KEY_INDUSTRY_IDENTIFIERS = "industryIdentifiers";
+    private static final String KEY_TYPE = "type";
+    private static final String KEY_IDENTIFIER = "identifier";
+    private static final String TYPE_ISBN_10 = "ISBN_10";
+    private static final String TYPE_ISBN_13 = "ISBN_13";
+
+    /** Keys of the imageLinks read by the detail, from the smallest to the largest image */
+    private static final String[] KEYS_DETAIL_IMAGES = {"thumbnail", "small", "medium", "large"};
+
+    /** Fields of the volumes list actually read by the parsers (partial response) */
+    public static final String FIELDS_PROJECTION =
+            "totalItems,items(id,volumeInfo(title,authors,imageLinks/smallThumbnail))";
+
+    /** Fields of a single volume read by {@link #extractDetailFromStream(InputStream)} */
+    public static final String DETAIL_FIELDS_PROJECTION =
+            "id,volumeInfo(description,publisher,publishedDate,pageCount,industryIdentifiers,imageLinks)";
+
+    /** Transport used for the HTTP requests */
+    private static volatile BooksTransport sTransport = new HttpUrlTransport();
+
+    /**
+     * Lets a running request be aborted from another thread.
+     */
+    public interface RequestHandle {
+
+        /**
+         * Called with the response of the request as soon as it's opened, so that it can
+         * be aborted from another thread. Return false to abort the request.
+         */
+        boolean onRequestOpened(BooksTransport.Response response);
+
+        /** Return true once the request has been cancelled */
+        boolean isCancelled();
+    }
+
+    /**
+     * Reads a successful response: a 200, or a 304 answering a conditional request.
+     */
+    private interface ResponseParser<T> {
+        T parse(BooksTransport.Response response, int responseCode, RequestHandle handle) throws IOException;
+    }
+
+    /** Parses a single volume */
+    private static final ResponseParser<BookDetail> DETAIL_PARSER = new ResponseParser<BookDetail>() {
+        @Override
+        public BookDetail parse(BooksTransport.Response response, int responseCode, RequestHandle handle)
+                throws IOException {
+            return extractDetailFromStream(response.getBody());
+        }
+    };
 
     /**
      * Create a private constructor because no one should ever create a {@link BooksUtils} object.
@@ -47,15 +108,17 @@ public class BooksUtils {
     /**
      * Return a list of {@link Book} objects that has been built up from
      * parsing the given JSON response.
+     * The network path uses {@link #extractFeatureFromStream(InputStream)}; this tree based
+     * parser is kept for already buffered responses.
      */
-    private static BooksModel extractFeatureFromJson(String bookJSON) {
+    static BooksModel extractFeatureFromJson(String bookJSON) {
         // If the JSON string is empty or null, then return early.
         if (TextUtils.isEmpty(bookJSON)) {
             return null;
         }
 
-        // Create an empty ArrayList that we can start adding books to
-        List<Book> books = new ArrayList<>();
+        // Create an empty compact list that we can start adding books to
+        List<Book> books = new BookColumns();
 
         // Create the totalItems variable
         int totalItems = 0;
@@ -63,6 +126,7 @@ public class BooksUtils {
         // Try to parse the JSON response string. If there's a problem with the way the JSON
         // is formatted, a JSONException exception object will be thrown.
         // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        BooksTracer.Span span = BooksTracer.begin(BooksTracer.PHASE_PARSE_JSON);
         try {
             // Create a JSONObject from the JSON response string
             JSONObject baseJsonResponse = new JSONObject(bookJSON);
@@ -93,24 +157,17 @@ public class BooksUtils {
                 // Extract the value for the key called "title"
                 String title = volumeInfo.getString(KEY_TITLE);
 
-                String authors = "";
+                // Handle the case if there is no author
+                String[] authors = new String[0];
                 if (volumeInfo.has(KEY_AUTHORS)){
                     // Extract the value for the key called "authors"
                     JSONArray authorsArray = volumeInfo.getJSONArray(KEY_AUTHORS);
 
-                    // Create a new StringBuilder for authors
-                    StringBuilder authorsString = new StringBuilder();
+                    // Keep the authors apart, they are only joined for display
+                    authors = new String[authorsArray.length()];
                     for (int j = 0; j < authorsArray.length(); j++){
-                        authorsString.append(authorsArray.getString(j));
-                        if (j < authorsArray.length()-1){
-                            authorsString.append(", ");
-                        }
+                        authors[j] = authorsArray.getString(j);
                     }
-                    // Put into a String the output of the StringBuilder
-                    authors = authorsString.toString();
-                } else {
-                    // Handle the case if there is no author
-                    authors = ("No author");
                 }
 
                 String smallThumbnailUrl = null;
@@ -121,9 +178,12 @@ public class BooksUtils {
                     smallThumbnailUrl = imageLinks.getString(KEY_SMALL_THUMBNAIL);
                 }
 
-                // Create a new {@link Book} object with the title, authors and url for the small
-                // thumbnail of the book from the JSON response.
-                Book book = new Book(title, authors, smallThumbnailUrl);
+                // Extract the id of the volume, which identifies the book across pages
+                String id = currentBook.optString(KEY_ID, null);
+
+                // Create a new {@link Book} object with the id, title, authors and url for the
+                // small thumbnail of the book from the JSON response.
+                Book book = new Book(id, title, authors, smallThumbnailUrl);
 
                 // Add the new {@link Book} to the list of books.
                 books.add(book);
@@ -134,12 +194,305 @@ public class BooksUtils {
             // catch the exception here, so the app doesn't crash. Print a log message
             // with the message from the exception.
             Log.e("BooksUtils", "Problem parsing the book JSON results", e);
+        } finally {
+            span.end();
         }
 
         // Return the list of booksModel
         return new BooksModel(totalItems, books);
     }
 
+    /**
+     * Return a {@link BooksModel} built by pulling the JSON response directly from the
+     * given {@link InputStream}. Only totalItems and the title, authors and smallThumbnail
+     * of each item are read, everything else is skipped without being materialized.
+     */
+    static BooksModel extractFeatureFromStream(InputStream inputStream, RequestHandle handle)
+            throws IOException {
+        // Create an empty compact list that we can start adding books to
+        List<Book> books = new BookColumns();
+
+        // Create the totalItems variable
+        int totalItems = 0;
+
+        // Whether the response was read to the end
+        boolean complete = true;
+
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (KEY_TOTAL_ITEMS.equals(name)) {
+                    totalItems = reader.nextInt();
+                } else if (KEY_ITEMS.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    // For each book in the items array, create an {@link Book} object
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        // Stop parsing as soon as the request is cancelled
+                        if (handle != null && handle.isCancelled()) {
+                            throw new InterruptedIOException("Request cancelled");
+                        }
+                        Book book = readItem(reader);
+                        if (book != null) {
+                            books.add(book);
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | MalformedJsonException | NumberFormatException e) {
+            // The response doesn't have the expected structure: keep the books read so far,
+            // just like the JSONObject path does, but don't let the page be cached.
+            Log.e(LOG_TAG, "Problem parsing the book JSON results", e);
+            complete = false;
+        } finally {
+            reader.close();
+        }
+
+        // Return a null response if there is no item
+        if (totalItems == 0) {
+            return null;
+        }
+
+        // Return the list of booksModel
+        return new BooksModel(totalItems, books, complete);
+    }
+
+    /**
+     * Read a single element of the "items" array and return the corresponding {@link Book},
+     * or null if the item has no "volumeInfo" or no "title".
+     */
+    private static Book readItem(JsonReader reader) throws IOException {
+        String id = null;
+        Book book = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (KEY_ID.equals(name)) {
+                id = reader.nextString();
+            } else if (KEY_VOLUME_INFO.equals(name)) {
+                book = readVolumeInfo(reader, id);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (book == null || id == null || book.getId() != null) {
+            return book;
+        }
+        // The API sends the id before the volumeInfo: only other servers get here
+        String[] authors = new String[book.getAuthorCount()];
+        for (int i = 0; i < authors.length; i++) {
+            authors[i] = book.getAuthorName(i);
+        }
+        return new Book(id, book.getTitle(), authors, book.getSmallThumbnailUrl());
+    }
+
+    /**
+     * Read the "volumeInfo" object of an item and return the corresponding {@link Book}.
+     *
+     * @param id is the id of the item, if it was read before its "volumeInfo"
+     */
+    private static Book readVolumeInfo(JsonReader reader, String id) throws IOException {
+        String title = null;
+        String[] authors = null;
+        String smallThumbnailUrl = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (KEY_TITLE.equals(name)) {
+                title = reader.nextString();
+            } else if (KEY_AUTHORS.equals(name)) {
+                authors = readAuthors(reader);
+            } else if (KEY_IMAGE_LINKS.equals(name)) {
+                smallThumbnailUrl = readSmallThumbnail(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (title == null) {
+            return null;
+        }
+
+        // Handle the case if there is no author
+        if (authors == null) {
+            authors = new String[0];
+        }
+
+        return new Book(id, title, authors, smallThumbnailUrl);
+    }
+
+    /**
+     * Read the values of the "authors" array.
+     */
+    private static String[] readAuthors(JsonReader reader) throws IOException {
+        String[] authors = new String[4];
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (count == authors.length) {
+                authors = Arrays.copyOf(authors, count * 2);
+            }
+            authors[count++] = reader.nextString();
+        }
+        reader.endArray();
+        return count == authors.length ? authors : Arrays.copyOf(authors, count);
+    }
+
+    /**
+     * Read the "imageLinks" object and return the value of "smallThumbnail" (or null).
+     */
+    private static String readSmallThumbnail(JsonReader reader) throws IOException {
+        String smallThumbnailUrl = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (KEY_SMALL_THUMBNAIL.equals(reader.nextName())) {
+                smallThumbnailUrl = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return smallThumbnailUrl;
+    }
+
+    /**
+     * Return the {@link BookDetail} pulled from the JSON of a single volume, or null if it
+     * has no id. Only the fields of {@link #DETAIL_FIELDS_PROJECTION} are read.
+     */
+    static BookDetail extractDetailFromStream(InputStream inputStream) throws IOException {
+        String id = null;
+        BookDetail volumeInfo = null;
+
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (KEY_ID.equals(name)) {
+                    id = reader.nextString();
+                } else if (KEY_VOLUME_INFO.equals(name)) {
+                    volumeInfo = readDetailVolumeInfo(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            Log.e(LOG_TAG, "Problem parsing the volume JSON", e);
+            return null;
+        } finally {
+            reader.close();
+        }
+
+        if (id == null) {
+            return null;
+        }
+        if (volumeInfo == null) {
+            return new BookDetail(id, null, null, null, 0, null, null, new String[KEYS_DETAIL_IMAGES.length]);
+        }
+        return new BookDetail(id, volumeInfo.getDescription(), volumeInfo.getPublisher(),
+                volumeInfo.getPublishedDate(), volumeInfo.getPageCount(), volumeInfo.getIsbn10(),
+                volumeInfo.getIsbn13(), volumeInfo.getImageUrls());
+    }
+
+    /**
+     * Read the "volumeInfo" object of a volume and return its {@link BookDetail}, without id.
+     */
+    private static BookDetail readDetailVolumeInfo(JsonReader reader) throws IOException {
+        String description = null;
+        String publisher = null;
+        String publishedDate = null;
+        int pageCount = 0;
+        String[] isbns = new String[2];
+        String[] imageUrls = new String[KEYS_DETAIL_IMAGES.length];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (KEY_DESCRIPTION.equals(name)) {
+                description = reader.nextString();
+            } else if (KEY_PUBLISHER.equals(name)) {
+                publisher = reader.nextString();
+            } else if (KEY_PUBLISHED_DATE.equals(name)) {
+                publishedDate = reader.nextString();
+            } else if (KEY_PAGE_COUNT.equals(name)) {
+                pageCount = reader.nextInt();
+            } else if (KEY_INDUSTRY_IDENTIFIERS.equals(name)) {
+                readIsbns(reader, isbns);
+            } else if (KEY_IMAGE_LINKS.equals(name)) {
+                readImageUrls(reader, imageUrls);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new BookDetail(null, description, publisher, publishedDate, pageCount, isbns[0], isbns[1], imageUrls);
+    }
+
+    /**
+     * Read the "industryIdentifiers" array into the ISBN-10 and the ISBN-13 (the other
+     * identifiers are skipped).
+     */
+    private static void readIsbns(JsonReader reader, String[] isbns) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String type = null;
+            String identifier = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (KEY_TYPE.equals(name)) {
+                    type = reader.nextString();
+                } else if (KEY_IDENTIFIER.equals(name)) {
+                    identifier = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (TYPE_ISBN_10.equals(type)) {
+                isbns[0] = identifier;
+            } else if (TYPE_ISBN_13.equals(type)) {
+                isbns[1] = identifier;
+            }
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Read the "imageLinks" object into the urls of {@link #KEYS_DETAIL_IMAGES}.
+     */
+    private static void readImageUrls(JsonReader reader, String[] imageUrls) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int index = Arrays.asList(KEYS_DETAIL_IMAGES).indexOf(reader.nextName());
+            if (index >= 0) {
+                imageUrls[index] = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Replace the {@link BooksTransport} used for the HTTP requests, e.g. with one
+     * targeting a local server.
+     */
+    public static void setTransport(BooksTransport transport) {
+        sTransport = transport;
+    }
+
     /**
      * Returns new URL object from the given string URL.
      */
@@ -154,57 +507,90 @@ public class BooksUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Make an HTTP request to the given URL with the given headers and return the result of
+     * the given parser on the response. The response is handed to the {@link RequestHandle}
+     * (if any) so that the request can be aborted, in which case null is returned.
+     *
+     * @throws BooksFetchException for an error response or an I/O error
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
-        int readTimeOut = 10000;
-        int connectTimeOut = 15000;
+    private static <T> T makeHttpRequest(URL url, Map<String, String> headers, RequestHandle handle,
+                                         ResponseParser<T> parser) throws IOException {
+        T result = null;
         int okResponseCode = 200;
+        int notModifiedResponseCode = 304;
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponse;
+            return result;
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        long startTime = SystemClock.elapsedRealtime();
+        int responseCode = -1;
+        BooksTransport.Response response = null;
+        BooksTracer.Span ttfbSpan = BooksTracer.begin(BooksTracer.PHASE_TTFB);
+        BooksTracer.Span bodySpan = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(readTimeOut /* milliseconds */);
-            urlConnection.setConnectTimeout(connectTimeOut /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+            response = sTransport.get(url, headers);
+            if (handle != null && !handle.onRequestOpened(response)) {
+                return result;
+            }
+            responseCode = response.getResponseCode();
+            ttfbSpan.end();
 
             // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == okResponseCode) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            // then parse the response straight from the input stream.
+            if (responseCode == okResponseCode) {
+                bodySpan = BooksTracer.begin(BooksTracer.PHASE_BODY_PARSE);
+                result = parser.parse(response, responseCode, handle);
+                bodySpan.end();
+            } else if (responseCode == notModifiedResponseCode && !headers.isEmpty()) {
+                // The stored result is still valid: there is no body to download nor parse
+                BooksTracer.count(BooksTracer.COUNTER_NOT_MODIFIED, 1);
+                result = parser.parse(response, responseCode, handle);
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
+                throw new BooksFetchException(responseCode);
             }
+        } catch (BooksFetchException e) {
+            throw e;
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving the book JSON results.", e);
+            if (handle != null && handle.isCancelled()) {
+                // The connection was closed on purpose
+                Log.d(LOG_TAG, "Request cancelled: " + url);
+            } else {
+                Log.e(LOG_TAG, "Problem retrieving the book JSON results.", e);
+                throw new BooksFetchException("Problem retrieving the book JSON results", e);
+            }
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            // A failed or cancelled request is timed too, up to where it stopped
+            ttfbSpan.end();
+            if (bodySpan != null) {
+                bodySpan.end();
             }
-            if (inputStream != null) {
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies than an IOException
-                // could be thrown.
-                inputStream.close();
+            if (response != null) {
+                // The connection isn't disconnected so that it can be reused: closing the
+                // response releases it, or disconnects it if its body can't be read to the
+                // end. Failing to do so is a failure of the request like any other I/O error.
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    if (handle == null || !handle.isCancelled()) {
+                        throw new BooksFetchException("Problem closing the response", e);
+                    }
+                } finally {
+                    NetworkStats.record(url.toString(), responseCode, response.getWireBytes(),
+                            SystemClock.elapsedRealtime() - startTime);
+                }
             }
         }
-        return jsonResponse;
+        return result;
     }
 
     /**
      * Convert the {@link InputStream} into a String which contains the
      * whole JSON response from the server.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
+    static String readFromStream(InputStream inputStream) throws IOException {
         StringBuilder output = new StringBuilder();
         if (inputStream != null) {
             InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
@@ -222,18 +608,73 @@ public class BooksUtils {
      * Query the Google API dataset and return a list of {@link Book} objects.
      */
     public static BooksModel fetchBookData(String requestUrl) {
-        // Create URL object
-        URL url = createUrl(requestUrl);
+        return fetchBookData(requestUrl, null);
+    }
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+    /**
+     * Query the Google API dataset and return a list of {@link Book} objects.
+     * The request can be aborted through the given {@link RequestHandle}, in which
+     * case null is returned.
+     */
+    public static BooksModel fetchBookData(String requestUrl, RequestHandle handle) {
+        // Perform HTTP request to the URL and parse the JSON response as it arrives
+        BooksModel booksModel = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            BooksResponse booksResponse = requestBookData(requestUrl, null, handle);
+            if (booksResponse != null) {
+                booksModel = booksResponse.getBooksModel();
+            }
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem making the HTTP request.", e);
         }
 
         // Return the list of {@link Book}s
-        return extractFeatureFromJson(jsonResponse);
+        return booksModel;
+    }
+
+    /**
+     * Make a single request to the Google API dataset. Unlike
+     * {@link #fetchBookData(String, RequestHandle)} the failures are thrown, so that the
+     * {@link ResilientFetcher} can tell them from an empty result and retry them.
+     * If a stored response is given, the request is conditional: a 304 answers with the
+     * stored {@link BooksModel}, without downloading nor parsing it again.
+     *
+     * @param requestUrl is the URL to fetch
+     * @param cached is the stored response of the same URL, or null
+     * @param handle is used to cancel the request (may be null)
+     * @return the {@link BooksResponse} (whose model is null if there is no book), or null
+     *         if the request was cancelled
+     * @throws BooksFetchException if the request failed
+     */
+    static BooksResponse requestBookData(String requestUrl, final BooksResponse cached, RequestHandle handle)
+            throws IOException {
+        // Create URL object
+        URL url = createUrl(requestUrl);
+        Map<String, String> headers = cached != null
+                ? cached.getConditionalHeaders() : Collections.<String, String>emptyMap();
+        return makeHttpRequest(url, headers, handle, new ResponseParser<BooksResponse>() {
+            @Override
+            public BooksResponse parse(BooksTransport.Response response, int responseCode, RequestHandle handle)
+                    throws IOException {
+                BooksModel booksModel = responseCode == 200 ? extractFeatureFromStream(response.getBody(), handle) : null;
+                BooksResponse booksResponse = BooksResponse.fromHeaders(booksModel,
+                        response.getHeader(BooksResponse.HEADER_ETAG),
+                        response.getHeader(BooksResponse.HEADER_LAST_MODIFIED),
+                        response.getHeader(BooksResponse.HEADER_CACHE_CONTROL), System.currentTimeMillis());
+                return responseCode == 200 ? booksResponse : cached.revalidated(booksResponse);
+            }
+        });
+    }
+
+    /**
+     * Make a single request for the volume at the given URL, e.g.
+     * https://www.googleapis.com/books/v1/volumes/{id}?fields={@link #DETAIL_FIELDS_PROJECTION}
+     *
+     * @return the {@link BookDetail}, or null if the response has no volume or the request
+     *         was cancelled
+     * @throws BooksFetchException if the request failed
+     */
+    static BookDetail requestBookDetail(String requestUrl, RequestHandle handle) throws IOException {
+        return makeHttpRequest(createUrl(requestUrl), Collections.<String, String>emptyMap(), handle, DETAIL_PARSER);
     }
 }
@@ -0,0 +1,289 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Fetches the first results of a search (e.g. a few hundred books to export them or to
+ * warm the cache) by loading several pages at once, with a bounded number of concurrent
+ * requests. The pages go through {@link BooksLoader#loadPage}, so they are cached and
+ * joined with the identical requests in flight.
+ *
+ * Pages are delivered to the {@link Listener} as soon as they and every page before them
+ * are loaded, so the books always arrive in startIndex order. A book which appears on
+ * more than one page is only delivered once.
+ *
+ * The API returns short pages in the middle of the results, so the last page is the first
+ * empty one, or the one reaching totalItems. A page repeating books of the previous ones
+ * shows that the results shifted by as many books: the end is counted that much later,
+ * so that the books pushed past totalItems are still fetched.
+ */
+public class BulkFetcher {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = BulkFetcher.class.getSimpleName();
+
+    /** Default number of concurrent page requests */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * Receives the books of a bulk fetch as they are loaded.
+     */
+    public interface Listener {
+
+        /**
+         * Called on a background thread with the new books of each page, in startIndex order.
+         * The other pages wait for it to return, so it must be quick.
+         *
+         * @param startIndex is the start index of the page
+         * @param books are the books of the page which weren't delivered before
+         * @param totalItems is the approximate number of results of the search
+         */
+        void onPage(int startIndex, List<Book> books, int totalItems);
+    }
+
+    private final Context mContext;
+
+    /** Query URL */
+    private final String mUrl;
+
+    private final int mConcurrency;
+
+    private final Object mLock = new Object();
+
+    /** Tickets of the page requests, to cancel them */
+    private final List<BooksRequestRegistry.Ticket> mTickets = new ArrayList<>();
+
+    private boolean mCancelled;
+
+    /**
+     * Constructs a new {@link BulkFetcher}.
+     *
+     * @param context used to get the {@link BooksCache} and the {@link BooksDatabase}
+     * @param url to load data from
+     * @param concurrency is the maximum number of concurrent page requests
+     */
+    public BulkFetcher(Context context, String url, int concurrency) {
+        mContext = context.getApplicationContext();
+        mUrl = url;
+        mConcurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * State of one fetch, shared by the page requests.
+     */
+    private static class Progress {
+        final int mPageSize;
+        /** Result of each page (null until it's loaded or when it has no book) */
+        final BooksModel[] mPages;
+        final boolean[] mDone;
+        /** Index of the next page to deliver */
+        int mNextPage;
+        /** Index of the first page past the last result, once it's known */
+        int mEndPage;
+        int mTotalItems = -1;
+        /** Number of books repeated by the delivered pages: the results shifted by as many */
+        int mShift;
+        /** Failure of the page at mEndPage, if that's why the fetch ends there */
+        IOException mError;
+        final PageMerger mMerger = new PageMerger();
+        final List<Book> mBooks = new BookColumns();
+
+        Progress(int pageCount, int pageSize) {
+            mPageSize = pageSize;
+            mPages = new BooksModel[pageCount];
+            mDone = new boolean[pageCount];
+            mEndPage = pageCount;
+        }
+
+        boolean isFinished() {
+            return mNextPage >= mEndPage;
+        }
+    }
+
+    /**
+     * Fetch the first results of a search.
+     * This is a blocking call which must be made on a background thread.
+     *
+     * @param searchInput is the input of the user
+     * @param maxResults is the number of results wanted
+     * @param pageSize is the number of items per request (at most {@link BooksLoader#MAX_PAGE_SIZE})
+     * @param listener receives the books as they are loaded (may be null)
+     * @return every book fetched, deduplicated and in startIndex order, or null if there is none
+     * @throws IOException if a page failed: the books before it have been delivered
+     */
+    public BooksModel fetch(final String searchInput, int maxResults, int pageSize,
+                            final Listener listener) throws IOException {
+        final int size = BooksLoader.clampPageSize(pageSize);
+        int pageCount = (maxResults + size - 1) / size;
+        if (pageCount <= 0) {
+            return null;
+        }
+        final Progress progress = new Progress(pageCount, size);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(mConcurrency, pageCount),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "BooksBulkFetch");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            // Pages are submitted in order, so the first ones are requested first
+            for (int i = 0; i < pageCount; i++) {
+                final int page = i;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        loadPage(searchInput, page, progress, listener);
+                    }
+                });
+            }
+
+            synchronized (mLock) {
+                while (!progress.isFinished() && !mCancelled) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Bulk fetch interrupted");
+                    }
+                }
+                if (progress.mError != null && !mCancelled) {
+                    throw progress.mError;
+                }
+                if (mCancelled || progress.mBooks.isEmpty()) {
+                    return null;
+                }
+                return new BooksModel(progress.mTotalItems, progress.mBooks);
+            }
+        } finally {
+            // Pages past the end or after a failure aren't needed anymore
+            cancelRequests();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Cancel the running fetch, which then returns null.
+     */
+    public void cancel() {
+        synchronized (mLock) {
+            mCancelled = true;
+            mLock.notifyAll();
+        }
+        cancelRequests();
+    }
+
+    private void cancelRequests() {
+        List<BooksRequestRegistry.Ticket> tickets;
+        synchronized (mLock) {
+            tickets = new ArrayList<>(mTickets);
+            mTickets.clear();
+        }
+        for (BooksRequestRegistry.Ticket ticket : tickets) {
+            BooksRequestRegistry.cancel(ticket);
+        }
+    }
+
+    private void loadPage(String searchInput, int page, Progress progress, Listener listener) {
+        int pageSize = progress.mPageSize;
+        BooksRequestRegistry.Ticket ticket = new BooksRequestRegistry.Ticket();
+        synchronized (mLock) {
+            // Skip the pages which are known to be past the last result, even shifted by a page
+            if (mCancelled || progress.isFinished() || page >= progress.mEndPage
+                    || (progress.mTotalItems >= 0 && page * pageSize >= progress.mTotalItems + pageSize)) {
+                markDone(page, null, progress);
+                deliver(progress, listener);
+                return;
+            }
+            mTickets.add(ticket);
+        }
+
+        BooksModel booksModel = null;
+        IOException error = null;
+        try {
+            booksModel = BooksLoader.loadPage(mContext, mUrl, searchInput, page * pageSize,
+                    pageSize, ticket);
+        } catch (IOException e) {
+            error = e;
+        }
+
+        synchronized (mLock) {
+            mTickets.remove(ticket);
+            if (error != null) {
+                if (!mCancelled && page < progress.mEndPage) {
+                    Log.e(LOG_TAG, "Problem loading page " + page, error);
+                    // The pages before this one are still delivered, the fetch stops there
+                    progress.mEndPage = page;
+                    progress.mError = error;
+                }
+            } else {
+                markDone(page, booksModel, progress);
+            }
+            deliver(progress, listener);
+        }
+    }
+
+    /**
+     * Record the result of a page. Called with mLock held.
+     */
+    private static void markDone(int page, BooksModel booksModel, Progress progress) {
+        progress.mPages[page] = booksModel;
+        progress.mDone[page] = true;
+        if (booksModel != null && progress.mTotalItems < 0) {
+            progress.mTotalItems = booksModel.getTotalItems();
+        }
+    }
+
+    /**
+     * Make the given page the last one. Called with mLock held.
+     */
+    private static void endAt(int page, Progress progress) {
+        if (page + 1 <= progress.mEndPage) {
+            progress.mEndPage = page + 1;
+            // A failure past the last result doesn't matter
+            progress.mError = null;
+        }
+    }
+
+    /**
+     * Deliver the loaded pages which follow the ones already delivered, without their
+     * duplicates. Called with mLock held.
+     */
+    private void deliver(Progress progress, Listener listener) {
+        while (progress.mNextPage < progress.mEndPage && progress.mDone[progress.mNextPage]) {
+            int page = progress.mNextPage++;
+            BooksModel booksModel = progress.mPages[page];
+            progress.mPages[page] = null;
+            if (booksModel == null || booksModel.getBooks() == null || booksModel.getBooks().isEmpty()) {
+                // No book at all: the results end here
+                endAt(page, progress);
+                continue;
+            }
+
+            List<Book> newBooks = progress.mMerger.merge(booksModel.getBooks());
+            progress.mBooks.addAll(newBooks);
+            progress.mShift += booksModel.getBooks().size() - newBooks.size();
+            if ((page + 1) * progress.mPageSize - progress.mShift >= progress.mTotalItems) {
+                endAt(page, progress);
+            }
+            if (listener != null && !newBooks.isEmpty() && !mCancelled) {
+                listener.onPage(page * progress.mPageSize, newBooks, progress.mTotalItems);
+            }
+        }
+        mLock.notifyAll();
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.android.bookdigger;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk tier of the {@link BooksCache} and of the {@link BookDetailCache}: one file per entry
+ * in a directory of the app cache dir, named after the hash of its key. The entries are
+ * written in a temporary file first, and the oldest ones are deleted once the directory is
+ * too big. The caller checks that a file is really the entry of its key, since two keys
+ * can share a file name.
+ * Not thread safe: the caches guard it with their disk lock.
+ */
+class DiskTier {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = DiskTier.class.getSimpleName();
+
+    private final File mDir;
+
+    /** Maximum size of the directory, in bytes */
+    private final long mMaxBytes;
+
+    /** Age after which an entry is deleted, even if the directory isn't full */
+    private final long mMaxAgeMillis;
+
+    /** Number of entries deleted because of their age or of the size */
+    private int mEvictionCount;
+
+    /**
+     * Constructs a new {@link DiskTier}.
+     *
+     * @param dir is the directory of the entries, created on the first write
+     * @param maxBytes is the maximum size of the directory
+     * @param maxAgeMillis is the age after which an entry is deleted
+     */
+    DiskTier(File dir, long maxBytes, long maxAgeMillis) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+        mMaxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Return the file of the entry of the given key, which may not exist.
+     */
+    File fileForKey(String key) {
+        return new File(mDir, Integer.toHexString(key.hashCode()));
+    }
+
+    /**
+     * Write the entry of the given key, replacing the previous one, then trim the directory.
+     */
+    void write(String key, BooksModelCodec.Output entry) {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            return;
+        }
+
+        // Write in a temporary file first so that a reader never sees a partial entry
+        File file = fileForKey(key);
+        File tmpFile = new File(mDir, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            entry.writeTo(out);
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing an entry to " + mDir.getName(), e);
+            tmpFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+
+        trim();
+    }
+
+    /**
+     * Delete the entry of the given key, if any.
+     */
+    void remove(String key) {
+        fileForKey(key).delete();
+    }
+
+    /**
+     * Delete the given entry because of its age or of the size, counting it as an eviction.
+     */
+    void evict(File file) {
+        if (file.delete()) {
+            mEvictionCount++;
+        }
+    }
+
+    /** Return the number of entries deleted because of their age or of the size */
+    int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Delete the entries older than the maximum age, then the oldest ones until the directory
+     * fits in the maximum size.
+     */
+    private void trim() {
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Sort the files from the oldest to the newest
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        for (File file : files) {
+            if (totalBytes <= mMaxBytes && now - file.lastModified() <= mMaxAgeMillis) {
+                continue;
+            }
+            totalBytes -= file.length();
+            evict(file);
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.android.bookdigger;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the background work of the app on separate pools, so that a load the user is waiting
+ * for never queues behind background work:
+ * - {@link #POOL_USER} for the user-visible loads, at the default thread priority,
+ * - {@link #POOL_PREFETCH} for the prefetches, on a single background priority thread,
+ * - {@link #POOL_THUMBNAIL} for the thumbnail downloads, given to Picasso.
+ * Within the user and prefetch pools the {@link Task}s run by priority, then in order of
+ * submission. Tasks submitted through a {@link Scope} are cancelled together, e.g. when the
+ * activity is destroyed.
+ */
+public class FetchScheduler {
+
+    // Pools
+    public static final int POOL_USER = 0;
+    public static final int POOL_PREFETCH = 1;
+    public static final int POOL_THUMBNAIL = 2;
+
+    // Priorities of the tasks within a pool, the lowest value runs first
+    public static final int PRIORITY_IMMEDIATE = 0;
+    public static final int PRIORITY_HIGH = 10;
+    public static final int PRIORITY_NORMAL = 20;
+    public static final int PRIORITY_LOW = 30;
+
+    /** Number of threads of each pool */
+    private static final int USER_THREADS = 2;
+    private static final int PREFETCH_THREADS = 1;
+    private static final int THUMBNAIL_THREADS = 3;
+
+    /** Time after which an idle thread is stopped */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static FetchScheduler sInstance;
+
+    /** Task running on each thread of the pools */
+    private static final ThreadLocal<Task> sCurrentTask = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor mUserExecutor;
+
+    private final ThreadPoolExecutor mPrefetchExecutor;
+
+    private final ThreadPoolExecutor mThumbnailExecutor;
+
+    /** Submission order of the tasks, to run the tasks of equal priority first in first out */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /** Waits out the delays of {@link #submitDelayed}, so that no thread of a pool does */
+    private final Handler mDelayHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Work run by the {@link FetchScheduler}.
+     */
+    public abstract static class Task implements Runnable, Comparable<Task> {
+        private final int mPriority;
+        private int mPool;
+        private long mSequence;
+        private int mThreadPriority;
+        private Scope mScope;
+        private ThreadPoolExecutor mExecutor;
+        private volatile boolean mCancelled;
+
+        /**
+         * @param priority is one of the PRIORITY constants
+         */
+        protected Task(int priority) {
+            mPriority = priority;
+        }
+
+        /**
+         * Do the work, on a thread of the pool.
+         */
+        protected abstract void execute();
+
+        /**
+         * Called when the task is cancelled, on the cancelling thread. Running work should
+         * stop as soon as possible (e.g. abort its request).
+         */
+        protected void onCancel() {
+        }
+
+        /**
+         * Cancel the task: it won't run if it's still queued.
+         */
+        public final void cancel() {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            ThreadPoolExecutor executor = mExecutor;
+            if (executor != null) {
+                executor.remove(this);
+            }
+            onCancel();
+        }
+
+        public final boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /** Return the priority of the task within its pool */
+        public final int getPriority() {
+            return mPriority;
+        }
+
+        /** Return the pool the task was submitted to */
+        public final int getPool() {
+            return mPool;
+        }
+
+        @Override
+        public final void run() {
+            sCurrentTask.set(this);
+            try {
+                if (!mCancelled) {
+                    // The priority of the thread may have been raised by the previous task
+                    Process.setThreadPriority(mThreadPriority);
+                    execute();
+                }
+            } finally {
+                sCurrentTask.remove();
+                if (mScope != null) {
+                    mScope.remove(this);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence > other.mSequence ? 1 : 0);
+        }
+    }
+
+    /**
+     * Group of tasks cancelled together, tied to the lifecycle of a component.
+     */
+    public class Scope {
+        private final List<Task> mTasks = new ArrayList<>();
+        private boolean mClosed;
+
+        /**
+         * Run the given task on the given pool, unless the scope is closed.
+         */
+        public void submit(int pool, Task task) {
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                mTasks.add(task);
+                task.mScope = this;
+            }
+            FetchScheduler.this.submit(pool, task);
+        }
+
+        /**
+         * Cancel every task of the scope which is queued or running.
+         */
+        public void cancelAll() {
+            List<Task> tasks;
+            synchronized (this) {
+                tasks = new ArrayList<>(mTasks);
+                mTasks.clear();
+            }
+            for (Task task : tasks) {
+                task.cancel();
+            }
+        }
+
+        /**
+         * Cancel every task of the scope and refuse the new ones, e.g. when the activity
+         * is destroyed.
+         */
+        public void close() {
+            synchronized (this) {
+                mClosed = true;
+            }
+            cancelAll();
+        }
+
+        private synchronized void remove(Task task) {
+            mTasks.remove(task);
+        }
+    }
+
+    /**
+     * Return the {@link FetchScheduler} of the app.
+     */
+    public static synchronized FetchScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new FetchScheduler();
+        }
+        return sInstance;
+    }
+
+    private FetchScheduler() {
+        mUserExecutor = newExecutor("BooksUser", USER_THREADS, Process.THREAD_PRIORITY_DEFAULT,
+                new PriorityBlockingQueue<Runnable>());
+        mPrefetchExecutor = newExecutor("BooksPrefetch", PREFETCH_THREADS,
+                Process.THREAD_PRIORITY_BACKGROUND, new PriorityBlockingQueue<Runnable>());
+        // Picasso submits its own Runnables, which aren't Tasks: first in first out
+        mThumbnailExecutor = newExecutor("BooksThumbnail", THUMBNAIL_THREADS,
+                Process.THREAD_PRIORITY_BACKGROUND, new LinkedBlockingQueue<Runnable>());
+    }
+
+    /**
+     * Return a new {@link Scope} for the tasks of a component.
+     */
+    public Scope newScope() {
+        return new Scope();
+    }
+
+    /**
+     * Run the given task on the given pool, by priority.
+     *
+     * @param pool is {@link #POOL_USER} or {@link #POOL_PREFETCH}
+     * @param task is the work to run
+     */
+    public void submit(int pool, Task task) {
+        ThreadPoolExecutor executor;
+        switch (pool) {
+            case POOL_USER:
+                executor = mUserExecutor;
+                task.mThreadPriority = Process.THREAD_PRIORITY_DEFAULT;
+                break;
+            case POOL_PREFETCH:
+                executor = mPrefetchExecutor;
+                task.mThreadPriority = Process.THREAD_PRIORITY_BACKGROUND;
+                break;
+            default:
+                throw new IllegalArgumentException("Tasks can't run on pool " + pool);
+        }
+        task.mPool = pool;
+        task.mSequence = mSequence.getAndIncrement();
+        task.mExecutor = executor;
+        if (!task.isCancelled()) {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Run the given task on the given pool once the given delay is over, unless it's
+     * cancelled meanwhile.
+     */
+    public void submitDelayed(final int pool, final Task task, long delayMillis) {
+        mDelayHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (!task.isCancelled()) {
+                    submit(pool, task);
+                }
+            }
+        }, delayMillis);
+    }
+
+    /**
+     * Return the task running on the calling thread, or null if it isn't a thread of the
+     * user or prefetch pool.
+     */
+    public static Task getCurrentTask() {
+        return sCurrentTask.get();
+    }
+
+    /**
+     * Return the executor of the thumbnail downloads, for Picasso.
+     */
+    public ExecutorService getThumbnailExecutor() {
+        return mThumbnailExecutor;
+    }
+
+    private static ThreadPoolExecutor newExecutor(final String name, int threads,
+                                                  final int threadPriority,
+                                                  BlockingQueue<Runnable> queue) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(threadPriority);
+                                runnable.run();
+                            }
+                        }, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
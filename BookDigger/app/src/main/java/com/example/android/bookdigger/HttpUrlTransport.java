@@ -0,0 +1,174 @@
+package com.example.android.bookdigger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link BooksTransport} built on {@link HttpURLConnection}. Responses are requested gzipped
+ * and connections are never disconnected after a successful request: the body is read to
+ * the end and closed, so that the connection goes back to the keep-alive pool. A connection
+ * whose body can't be read to the end (e.g. an aborted request) is disconnected. Its own HTTP cache
+ * is off: the conditional requests carry the validators stored by the {@link BooksCache}.
+ */
+public class HttpUrlTransport implements BooksTransport {
+
+    private static final int READ_TIMEOUT = 10000; /* milliseconds */
+    private static final int CONNECT_TIMEOUT = 15000; /* milliseconds */
+
+    /** Google APIs only compress the responses of clients announcing gzip in their User-Agent */
+    private static final String USER_AGENT = "BookDigger (gzip)";
+
+    @Override
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setReadTimeout(READ_TIMEOUT);
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT);
+        urlConnection.setRequestMethod("GET");
+        // Setting Accept-Encoding ourselves turns off the transparent decompression,
+        // which lets us count the compressed bytes
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        urlConnection.setRequestProperty("User-Agent", USER_AGENT);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            urlConnection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        return new HttpUrlResponse(urlConnection);
+    }
+
+    private static class HttpUrlResponse implements Response {
+
+        private final HttpURLConnection mUrlConnection;
+        private CountingInputStream mWireStream;
+        private DrainingInputStream mBody;
+
+        HttpUrlResponse(HttpURLConnection urlConnection) {
+            mUrlConnection = urlConnection;
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            return mUrlConnection.getResponseCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mUrlConnection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                mWireStream = new CountingInputStream(mUrlConnection.getInputStream());
+                InputStream decoded = "gzip".equalsIgnoreCase(mUrlConnection.getContentEncoding())
+                        ? new GZIPInputStream(mWireStream) : mWireStream;
+                mBody = new DrainingInputStream(decoded);
+            }
+            return mBody;
+        }
+
+        @Override
+        public long getWireBytes() {
+            return mWireStream == null ? 0 : mWireStream.getCount();
+        }
+
+        @Override
+        public void abort() {
+            mUrlConnection.disconnect();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Read the body, or the error body, to the end so that the connection can be reused
+            DrainingInputStream body = mBody;
+            if (body == null) {
+                InputStream errorStream = mUrlConnection.getErrorStream();
+                if (errorStream == null) {
+                    return;
+                }
+                body = new DrainingInputStream(errorStream);
+            }
+            body.close();
+            if (!body.isDrained()) {
+                // The connection is in an unknown state: don't let it go back to the pool
+                mUrlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from the underlying stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Reads what is left of the body before closing it: a connection whose response
+     * wasn't fully consumed can't be reused.
+     */
+    private static class DrainingInputStream extends FilterInputStream {
+
+        private boolean mClosed;
+
+        private boolean mDrained;
+
+        DrainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        /** Return true if the stream was read to the end before being closed */
+        boolean isDrained() {
+            return mDrained;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            try {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // Discard the trailing bytes
+                }
+                mDrained = true;
+            } catch (IOException e) {
+                // The connection is broken (or was aborted): it won't be reused anyway
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.android.bookdigger;
+
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.widget.EditText;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search-as-you-type: watches the search field and hands the query to its {@link Listener}
+ * once the user stops typing. The keystrokes typed in between are dropped.
+ * It also counts the characters typed by the user and the HTTP requests made meanwhile
+ * (prefetches and retries included, from the counter of the {@link BooksTracer}), so that
+ * the cost of the feature in API requests can be checked.
+ */
+public class InstantSearch implements TextWatcher {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = InstantSearch.class.getSimpleName();
+
+    /** Delay without keystroke after which the query is run (milliseconds) */
+    private static final long DEBOUNCE_MILLIS = 400;
+
+    /** Queries shorter than this aren't run */
+    private static final int MIN_QUERY_LENGTH = 3;
+
+    /**
+     * Receives the queries once the user stops typing.
+     */
+    public interface Listener {
+        void onQuery(String query);
+    }
+
+    private final Listener mListener;
+
+    private final Handler mHandler = new Handler();
+
+    /** The query waiting for the end of the debounce delay */
+    private String mPendingQuery;
+
+    /** True while the text of the field is set by the app, which isn't a query typed */
+    private boolean mSettingText;
+
+    // Instrumentation
+    private int mTypedCharacters;
+    private int mNetworkSearches;
+
+    /** Number of HTTP requests made before this instant search was created */
+    private final long mRequestsAtStart = NetworkStats.getRequestCount();
+
+    private final Runnable mRunQuery = new Runnable() {
+        @Override
+        public void run() {
+            String query = mPendingQuery;
+            mPendingQuery = null;
+            if (query != null) {
+                mListener.onQuery(query);
+            }
+        }
+    };
+
+    /**
+     * Constructs a new {@link InstantSearch}.
+     *
+     * @param listener receives the debounced queries
+     */
+    public InstantSearch(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        if (!mSettingText) {
+            mTypedCharacters += count;
+        }
+    }
+
+    @Override
+    public void afterTextChanged(Editable editable) {
+        // Drop the query of the previous keystroke
+        mHandler.removeCallbacks(mRunQuery);
+        if (mSettingText) {
+            mPendingQuery = null;
+            return;
+        }
+
+        String query = editable.toString().trim();
+        if (query.length() < MIN_QUERY_LENGTH) {
+            mPendingQuery = null;
+            return;
+        }
+        mPendingQuery = query;
+        mHandler.postDelayed(mRunQuery, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Drop the pending query, e.g. because the search button was clicked on.
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mRunQuery);
+        mPendingQuery = null;
+    }
+
+    /**
+     * Set the text of the watched field without running it as a query nor counting it as typed.
+     */
+    public void setText(EditText field, String text) {
+        mSettingText = true;
+        try {
+            field.setText(text);
+        } finally {
+            mSettingText = false;
+        }
+    }
+
+    /**
+     * Record that a query of this search-as-you-type needed a network search.
+     */
+    public void onNetworkSearch() {
+        mNetworkSearches++;
+        Log.d(LOG_TAG, "HTTP requests per typed character: " + getRequestsPerCharacter());
+    }
+
+    /** Number of characters typed in the search field */
+    public int getTypedCharacters() {
+        return mTypedCharacters;
+    }
+
+    /** Number of network searches started while typing */
+    public int getNetworkSearches() {
+        return mNetworkSearches;
+    }
+
+    /** Number of HTTP requests made since this instant search was created */
+    public long getRequests() {
+        return NetworkStats.getRequestCount() - mRequestsAtStart;
+    }
+
+    /** Number of HTTP requests per typed character */
+    public float getRequestsPerCharacter() {
+        return mTypedCharacters == 0 ? 0 : (float) getRequests() / mTypedCharacters;
+    }
+
+    /**
+     * Refine already displayed results for a query extending the one they were loaded for.
+     *
+     * @param books are the books displayed for previousQuery
+     * @param previousQuery is the query the books were loaded for
+     * @param query is the new query
+     * @return the books matching every word of query, or null if query doesn't extend
+     * previousQuery (the displayed books then say nothing about it)
+     */
+    public static List<Book> refine(List<Book> books, String previousQuery, String query) {
+        if (previousQuery == null || previousQuery.isEmpty()) {
+            return null;
+        }
+        String previous = previousQuery.toLowerCase(Locale.US);
+        String current = query.toLowerCase(Locale.US);
+        if (!current.startsWith(previous)) {
+            return null;
+        }
+
+        String[] words = current.split("\\s+");
+        List<Book> refined = new ArrayList<>();
+        for (Book book : books) {
+            String text = (book.getTitle() + " " + book.getAuthor()).toLowerCase(Locale.US);
+            boolean matches = true;
+            for (String word : words) {
+                if (!text.contains(word)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                refined.add(book);
+            }
+        }
+        return refined;
+    }
+}
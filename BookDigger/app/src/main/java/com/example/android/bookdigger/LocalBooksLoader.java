@@ -0,0 +1,39 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+
+import java.util.List;
+
+/**
+ * Loads the books matching the search input from the local {@link BooksDatabase}.
+ */
+public class LocalBooksLoader extends ScheduledLoader<BooksModel> {
+
+    /** User input */
+    private String mSearchInput;
+
+    /**
+     * Constructs a new {@link LocalBooksLoader}.
+     *
+     * @param context of the activity
+     * @param searchInput is the input of the user
+     */
+    public LocalBooksLoader(Context context, String searchInput) {
+        // The local results are quick and shown first: they go before the network loads
+        super(context, FetchScheduler.PRIORITY_IMMEDIATE);
+        mSearchInput = searchInput;
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public BooksModel loadInBackground() {
+        if (mSearchInput == null) {
+            return null;
+        }
+
+        List<Book> books = BooksDatabase.getInstance(getContext()).searchBooks(mSearchInput);
+        return new BooksModel(books.size(), books);
+    }
+}
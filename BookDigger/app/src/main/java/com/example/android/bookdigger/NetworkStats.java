@@ -0,0 +1,77 @@
+package com.example.android.bookdigger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Records the bytes on the wire and the latency of the requests made by {@link BooksUtils}.
+ */
+public class NetworkStats {
+
+    /** Number of requests kept in the history */
+    private static final int HISTORY_SIZE = 50;
+
+    /** A single recorded request */
+    public static class Sample {
+        public final String url;
+        public final int responseCode;
+        public final long wireBytes;
+        public final long latencyMillis;
+
+        Sample(String url, int responseCode, long wireBytes, long latencyMillis) {
+            this.url = url;
+            this.responseCode = responseCode;
+            this.wireBytes = wireBytes;
+            this.latencyMillis = latencyMillis;
+        }
+    }
+
+    private static final Deque<Sample> sHistory = new ArrayDeque<>();
+    private static int sRequestCount;
+    private static long sTotalWireBytes;
+    private static long sTotalLatencyMillis;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NetworkStats}
+     * object. This class only holds static methods.
+     */
+    private NetworkStats() {
+    }
+
+    /**
+     * Record a finished request.
+     *
+     * @param url is the requested URL
+     * @param responseCode is the HTTP status code, or -1 if no response was received
+     * @param wireBytes is the number of body bytes received, before decompression
+     * @param latencyMillis is the time from the request to the end of the body
+     */
+    public static synchronized void record(String url, int responseCode, long wireBytes, long latencyMillis) {
+        if (sHistory.size() == HISTORY_SIZE) {
+            sHistory.removeFirst();
+        }
+        sHistory.addLast(new Sample(url, responseCode, wireBytes, latencyMillis));
+        sRequestCount++;
+        sTotalWireBytes += wireBytes;
+        sTotalLatencyMillis += latencyMillis;
+    }
+
+    /** Return the most recent requests, from the oldest to the newest */
+    public static synchronized List<Sample> getHistory() {
+        return new ArrayList<>(sHistory);
+    }
+
+    public static synchronized int getRequestCount() {
+        return sRequestCount;
+    }
+
+    public static synchronized long getTotalWireBytes() {
+        return sTotalWireBytes;
+    }
+
+    public static synchronized long getTotalLatencyMillis() {
+        return sTotalLatencyMillis;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.bookdigger;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes the books which have already been displayed from the pages of a search: the Books
+ * API pages overlap when its results shift between two requests, which showed some books twice.
+ * Books are identified by their volume id, or by their title and authors when they have none.
+ * Not thread safe.
+ */
+public class PageMerger {
+
+    /** Keys of the books which have been merged and not forgotten since the last reset */
+    private final Set<String> mSeen = new HashSet<>();
+
+    /** Number of duplicates dropped since the merger was created */
+    private int mDuplicateCount;
+
+    /**
+     * Return the books of the page which haven't been merged yet, in the order of the page,
+     * and remember them.
+     */
+    public List<Book> merge(List<Book> page) {
+        List<Book> newBooks = new BookColumns(page.size());
+        for (Book book : page) {
+            if (mSeen.add(key(book))) {
+                newBooks.add(book);
+            } else {
+                mDuplicateCount++;
+            }
+        }
+        return newBooks;
+    }
+
+    /**
+     * Remember the given books without merging them, e.g. the page which is displayed.
+     */
+    public void addAll(List<Book> books) {
+        for (Book book : books) {
+            mSeen.add(key(book));
+        }
+    }
+
+    /**
+     * Forget a book which is no longer displayed, so that it's kept when it's loaded again.
+     */
+    public void forget(Book book) {
+        mSeen.remove(key(book));
+    }
+
+    /**
+     * Return true if the given book has been merged and not forgotten.
+     */
+    public boolean contains(Book book) {
+        return mSeen.contains(key(book));
+    }
+
+    /**
+     * Forget every book, e.g. when a new search starts.
+     */
+    public void reset() {
+        mSeen.clear();
+    }
+
+    /**
+     * Return the number of duplicates dropped by {@link #merge(List)}.
+     */
+    public int getDuplicateCount() {
+        return mDuplicateCount;
+    }
+
+    /**
+     * Return the key identifying a book across pages.
+     */
+    static String key(Book book) {
+        String id = book.getId();
+        if (id != null) {
+            return id;
+        }
+        // Ids never contain this character, so the two kinds of keys can't collide
+        return '\u0000' + book.getTitle() + '\u0000' + book.getAuthor();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import java.util.List;
+
+/**
+ * Chooses the number of books requested per page from the network conditions: bigger pages
+ * on Wi-Fi or when the round trips are slow, smaller ones on a fast mobile connection.
+ */
+public class PageSizePolicy {
+
+    /** Average latency above which the round trips are considered slow (milliseconds) */
+    private static final long SLOW_LATENCY_MILLIS = 1000;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link PageSizePolicy}
+     * object. This class only holds static methods.
+     */
+    private PageSizePolicy() {
+    }
+
+    /**
+     * Return the page size to use for the next search.
+     *
+     * @param context used to get the connection type
+     * @param configuredPageSize is the page size used on a fast mobile connection
+     */
+    public static int choosePageSize(Context context, int configuredPageSize) {
+        ConnectivityManager connectivityManager = (ConnectivityManager)
+                context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+
+        // On Wi-Fi the bigger pages cost nothing
+        if (networkInfo != null && networkInfo.getType() == ConnectivityManager.TYPE_WIFI) {
+            return BooksLoader.MAX_PAGE_SIZE;
+        }
+
+        // On slow connections, fewer round trips are worth the bigger responses
+        if (getAverageLatency() > SLOW_LATENCY_MILLIS) {
+            return BooksLoader.MAX_PAGE_SIZE;
+        }
+        return BooksLoader.clampPageSize(configuredPageSize);
+    }
+
+    /**
+     * Return the average latency of the recent successful requests, or 0 if there is none.
+     */
+    private static long getAverageLatency() {
+        List<NetworkStats.Sample> history = NetworkStats.getHistory();
+        long total = 0;
+        int count = 0;
+        for (NetworkStats.Sample sample : history) {
+            if (sample.responseCode == 200) {
+                total += sample.latencyMillis;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : total / count;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Fetches the pages around the displayed one in the background and stores them in the
+ * {@link BooksCache}, so that the next and previous buttons don't wait for the network.
+ * The prefetches run on the prefetch pool of the {@link FetchScheduler}, the next page first.
+ */
+public class PrefetchScheduler {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = PrefetchScheduler.class.getSimpleName();
+
+    /** Also prefetch the previous page (it's usually cached already) */
+    private static final boolean PREFETCH_PREVIOUS = true;
+
+    private final Context mContext;
+
+    /** Query URL */
+    private final String mUrl;
+
+    /** Prefetches that are queued or running */
+    private final FetchScheduler.Scope mScope = FetchScheduler.getInstance().newScope();
+
+    /**
+     * Constructs a new {@link PrefetchScheduler}.
+     *
+     * @param context of the activity
+     * @param url to load data from
+     */
+    public PrefetchScheduler(Context context, String url) {
+        mContext = context.getApplicationContext();
+        mUrl = url;
+    }
+
+    /**
+     * Schedule the prefetch of the pages next to the one which has just been displayed.
+     *
+     * @param searchInput is the input of the user
+     * @param startIndex is the start index of the displayed page
+     * @param pageSize is the number of items per page
+     * @param totalItems is the totalItems value of the displayed page
+     */
+    public void schedule(String searchInput, int startIndex, int pageSize, int totalItems) {
+        if (startIndex + pageSize < totalItems) {
+            prefetch(searchInput, startIndex + pageSize, pageSize, FetchScheduler.PRIORITY_HIGH);
+        }
+        if (PREFETCH_PREVIOUS && startIndex - pageSize >= 0) {
+            prefetch(searchInput, startIndex - pageSize, pageSize, FetchScheduler.PRIORITY_NORMAL);
+        }
+    }
+
+    /**
+     * Cancel every queued or running prefetch, e.g. when a new search starts.
+     */
+    public void cancelAll() {
+        mScope.cancelAll();
+    }
+
+    /**
+     * Cancel the pending prefetches and refuse the new ones.
+     */
+    public void shutdown() {
+        mScope.close();
+    }
+
+    private void prefetch(final String searchInput, final int startIndex, final int pageSize,
+                          int priority) {
+        final BooksRequestRegistry.Ticket ticket = new BooksRequestRegistry.Ticket();
+        mScope.submit(FetchScheduler.POOL_PREFETCH, new FetchScheduler.Task(priority) {
+            @Override
+            protected void execute() {
+                // The page may have been loaded since it was scheduled
+                if (BooksLoader.isPageCached(mContext, searchInput, startIndex, pageSize)) {
+                    return;
+                }
+                try {
+                    BooksLoader.loadPage(mContext, mUrl, searchInput, startIndex, pageSize, ticket);
+                } catch (IOException e) {
+                    // The page will be loaded again if it's displayed
+                    Log.d(LOG_TAG, "Prefetch failed: " + e.getMessage());
+                }
+            }
+
+            @Override
+            protected void onCancel() {
+                // Abort the network call if it's in flight
+                BooksRequestRegistry.cancel(ticket);
+            }
+        });
+    }
+}
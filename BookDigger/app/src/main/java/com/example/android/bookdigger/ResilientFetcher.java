@@ -0,0 +1,574 @@
+package com.example.android.bookdigger;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+/**
+ * Fetch policy of the Books API requests:
+ * - transient failures (I/O errors, 5xx, 429) are retried a few times with a jittered
+ * exponential backoff,
+ * - a request slower than the p95 time to first byte is hedged with a second identical
+ * request, the first response to arrive wins and the other one is aborted. The first request
+ * runs on the calling thread and the hedged one on the {@link FetchScheduler} pool of the
+ * calling task, so that a prefetch stays in the background,
+ * - after repeated failures a circuit breaker fails the requests right away for a while,
+ * so that the callers fall back to the cached results instead of waiting.
+ */
+public class ResilientFetcher {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ResilientFetcher.class.getSimpleName();
+
+    /** Maximum number of attempts of a request, the first one included */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** Backoff before the first retry, doubled for each following one */
+    private static final long BACKOFF_BASE_MILLIS = 500;
+
+    /** Maximum backoff between two attempts */
+    private static final long BACKOFF_MAX_MILLIS = 4000;
+
+    /** Interval at which a waiting request checks whether it was cancelled */
+    private static final long CANCEL_POLL_MILLIS = 100;
+
+    /** Hedge delay which adapts to the p95 time to first byte */
+    public static final long HEDGE_DELAY_P95 = -1;
+
+    /** A request is never hedged sooner than this */
+    private static final long HEDGE_MIN_DELAY_MILLIS = 250;
+
+    /** Number of recorded requests below which the p95 isn't trusted for hedging */
+    private static final int HEDGE_MIN_SAMPLES = 20;
+
+    /** Maximum number of hedged requests running at once */
+    private static final int MAX_RUNNING_HEDGES = 2;
+
+    /** Number of consecutive failures which open the circuit */
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+
+    /** Time during which an open circuit fails the requests before letting one through */
+    private static final long CIRCUIT_OPEN_MILLIS = 30 * 1000;
+
+    // States of the circuit breaker
+    private static final int CIRCUIT_CLOSED = 0;
+    private static final int CIRCUIT_OPEN = 1;
+    private static final int CIRCUIT_HALF_OPEN = 2;
+
+    /** Guards the circuit breaker and the counters */
+    private static final Object sLock = new Object();
+
+    private static final Random sRandom = new Random();
+
+    private static volatile boolean sHedgingEnabled = true;
+
+    private static volatile long sHedgeDelayMillis = HEDGE_DELAY_P95;
+
+    private static volatile long sCircuitOpenMillis = CIRCUIT_OPEN_MILLIS;
+
+    private static int sCircuitState = CIRCUIT_CLOSED;
+    private static int sConsecutiveFailures;
+    private static long sCircuitOpenedAt;
+
+    /** Number of hedged requests running */
+    private static int sRunningHedges;
+
+    // Counters exposed for monitoring
+    private static int sRetryCount;
+    private static int sHedgeCount;
+    private static int sHedgeWinCount;
+    private static int sRejectedCount;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link ResilientFetcher}
+     * object. This class only holds static methods.
+     */
+    private ResilientFetcher() {
+    }
+
+    /**
+     * Fetch the given URL according to the policy.
+     * This is a blocking call which must be made on a background thread.
+     *
+     * @param requestUrl is the URL to fetch
+     * @param handle is used to cancel the request (may be null)
+     * @return the {@link BooksModel}, or null if there is no book or the request was cancelled
+     * @throws BooksFetchException if every attempt failed, or right away if the circuit is open
+     */
+    public static BooksModel fetch(String requestUrl, BooksUtils.RequestHandle handle)
+            throws IOException {
+        BooksResponse booksResponse = fetch(requestUrl, null, handle);
+        return booksResponse == null ? null : booksResponse.getBooksModel();
+    }
+
+    /**
+     * Fetch the given URL according to the policy, with conditional requests if a stored
+     * response is given (see {@link BooksUtils#requestBookData}).
+     * This is a blocking call which must be made on a background thread.
+     *
+     * @param requestUrl is the URL to fetch
+     * @param cached is the stored response of the same URL, or null
+     * @param handle is used to cancel the request (may be null)
+     * @return the {@link BooksResponse}, or null if the request was cancelled
+     * @throws BooksFetchException if every attempt failed, or right away if the circuit is open
+     */
+    public static BooksResponse fetch(String requestUrl, BooksResponse cached, BooksUtils.RequestHandle handle)
+            throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            if (!allowRequest()) {
+                throw new BooksFetchException("Circuit open, the Books API is failing", null);
+            }
+            try {
+                BooksResponse booksResponse = attempt(requestUrl, cached, handle);
+                if (handle != null && handle.isCancelled()) {
+                    // Says nothing about the service
+                    onCancelled();
+                    return null;
+                }
+                onSuccess();
+                return booksResponse;
+            } catch (BooksFetchException e) {
+                if (handle != null && handle.isCancelled()) {
+                    onCancelled();
+                    return null;
+                }
+                if (!e.isTransient()) {
+                    // The server answered: it's the request which is wrong, not the service
+                    onSuccess();
+                    throw e;
+                }
+                onFailure();
+                // No retry once the circuit opened: the callers fall back to the cache now
+                if (attempt == MAX_ATTEMPTS || isCircuitOpen()) {
+                    throw e;
+                }
+            }
+
+            synchronized (sLock) {
+                sRetryCount++;
+            }
+            long backoff = backoffMillis(attempt);
+            Log.d(LOG_TAG, "Retrying in " + backoff + " ms: " + requestUrl);
+            if (!sleep(backoff, handle)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Turn the hedged requests on or off.
+     */
+    public static void setHedgingEnabled(boolean enabled) {
+        sHedgingEnabled = enabled;
+    }
+
+    /**
+     * Set the time after which a request is hedged, or {@link #HEDGE_DELAY_P95} (the default)
+     * to use the p95 time to first byte of the recent requests.
+     */
+    public static void setHedgeDelay(long millis) {
+        sHedgeDelayMillis = millis;
+    }
+
+    /**
+     * Set the time during which an open circuit fails the requests before letting one
+     * through (30 s by default).
+     */
+    public static void setCircuitOpenDelay(long millis) {
+        sCircuitOpenMillis = millis;
+    }
+
+    /**
+     * Close the circuit and forget the past failures.
+     */
+    public static void reset() {
+        synchronized (sLock) {
+            sCircuitState = CIRCUIT_CLOSED;
+            sConsecutiveFailures = 0;
+        }
+    }
+
+    /** Return true if the requests are currently failed without being sent */
+    public static boolean isCircuitOpen() {
+        synchronized (sLock) {
+            return sCircuitState == CIRCUIT_OPEN
+                    && SystemClock.elapsedRealtime() - sCircuitOpenedAt < sCircuitOpenMillis;
+        }
+    }
+
+    /** Number of attempts made after a transient failure */
+    public static int getRetryCount() {
+        synchronized (sLock) {
+            return sRetryCount;
+        }
+    }
+
+    /** Number of hedged requests sent */
+    public static int getHedgeCount() {
+        synchronized (sLock) {
+            return sHedgeCount;
+        }
+    }
+
+    /** Number of hedged requests which answered before the request they hedged */
+    public static int getHedgeWinCount() {
+        synchronized (sLock) {
+            return sHedgeWinCount;
+        }
+    }
+
+    /** Number of requests failed right away because the circuit was open */
+    public static int getRejectedCount() {
+        synchronized (sLock) {
+            return sRejectedCount;
+        }
+    }
+
+    /**
+     * Return true if a request can be sent. Once the open delay is over, a single request
+     * is let through to probe the service (half open circuit).
+     */
+    private static boolean allowRequest() {
+        synchronized (sLock) {
+            if (sCircuitState == CIRCUIT_CLOSED) {
+                return true;
+            }
+            if (sCircuitState == CIRCUIT_OPEN
+                    && SystemClock.elapsedRealtime() - sCircuitOpenedAt >= sCircuitOpenMillis) {
+                sCircuitState = CIRCUIT_HALF_OPEN;
+                return true;
+            }
+            sRejectedCount++;
+            return false;
+        }
+    }
+
+    private static void onSuccess() {
+        synchronized (sLock) {
+            sCircuitState = CIRCUIT_CLOSED;
+            sConsecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * A cancelled request neither closes nor opens the circuit. If it was the probe of the
+     * half open circuit, the next request probes the service instead.
+     */
+    private static void onCancelled() {
+        synchronized (sLock) {
+            if (sCircuitState == CIRCUIT_HALF_OPEN) {
+                // The open delay is already over
+                sCircuitState = CIRCUIT_OPEN;
+            }
+        }
+    }
+
+    private static void onFailure() {
+        synchronized (sLock) {
+            sConsecutiveFailures++;
+            if (sCircuitState == CIRCUIT_HALF_OPEN
+                    || sConsecutiveFailures >= CIRCUIT_FAILURE_THRESHOLD) {
+                if (sCircuitState != CIRCUIT_OPEN) {
+                    Log.e(LOG_TAG, "Opening the circuit after " + sConsecutiveFailures + " failures");
+                }
+                sCircuitState = CIRCUIT_OPEN;
+                sCircuitOpenedAt = SystemClock.elapsedRealtime();
+            }
+        }
+    }
+
+    /**
+     * Return the backoff before the given retry: between half and all of an exponentially
+     * growing bound, so that the clients failing together don't retry together.
+     */
+    private static long backoffMillis(int attempt) {
+        long bound = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << (attempt - 1));
+        synchronized (sLock) {
+            return bound / 2 + (long) (sRandom.nextDouble() * bound / 2);
+        }
+    }
+
+    /**
+     * Sleep for the given time, unless the request is cancelled. Return false if it was.
+     */
+    private static boolean sleep(long millis, BooksUtils.RequestHandle handle)
+            throws InterruptedIOException {
+        long end = SystemClock.elapsedRealtime() + millis;
+        long remaining = millis;
+        while (remaining > 0) {
+            if (handle != null && handle.isCancelled()) {
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(remaining, CANCEL_POLL_MILLIS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during the backoff");
+            }
+            remaining = end - SystemClock.elapsedRealtime();
+        }
+        return handle == null || !handle.isCancelled();
+    }
+
+    /**
+     * Return the time after which a request is hedged, or -1 if it isn't.
+     */
+    private static long hedgeDelayMillis() {
+        if (!sHedgingEnabled) {
+            return -1;
+        }
+        if (sHedgeDelayMillis != HEDGE_DELAY_P95) {
+            return sHedgeDelayMillis;
+        }
+        if (BooksTracer.getSampleCount(BooksTracer.PHASE_TTFB) < HEDGE_MIN_SAMPLES) {
+            return -1;
+        }
+        long p95Millis = BooksTracer.getPercentile(BooksTracer.PHASE_TTFB, 95) / 1000;
+        return Math.max(HEDGE_MIN_DELAY_MILLIS, p95Millis);
+    }
+
+    /**
+     * Make one attempt, hedged if the request is slow.
+     */
+    private static BooksResponse attempt(String requestUrl, BooksResponse cached,
+                                         BooksUtils.RequestHandle handle) throws IOException {
+        long hedgeDelay = hedgeDelayMillis();
+        if (hedgeDelay < 0) {
+            return BooksUtils.requestBookData(requestUrl, cached, handle);
+        }
+
+        // The hedged request is queued like the calling task, or as a user load if the
+        // caller isn't a task of the scheduler
+        Hedge hedge = new Hedge(handle, cached);
+        FetchScheduler.Task caller = FetchScheduler.getCurrentTask();
+        int pool = caller != null ? caller.getPool() : FetchScheduler.POOL_USER;
+        int priority = caller != null ? caller.getPriority() : FetchScheduler.PRIORITY_HIGH;
+        FetchScheduler.getInstance().submitDelayed(pool,
+                new HedgeTask(hedge, requestUrl, hedgeDelay, priority, Process.myTid()), hedgeDelay);
+        return hedge.runFirst(requestUrl);
+    }
+
+    /**
+     * Identical requests racing each other: the first one to succeed gives the result and
+     * the others are aborted.
+     */
+    private static class Hedge {
+        private final BooksUtils.RequestHandle mParent;
+        /** Stored response revalidated by both requests, or null */
+        private final BooksResponse mCached;
+        private final Attempt[] mAttempts = new Attempt[2];
+        private int mStarted;
+        private int mFailed;
+        private boolean mDone;
+        private BooksResponse mResult;
+        private BooksFetchException mError;
+
+        Hedge(BooksUtils.RequestHandle parent, BooksResponse cached) {
+            mParent = parent;
+            mCached = cached;
+        }
+
+        /**
+         * Make the first request on the calling thread, then wait for the hedged one if it
+         * was sent and is still running.
+         */
+        BooksResponse runFirst(String requestUrl) throws IOException {
+            Attempt first;
+            synchronized (this) {
+                first = newAttempt();
+            }
+            run(first, requestUrl, false);
+            synchronized (this) {
+                while (!mDone) {
+                    if (mParent != null && mParent.isCancelled()) {
+                        mDone = true;
+                        break;
+                    }
+                    try {
+                        wait(CANCEL_POLL_MILLIS);
+                    } catch (InterruptedException e) {
+                        mDone = true;
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            abortAll();
+            synchronized (this) {
+                if (mResult == null && mError != null && mFailed == mStarted) {
+                    throw mError;
+                }
+                return mResult;
+            }
+        }
+
+        /**
+         * Return the hedged request, or null if the first one is already over or too many
+         * hedged requests are running.
+         */
+        synchronized Attempt startHedge(long hedgeDelay) {
+            if (mDone || (mParent != null && mParent.isCancelled())) {
+                return null;
+            }
+            synchronized (sLock) {
+                if (sRunningHedges >= MAX_RUNNING_HEDGES) {
+                    return null;
+                }
+                sRunningHedges++;
+                sHedgeCount++;
+            }
+            Log.d(LOG_TAG, "Hedging a request slower than " + hedgeDelay + " ms");
+            return newAttempt();
+        }
+
+        /**
+         * Make one of the requests, then abort the other one if it decided the result.
+         */
+        void run(Attempt attempt, String requestUrl, boolean hedged) {
+            try {
+                BooksResponse booksResponse = BooksUtils.requestBookData(requestUrl, mCached, attempt);
+                onResult(attempt, booksResponse, hedged);
+            } catch (BooksFetchException e) {
+                onError(e);
+            } catch (IOException e) {
+                onError(new BooksFetchException("Problem with the hedged request", e));
+            }
+            // The other request may be blocked in a read: aborting it makes it fail now
+            boolean done;
+            synchronized (this) {
+                done = mDone;
+            }
+            if (done || (mParent != null && mParent.isCancelled())) {
+                abortAll();
+            }
+        }
+
+        private Attempt newAttempt() {
+            Attempt attempt = new Attempt(this);
+            mAttempts[mStarted++] = attempt;
+            return attempt;
+        }
+
+        private synchronized void onResult(Attempt attempt, BooksResponse booksResponse, boolean hedged) {
+            if (mDone || attempt.mAborted) {
+                return;
+            }
+            mResult = booksResponse;
+            mDone = true;
+            if (hedged) {
+                synchronized (sLock) {
+                    sHedgeWinCount++;
+                }
+            }
+            notifyAll();
+        }
+
+        private synchronized void onError(BooksFetchException error) {
+            mFailed++;
+            mError = error;
+            // The request isn't hedged anymore once it failed: the policy retries it
+            if (mFailed == mStarted) {
+                mDone = true;
+            }
+            notifyAll();
+        }
+
+        private void abortAll() {
+            for (int i = 0; i < mAttempts.length; i++) {
+                BooksTransport.Response response;
+                synchronized (this) {
+                    Attempt attempt = mAttempts[i];
+                    if (attempt == null) {
+                        continue;
+                    }
+                    attempt.mAborted = true;
+                    response = attempt.mResponse;
+                }
+                if (response != null) {
+                    response.abort();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the hedged request of a {@link Hedge}, unless the first one is over by then.
+     */
+    private static class HedgeTask extends FetchScheduler.Task {
+        private final Hedge mHedge;
+        private final String mRequestUrl;
+        private final long mHedgeDelay;
+        /** Thread making the first request */
+        private final int mFirstTid;
+
+        HedgeTask(Hedge hedge, String requestUrl, long hedgeDelay, int priority, int firstTid) {
+            super(priority);
+            mHedge = hedge;
+            mRequestUrl = requestUrl;
+            mHedgeDelay = hedgeDelay;
+            mFirstTid = firstTid;
+        }
+
+        @Override
+        protected void execute() {
+            Attempt attempt = mHedge.startHedge(mHedgeDelay);
+            if (attempt == null) {
+                return;
+            }
+            try {
+                // The thread of the first request may have been raised by a user load
+                // joining it (see BooksRequestRegistry): the hedged one is raised as well
+                try {
+                    int priority = Process.getThreadPriority(mFirstTid);
+                    if (priority < Process.getThreadPriority(Process.myTid())) {
+                        Process.setThreadPriority(priority);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // The first request is over and its thread gone
+                }
+                mHedge.run(attempt, mRequestUrl, true);
+            } finally {
+                synchronized (sLock) {
+                    sRunningHedges--;
+                }
+            }
+        }
+    }
+
+    /**
+     * One of the requests of a {@link Hedge}.
+     */
+    private static class Attempt implements BooksUtils.RequestHandle {
+        private final Hedge mHedge;
+        private BooksTransport.Response mResponse;
+        private boolean mAborted;
+
+        Attempt(Hedge hedge) {
+            mHedge = hedge;
+        }
+
+        @Override
+        public boolean onRequestOpened(BooksTransport.Response response) {
+            synchronized (mHedge) {
+                mResponse = response;
+                if (mAborted || mHedge.mDone) {
+                    return false;
+                }
+            }
+            return mHedge.mParent == null || mHedge.mParent.onRequestOpened(response);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            synchronized (mHedge) {
+                if (mAborted) {
+                    return true;
+                }
+            }
+            return mHedge.mParent != null && mHedge.mParent.isCancelled();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.content.Loader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link Loader} running its loads on the user pool of the {@link FetchScheduler} instead of
+ * the shared serial executor of AsyncTask. The last result is kept and delivered again when
+ * the loader restarts, and a load superseded by a new one is cancelled. As AsyncTaskLoader,
+ * a load cancelled by the LoaderManager reports its cancellation once it stopped, so that a
+ * restarted loader waiting for it can start.
+ */
+public abstract class ScheduledLoader<D> extends Loader<D> {
+
+    /** Posts the results back to the main thread */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Priority of the loads within the user pool */
+    private final int mPriority;
+
+    /** Running load, only accessed on the main thread */
+    private LoadTask mTask;
+
+    /** Load cancelled by {@link #onCancelLoad()}, whose cancellation is still to be delivered */
+    private LoadTask mCancellingTask;
+
+    /** Last loaded result, delivered again instead of reloading when the loader restarts */
+    private D mResult;
+
+    /**
+     * A load of the loader, run by the {@link FetchScheduler}.
+     */
+    private class LoadTask extends FetchScheduler.Task {
+
+        /** Set by the first of the load and the cancellation of a queued task, which reports */
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+
+        LoadTask(int priority) {
+            super(priority);
+        }
+
+        @Override
+        protected void execute() {
+            if (!mClaimed.compareAndSet(false, true)) {
+                return;
+            }
+            postDone(loadInBackground());
+        }
+
+        @Override
+        protected void onCancel() {
+            if (mClaimed.compareAndSet(false, true)) {
+                // Never run: report it now, as a completed load would
+                postDone(null);
+            } else {
+                cancelLoadInBackground();
+            }
+        }
+
+        private void postDone(final D data) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onLoadDone(LoadTask.this, data);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param context of the activity
+     * @param priority is one of the {@link FetchScheduler} PRIORITY constants
+     */
+    protected ScheduledLoader(Context context, int priority) {
+        super(context);
+        mPriority = priority;
+    }
+
+    /**
+     * Load the data. This is on a background thread.
+     */
+    public abstract D loadInBackground();
+
+    /**
+     * Called on the main thread when the running load is superseded, to abort it.
+     */
+    public void cancelLoadInBackground() {
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mResult != null) {
+            deliverResult(mResult);
+        } else {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onForceLoad() {
+        cancelTask();
+        mTask = new LoadTask(mPriority);
+        FetchScheduler.getInstance().submit(FetchScheduler.POOL_USER, mTask);
+    }
+
+    @Override
+    protected boolean onCancelLoad() {
+        if (mTask == null) {
+            return false;
+        }
+        LoadTask task = mTask;
+        cancelTask();
+        if (mCancellingTask != null) {
+            // The LoaderManager already waits for the former one
+            return false;
+        }
+        mCancellingTask = task;
+        return true;
+    }
+
+    @Override
+    protected void onReset() {
+        cancelTask();
+        mCancellingTask = null;
+        mResult = null;
+    }
+
+    @Override
+    public void deliverResult(D data) {
+        mResult = data;
+        super.deliverResult(data);
+    }
+
+    /**
+     * Deliver the result of the given load, unless it was superseded, or its cancellation if
+     * the LoaderManager waits for it.
+     */
+    private void onLoadDone(LoadTask task, D data) {
+        if (task == mCancellingTask) {
+            mCancellingTask = null;
+            // onCancelLoad() is only called from API 16, as deliverCancellation() exists
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                deliverCancellation();
+            }
+            return;
+        }
+        if (task != mTask || task.isCancelled()) {
+            return;
+        }
+        mTask = null;
+        if (isReset() || isAbandoned()) {
+            return;
+        }
+        deliverResult(data);
+    }
+
+    private boolean cancelTask() {
+        if (mTask == null) {
+            return false;
+        }
+        mTask.cancel();
+        mTask = null;
+        return true;
+    }
+}
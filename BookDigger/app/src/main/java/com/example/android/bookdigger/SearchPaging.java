@@ -0,0 +1,382 @@
+package com.example.android.bookdigger;
+
+import android.os.Bundle;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Paging state of the search displayed by the {@link BooksActivity}: the page being loaded
+ * and how it's merged in the list, the pages held in incremental paging, the books already
+ * displayed and how far the results of the Books API shifted between two pages.
+ * Not thread safe: used from the main thread.
+ */
+public class SearchPaging {
+
+    // How a loaded page is merged in the list
+    public static final int LOAD_REPLACE = 0;
+    public static final int LOAD_APPEND = 1;
+    public static final int LOAD_PREPEND = 2;
+
+    /** The incremental paging stops after this many pages without any new book */
+    private static final int MAX_REPEATED_PAGES = 3;
+
+    // Keys of the saved state
+    private static final String STATE_START_INDEX = "startIndex";
+    private static final String STATE_ITEMS_NUMBER = "itemsNumber";
+    private static final String STATE_LOADING = "loading";
+    private static final String STATE_LOAD_MODE = "loadMode";
+    private static final String STATE_END_REACHED = "endReached";
+    private static final String STATE_RESULTS_SHIFT = "resultsShift";
+    private static final String STATE_WINDOW_START = "windowStart";
+    private static final String STATE_WINDOW_PAGES = "windowPages";
+
+    /** The startIndex for the query url */
+    private int mStartIndex;
+
+    /** Number of items of the pages (maxResults of the requests) */
+    private int mPageSize;
+
+    /** How the page being loaded will be merged in the list */
+    private int mLoadMode = LOAD_REPLACE;
+
+    /** True while a page requested by the user or by scrolling is loading */
+    private boolean mLoading;
+
+    /** True when the last page of the current search has been reached */
+    private boolean mEndReached;
+
+    /**
+     * Number of books repeated by the following pages of the search: the results shifted
+     * by as many, which pushed as many books past totalItems. They're loaded too.
+     */
+    private int mResultsShift;
+
+    /** Number of consecutive appended pages which only repeated displayed books */
+    private int mRepeatedPages;
+
+    /** Number of books of the first page dropped because the previous page showed them */
+    private int mRepeated;
+
+    /** The pages held by the adapter in incremental paging */
+    private final BookPageWindow mWindow;
+
+    /** Drops the books of a page which are already displayed */
+    private final PageMerger mMerger = new PageMerger();
+
+    /**
+     * Keys of the books of the local index kept below the first page of the network results.
+     * The network pages find them again without the results having shifted.
+     */
+    private final Set<String> mSavedKeys = new HashSet<>();
+
+    /**
+     * @param pageSize is the number of items of the pages
+     * @param maxPages is the maximum number of pages held in incremental paging
+     */
+    public SearchPaging(int pageSize, int maxPages) {
+        mPageSize = pageSize;
+        mWindow = new BookPageWindow(maxPages);
+    }
+
+    public int getStartIndex() {
+        return mStartIndex;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    public int getLoadMode() {
+        return mLoadMode;
+    }
+
+    public boolean isLoading() {
+        return mLoading;
+    }
+
+    public int getResultsShift() {
+        return mResultsShift;
+    }
+
+    public BookPageWindow getWindow() {
+        return mWindow;
+    }
+
+    /**
+     * Start a new search from its first page.
+     *
+     * @param pageSize is the number of items of its pages
+     */
+    public void newSearch(int pageSize) {
+        mPageSize = pageSize;
+        mStartIndex = 0;
+        mLoadMode = LOAD_REPLACE;
+        mEndReached = false;
+        mResultsShift = 0;
+        mRepeatedPages = 0;
+        mMerger.reset();
+        mSavedKeys.clear();
+    }
+
+    /**
+     * Display books which aren't pages of the Books API, e.g. the displayed results refined:
+     * there is no paging over them until a new search.
+     */
+    public void showAll(List<Book> books) {
+        mStartIndex = 0;
+        mEndReached = true;
+        mResultsShift = 0;
+        mRepeatedPages = 0;
+        mMerger.reset();
+        mMerger.addAll(books);
+        mWindow.reset(0, mPageSize);
+    }
+
+    /**
+     * Display the books of the local index: there is no paging over them.
+     */
+    public void showLocal() {
+        mWindow.reset(0, mPageSize);
+    }
+
+    /**
+     * Get ready to load the page at the given startIndex.
+     *
+     * @param loadMode is how the page will be merged in the list
+     */
+    public void startLoad(int startIndex, int loadMode) {
+        mStartIndex = startIndex;
+        mLoadMode = loadMode;
+        mLoading = true;
+    }
+
+    /**
+     * Stop waiting for a page, e.g. because the network is gone.
+     */
+    public void cancelLoad() {
+        mLoading = false;
+    }
+
+    /**
+     * Return how the loaded page is merged in the list, once it's delivered.
+     */
+    public int finishLoad() {
+        int loadMode = mLoadMode;
+        mLoadMode = LOAD_REPLACE;
+        mLoading = false;
+        return loadMode;
+    }
+
+    /** startIndex of the previous page of the buttons, or -1 on the first page */
+    public int getPreviousPage() {
+        return mStartIndex == 0 ? -1 : Math.max(0, mStartIndex - mPageSize);
+    }
+
+    /**
+     * Return the startIndex of the next page of the buttons, or -1 if the displayed page is
+     * the last one: the one reaching the number of results.
+     */
+    public int getNextPage(int totalItems) {
+        if (mEndReached || mStartIndex + mPageSize - mResultsShift >= totalItems) {
+            return -1;
+        }
+        return mStartIndex + mPageSize;
+    }
+
+    /**
+     * Return the startIndex of the page to add while scrolling, or -1 if none is needed.
+     *
+     * @param nearEnd is true if the list is scrolled close to its end
+     * @param nearStart is true if the list is scrolled close to its start
+     */
+    public int getIncrementalPage(int totalItems, boolean nearEnd, boolean nearStart) {
+        if (mLoading || mWindow.isEmpty()) {
+            return -1;
+        }
+        int nextStartIndex = mWindow.getNextStartIndex();
+        int previousStartIndex = mWindow.getPreviousStartIndex();
+        if (!mEndReached && nextStartIndex < totalItems + mResultsShift && nearEnd) {
+            return nextStartIndex;
+        } else if (previousStartIndex >= 0 && nearStart) {
+            return previousStartIndex;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the books of a first page to display: the ones the previous page of the search
+     * showed are dropped (the results may have shifted in between), unless nothing is left.
+     *
+     * @param mergeWithShown is true if the network results of the search are displayed
+     */
+    public List<Book> mergeFirstPage(List<Book> page, boolean mergeWithShown) {
+        int found = findSavedBooks(page);
+        List<Book> books = mergeWithShown ? mMerger.merge(page) : page;
+        if (books.isEmpty()) {
+            // Better show the same books again than an empty page
+            books = page;
+        }
+        mRepeated = page.size() - books.size();
+        mMerger.reset();
+        mMerger.addAll(books);
+
+        // A following page repeating books shows how far the results shifted
+        if (mStartIndex > mWindow.getFirstStartIndex()) {
+            mResultsShift += mRepeated - found;
+        }
+        mSavedKeys.clear();
+        return books;
+    }
+
+    /**
+     * Return the books of the local index the first page doesn't have, which are kept below
+     * it, and remember them.
+     */
+    public List<Book> mergeSavedBooks(List<Book> saved) {
+        List<Book> books = mMerger.merge(saved);
+        for (Book book : books) {
+            mSavedKeys.add(PageMerger.key(book));
+        }
+        return books;
+    }
+
+    /**
+     * Record the first page of the window once it's displayed, with the saved books below it.
+     *
+     * @param bookCount is the number of books displayed
+     */
+    public void firstPageShown(int bookCount, int totalItems) {
+        mWindow.reset(mStartIndex, mPageSize);
+        mWindow.append(bookCount);
+        mRepeatedPages = 0;
+
+        // The API returns short pages before the last one: only the number of results tells
+        mEndReached = mStartIndex + mPageSize - mResultsShift >= totalItems;
+    }
+
+    /** Index in the results of the first book of the displayed first page */
+    public int getFirstShownIndex() {
+        return mStartIndex + mRepeated;
+    }
+
+    /**
+     * Return the books of a page loaded by scrolling which aren't displayed yet. The page
+     * keeps its place in the window even if nothing is left, so that the startIndex of the
+     * next pages is right.
+     */
+    public List<Book> mergePage(List<Book> page, int loadMode, int totalItems) {
+        int found = findSavedBooks(page);
+        List<Book> books = mMerger.merge(page);
+        if (loadMode == LOAD_APPEND) {
+            // The repeated books show that the results shifted: the last ones moved as far.
+            // The saved books shown below the first page weren't repeated by the network
+            mResultsShift += page.size() - books.size() - found;
+
+            // The last page is the one reaching the number of results, not a short one
+            if (mStartIndex + mPageSize - mResultsShift >= totalItems) {
+                mEndReached = true;
+            }
+
+            // Don't keep loading pages which only repeat the displayed books
+            mRepeatedPages = books.isEmpty() ? mRepeatedPages + 1 : 0;
+            if (mRepeatedPages >= MAX_REPEATED_PAGES) {
+                mEndReached = true;
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Record that a page loaded by scrolling was empty: there is nothing after it.
+     */
+    public void emptyPage(int loadMode) {
+        if (loadMode == LOAD_APPEND) {
+            mEndReached = true;
+        }
+    }
+
+    /** Return true if the pages after the displayed ones must not be loaded */
+    public boolean isEndReached() {
+        return mEndReached;
+    }
+
+    /**
+     * Forget a book recycled out of the window, so that it can be shown again if it's
+     * loaded again.
+     */
+    public void forget(Book book) {
+        mMerger.forget(book);
+    }
+
+    /**
+     * Remember the books restored in the list.
+     */
+    public void restoreBooks(List<Book> books) {
+        mMerger.addAll(books);
+    }
+
+    /**
+     * Save the paging state.
+     */
+    public void save(Bundle outState) {
+        outState.putInt(STATE_START_INDEX, mStartIndex);
+        outState.putInt(STATE_ITEMS_NUMBER, mPageSize);
+        outState.putBoolean(STATE_LOADING, mLoading);
+        outState.putInt(STATE_LOAD_MODE, mLoadMode);
+        outState.putBoolean(STATE_END_REACHED, mEndReached);
+        outState.putInt(STATE_RESULTS_SHIFT, mResultsShift);
+        outState.putInt(STATE_WINDOW_START, mWindow.getFirstStartIndex());
+        outState.putIntArray(STATE_WINDOW_PAGES, mWindow.getPageCounts());
+    }
+
+    /**
+     * Restore the paging state saved by {@link #save(Bundle)}, without the window which is
+     * only restored with the books by {@link #restoreWindow(Bundle)}.
+     */
+    public void restore(Bundle state) {
+        mStartIndex = state.getInt(STATE_START_INDEX);
+        mPageSize = state.getInt(STATE_ITEMS_NUMBER, mPageSize);
+        mLoading = state.getBoolean(STATE_LOADING);
+        mLoadMode = state.getInt(STATE_LOAD_MODE, LOAD_REPLACE);
+        mEndReached = state.getBoolean(STATE_END_REACHED);
+        mResultsShift = state.getInt(STATE_RESULTS_SHIFT);
+    }
+
+    /**
+     * Restore the window saved by {@link #save(Bundle)}, along with its books.
+     */
+    public void restoreWindow(Bundle state) {
+        mWindow.restore(state.getInt(STATE_WINDOW_START), mPageSize,
+                state.getIntArray(STATE_WINDOW_PAGES));
+    }
+
+    /**
+     * The books of the window couldn't be restored: load the first page of the window again
+     * in their place.
+     */
+    public void reloadWindow(Bundle state) {
+        mStartIndex = state.getInt(STATE_WINDOW_START, mStartIndex);
+        mLoadMode = LOAD_REPLACE;
+        mLoading = true;
+    }
+
+    /**
+     * Return the number of books of the page which are displayed below the first page as
+     * saved books, and forget them: the next pages can't find them again.
+     */
+    private int findSavedBooks(List<Book> page) {
+        if (mSavedKeys.isEmpty()) {
+            return 0;
+        }
+        int found = 0;
+        for (Book book : page) {
+            // A saved book recycled with the first page isn't displayed anymore
+            if (mSavedKeys.remove(PageMerger.key(book)) && mMerger.contains(book)) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.android.bookdigger;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.OkHttpDownloader;
+import com.squareup.picasso.Picasso;
+
+import java.io.File;
+
+/**
+ * Loads the book thumbnails with a dedicated {@link Picasso} instance: bitmaps are decoded
+ * at the size of the book_thumbnail view, kept in a memory cache bounded in bytes and
+ * downloaded through a disk cache of their own. Loads can be paused while the list is flung.
+ */
+public class ThumbnailLoader {
+
+    /** Maximum size of the decoded bitmaps kept in memory, in bytes */
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    /** Maximum size of the downloaded thumbnails kept on disk, in bytes */
+    private static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+
+    /** Name of the disk cache sub-directory */
+    private static final String DISK_DIR_NAME = "thumbnails";
+
+    /** Tag of every thumbnail request, used to pause and resume them together */
+    private static final String REQUEST_TAG = "book_thumbnails";
+
+    private static ThumbnailLoader sInstance;
+
+    private final Picasso mPicasso;
+
+    private final LruCache mMemoryCache;
+
+    // Statistics
+    private int mLoadCount;
+    private long mTotalLoadNanos;
+    private int mPeakMemoryBytes;
+
+    /**
+     * Return the single {@link ThumbnailLoader} of the application.
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ThumbnailLoader(Context context) {
+        mMemoryCache = new LruCache(MEMORY_CACHE_BYTES);
+        mPicasso = new Picasso.Builder(context)
+                .memoryCache(mMemoryCache)
+                // The disk tier is the cache of this downloader only, never the Books API's
+                .downloader(new OkHttpDownloader(new File(context.getCacheDir(), DISK_DIR_NAME),
+                        DISK_CACHE_BYTES))
+                // Downloads run on their own pool, never in front of the book loads
+                .executor(FetchScheduler.getInstance().getThumbnailExecutor())
+                .build();
+    }
+
+    /**
+     * Display the thumbnail at the given url in the given book_thumbnail view.
+     * If there is no thumbnail or if it can't be downloaded: an image placeholder is
+     * displayed instead.
+     */
+    public void load(String url, ImageView imageView) {
+        TimingCallback callback = new TimingCallback();
+        mPicasso.load(url)
+                .placeholder(R.drawable.book_placeholder)
+                .error(R.drawable.book_placeholder)
+                // Decode at the size of the view, never bigger than the original
+                .resizeDimen(R.dimen.thumbnail_width_heigth, R.dimen.thumbnail_width_heigth)
+                .centerInside()
+                .onlyScaleDown()
+                // Thumbnails don't need an alpha channel: half the memory per pixel
+                .config(Bitmap.Config.RGB_565)
+                .tag(REQUEST_TAG)
+                .into(imageView, callback);
+        // A thumbnail of the memory cache is displayed before into() returns
+        callback.mQueued = true;
+    }
+
+    /**
+     * Display the image at the given url in the cover view of an opened book, decoded at
+     * the size of the view. It isn't paused with the thumbnails of the list.
+     */
+    public void loadCover(String url, ImageView imageView) {
+        mPicasso.load(url)
+                .placeholder(R.drawable.book_placeholder)
+                .error(R.drawable.book_placeholder)
+                .resizeDimen(R.dimen.cover_width, R.dimen.cover_height)
+                .centerInside()
+                .onlyScaleDown()
+                .into(imageView);
+    }
+
+    /** Stop starting new thumbnail loads, e.g. while the list is flung */
+    public void pause() {
+        mPicasso.pauseTag(REQUEST_TAG);
+    }
+
+    /** Resume the thumbnail loads paused by {@link #pause()} */
+    public void resume() {
+        mPicasso.resumeTag(REQUEST_TAG);
+    }
+
+    private synchronized void recordDisplay() {
+        mPeakMemoryBytes = Math.max(mPeakMemoryBytes, mMemoryCache.size());
+    }
+
+    private synchronized void recordLoad(long loadNanos) {
+        mLoadCount++;
+        mTotalLoadNanos += loadNanos;
+    }
+
+    /**
+     * Average time from the request to the display of a thumbnail missing from the memory
+     * cache, in microseconds: read from the disk or downloaded, then decoded.
+     */
+    public synchronized long getAverageLoadMicros() {
+        return mLoadCount == 0 ? 0 : mTotalLoadNanos / mLoadCount / 1000;
+    }
+
+    /** Number of images decoded, as counted by Picasso */
+    public int getDecodeCount() {
+        return mPicasso.getSnapshot().originalBitmapCount;
+    }
+
+    /** Average size of the decoded images before they are scaled to the view, in bytes */
+    public long getAverageDecodedBytes() {
+        return mPicasso.getSnapshot().averageOriginalBitmapSize;
+    }
+
+    /** Share of the thumbnails found in the memory cache */
+    public float getMemoryHitRate() {
+        int hits = mMemoryCache.hitCount();
+        int requests = hits + mMemoryCache.missCount();
+        return requests == 0 ? 0 : (float) hits / requests;
+    }
+
+    /** Highest size of the decoded bitmaps held in memory, in bytes */
+    public synchronized int getPeakMemoryBytes() {
+        return mPeakMemoryBytes;
+    }
+
+    /**
+     * Records the display of a thumbnail, and its load time when it wasn't in the memory cache.
+     * Called on the main thread, as {@link #load(String, ImageView)} is.
+     */
+    private class TimingCallback implements Callback {
+
+        private final long mStartNanos = System.nanoTime();
+
+        /** Whether the request was queued, rather than answered by the memory cache */
+        boolean mQueued;
+
+        @Override
+        public void onSuccess() {
+            if (mQueued) {
+                recordLoad(System.nanoTime() - mStartNanos);
+            }
+            recordDisplay();
+        }
+
+        @Override
+        public void onError() {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.android.bookdigger;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the authors of a {@link BookColumns} are kept by its own dictionary, which
+ * follows its books, and that the columns retain less heap than a {@link Book} per row and
+ * than joined author Strings.
+ */
+public class BookColumnsTest {
+
+    private static final String THUMBNAIL = "http://books.google.com/books/content?id=%s&printsec=frontcover&img=1&zoom=5&source=gbs_api";
+
+    private static Book book(int i, String... authors) {
+        return new Book("id" + i, "Book " + i, authors, null);
+    }
+
+    @Test
+    public void authorsAreKeptApart() throws Exception {
+        BookColumns books = new BookColumns();
+        books.add(book(0, "David A. Vise", "Mark Malseed"));
+        books.add(book(1));
+        books.add(book(2, "Mark Malseed"));
+
+        assertEquals(2, books.get(0).getAuthorCount());
+        assertEquals("Mark Malseed", books.get(0).getAuthorName(1));
+        assertEquals("David A. Vise, Mark Malseed", books.get(0).getAuthor());
+        assertEquals(AuthorDictionary.NO_AUTHOR, books.get(1).getAuthor());
+        assertEquals(2, books.getAuthorNameCount());
+    }
+
+    @Test
+    public void authorsAreCopiedBetweenLists() throws Exception {
+        BookColumns page = new BookColumns();
+        page.add(book(0, "Jane Austen"));
+        page.add(book(1, "Charles Dickens", "Jane Austen"));
+        BookColumns results = new BookColumns();
+        results.add(book(2, "Charles Dickens"));
+
+        // The views of another list are copied with their ids translated
+        results.addAll(page);
+        page.clear();
+
+        assertEquals("Jane Austen", results.get(1).getAuthor());
+        assertEquals("Charles Dickens, Jane Austen", results.get(2).getAuthor());
+        assertEquals(2, results.getAuthorNameCount());
+        assertEquals(0, page.getAuthorNameCount());
+    }
+
+    @Test
+    public void removedAuthorsAreDropped() throws Exception {
+        BookColumns books = new BookColumns();
+        for (int i = 0; i < 100; i++) {
+            books.add(book(i, "Author " + i));
+        }
+        Book removed = books.remove(0);
+        while (books.size() > 10) {
+            books.remove(0);
+        }
+
+        // The dictionary is rebuilt with the books when they are compacted
+        assertEquals("Author 0", removed.getAuthor());
+        assertEquals("Author 90", books.get(0).getAuthor());
+        assertTrue(books.getAuthorNameCount() <= 50);
+    }
+
+    @Test
+    public void fieldsOutsideOfAsciiAreKept() throws Exception {
+        BookColumns books = new BookColumns();
+        // Two and three byte chars, a char outside of the BMP, and a null id
+        books.add(new Book(null, "L'\u00c9t\u00e9 \u00e0 Paris \u6771\u4eac \ud83d\udcda",
+                new String[]{"Ren\u00e9 Char"}, "https://example.com/\u00e9t\u00e9.jpg"));
+
+        Book book = books.get(0);
+        assertNull(book.getId());
+        assertEquals("L'\u00c9t\u00e9 \u00e0 Paris \u6771\u4eac \ud83d\udcda", book.getTitle());
+        assertEquals("Ren\u00e9 Char", book.getAuthor());
+        assertEquals("https://example.com/\u00e9t\u00e9.jpg", book.getSmallThumbnailUrl());
+    }
+
+    @Test
+    public void snapshotIsIndependent() throws Exception {
+        BookColumns books = new BookColumns();
+        books.add(book(0, "Jane Austen"));
+        books.add(book(1, "Charles Dickens"));
+        BookColumns snapshot = books.snapshot();
+
+        // The snapshot keeps the books as they were
+        books.remove(0);
+        books.add(book(2, "Mark Twain"));
+
+        assertEquals(2, snapshot.size());
+        assertEquals("id0", snapshot.get(0).getId());
+        assertEquals("Charles Dickens", snapshot.get(1).getAuthor());
+        assertEquals("Mark Twain", books.get(1).getAuthor());
+    }
+
+    @Test
+    public void columnsRetainLessThanBooks() throws Exception {
+        List<Book> objects = new ArrayList<>();
+        BookColumns columns = new BookColumns();
+        for (int i = 0; i < 10000; i++) {
+            // New Strings for every book, as a parser creates them
+            String id = Integer.toHexString(i);
+            Book book = new Book(id, "The Book of Things, Volume " + i,
+                    new String[]{"Author " + (i % 500)}, String.format(THUMBNAIL, id));
+            objects.add(book);
+            columns.add(book);
+        }
+
+        long objectBytes = GraphLayout.parseInstance(objects).totalSize();
+        long columnBytes = GraphLayout.parseInstance(columns).totalSize();
+        assertTrue("columns retain " + columnBytes + " bytes, books " + objectBytes + " bytes",
+                columnBytes < objectBytes * 4 / 5);
+    }
+
+    @Test
+    public void internedAuthorsRetainLessThanJoined() throws Exception {
+        // An author heavy result set: 8 authors per book among 300 names
+        List<String> joined = new ArrayList<>();
+        BookColumns interned = new BookColumns();
+        for (int i = 0; i < 2000; i++) {
+            String[] authors = new String[8];
+            for (int j = 0; j < authors.length; j++) {
+                // A new String for every occurrence, as a parser creates them
+                authors[j] = "Author Name " + (i * 7 + j * 13) % 300;
+            }
+            // The former layout kept one joined String per book
+            joined.add(AuthorDictionary.join(authors));
+            // Only the authors, so that the other fields don't count
+            interned.add(new Book(null, "", authors, null));
+        }
+
+        long joinedBytes = GraphLayout.parseInstance(joined).totalSize();
+        long internedBytes = GraphLayout.parseInstance(interned).totalSize();
+        assertTrue("interned authors retain " + internedBytes + " bytes, joined ones " + joinedBytes + " bytes",
+                internedBytes < joinedBytes * 2 / 3);
+    }
+}
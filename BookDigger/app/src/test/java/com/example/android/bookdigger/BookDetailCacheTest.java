@@ -0,0 +1,72 @@
+package com.example.android.bookdigger;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of {@link BookDetail}s through the disk format of the {@link BookDetailCache}.
+ */
+public class BookDetailCacheTest {
+
+    private static void assertSameDetail(BookDetail expected, BookDetail actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getPublisher(), actual.getPublisher());
+        assertEquals(expected.getPublishedDate(), actual.getPublishedDate());
+        assertEquals(expected.getPageCount(), actual.getPageCount());
+        assertEquals(expected.getIsbn10(), actual.getIsbn10());
+        assertEquals(expected.getIsbn13(), actual.getIsbn13());
+        assertEquals(Arrays.asList(expected.getImageUrls()), Arrays.asList(actual.getImageUrls()));
+    }
+
+    @Test
+    public void completeDetailRoundTrip() throws IOException {
+        BookDetail detail = new BookDetail("zyTCAlFPjgYC", "<p>The <b>Google</b> story.</p>", "Random House",
+                "2005-11-15", 207, "055380457X", "9780553804577", new String[]{"http://example.com/t",
+                "http://example.com/s", "http://example.com/m", "http://example.com/l"});
+        assertSameDetail(detail, BookDetailCache.fromByteArray(BookDetailCache.toByteArray(detail)));
+    }
+
+    @Test
+    public void missingFieldsRoundTrip() throws IOException {
+        BookDetail detail = new BookDetail("\u00e9t\u00e9", null, "\u00c9ditions \ud83d\udcda", null, 0, null, null,
+                new String[]{null, null, null, "http://example.com/l"});
+        BookDetail read = BookDetailCache.fromByteArray(BookDetailCache.toByteArray(detail));
+        assertSameDetail(detail, read);
+        assertEquals("http://example.com/l", read.getLargestImageUrl());
+    }
+
+    @Test
+    public void largestImageFallsBackToTheThumbnail() {
+        BookDetail detail = new BookDetail("a", null, null, null, 0, null, null,
+                new String[]{"http://example.com/t", null, null, null});
+        assertEquals("http://example.com/t", detail.getLargestImageUrl());
+        assertNull(new BookDetail("b", null, null, null, 0, null, null, new String[4]).getLargestImageUrl());
+    }
+
+    @Test
+    public void truncatedDetailIsRejected() {
+        byte[] bytes = BookDetailCache.toByteArray(new BookDetail("zyTCAlFPjgYC", "A description", null,
+                "2005-11-15", 207, null, "9780553804577", new String[]{null, "http://example.com/s", null, null}));
+        // Every truncation fails with an IOException, never with a runtime exception
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                BookDetailCache.fromByteArray(Arrays.copyOf(bytes, length));
+                fail("A detail truncated to " + length + " bytes was read");
+            } catch (IOException expected) {
+                // The entry is dropped by the cache
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersionIsRejected() throws IOException {
+        byte[] bytes = BookDetailCache.toByteArray(new BookDetail("a", null, null, null, 0, null, null, new String[4]));
+        bytes[0] = 99;
+        BookDetailCache.fromByteArray(bytes);
+    }
+}
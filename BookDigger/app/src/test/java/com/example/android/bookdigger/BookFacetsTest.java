@@ -0,0 +1,119 @@
+package com.example.android.bookdigger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Narrowing and sorting of loaded books by {@link BookFacets}.
+ */
+public class BookFacetsTest {
+
+    private BookFacets mFacets;
+
+    private BookFacets.Filter mFilter;
+
+    private static Book book(String id, String title, String[] authors, String smallThumbnailUrl) {
+        return new Book(id, title, authors, smallThumbnailUrl);
+    }
+
+    @Before
+    public void setUp() {
+        List<Book> books = new ArrayList<>();
+        books.add(book("a", "The Hobbit", new String[]{"J. R. R. Tolkien"}, "http://example.com/a"));
+        books.add(book("b", "Effective Java", new String[]{"Joshua Bloch"}, null));
+        books.add(book("c", "Java Puzzlers", new String[]{"Joshua Bloch", "Neal Gafter"}, "http://example.com/c"));
+        books.add(book("d", "\u00c9mile", new String[]{"Jean-Jacques Rousseau"}, null));
+        books.add(book("e", "The Lord of the Rings", new String[]{"J. R. R. Tolkien"}, null));
+        books.add(book("f", "Anonymous java java notes", new String[0], "http://example.com/f"));
+        mFacets = new BookFacets(books);
+        mFilter = new BookFacets.Filter();
+    }
+
+    private List<String> ids() {
+        List<String> ids = new ArrayList<>();
+        for (Book book : mFacets.apply(mFilter)) {
+            ids.add(book.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void inactiveFilterKeepsTheOrderOfTheApi() {
+        assertFalse(mFilter.isActive());
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"), ids());
+    }
+
+    @Test
+    public void withThumbnailOnly() {
+        mFilter.setWithThumbnailOnly(true);
+        assertEquals(Arrays.asList("a", "c", "f"), ids());
+    }
+
+    @Test
+    public void byAuthor() {
+        mFilter.setAuthor("Joshua Bloch");
+        assertEquals(Arrays.asList("b", "c"), ids());
+        mFilter.setAuthor("Nobody");
+        assertEquals(new ArrayList<String>(), ids());
+    }
+
+    @Test
+    public void byTitleWordsAndPrefixes() {
+        mFilter.setTitleWords("java");
+        assertEquals(Arrays.asList("b", "c", "f"), ids());
+        mFilter.setTitleWords("Jav PUZ");
+        assertEquals(Arrays.asList("c"), ids());
+        mFilter.setTitleWords("EMILE");
+        assertEquals(Arrays.asList("d"), ids());
+        mFilter.setTitleWords("  ");
+        assertNull(mFilter.getTitleWords());
+    }
+
+    @Test
+    public void filtersAreCombined() {
+        mFilter.setTitleWords("java");
+        mFilter.setAuthor("Joshua Bloch");
+        mFilter.setWithThumbnailOnly(true);
+        assertEquals(Arrays.asList("c"), ids());
+    }
+
+    @Test
+    public void sortByTitleIgnoresCaseAndAccents() {
+        mFilter.setSort(BookFacets.SORT_TITLE);
+        assertEquals(Arrays.asList("f", "b", "d", "c", "a", "e"), ids());
+        mFilter.setWithThumbnailOnly(true);
+        assertEquals(Arrays.asList("f", "c", "a"), ids());
+    }
+
+    @Test
+    public void sortByAuthorPutsBooksWithoutAuthorLast() {
+        mFilter.setSort(BookFacets.SORT_AUTHOR);
+        assertEquals(Arrays.asList("a", "e", "d", "b", "c", "f"), ids());
+    }
+
+    @Test
+    public void authorsAreSortedByNumberOfBooks() {
+        List<String> authors = mFacets.getAuthors();
+        assertEquals(4, authors.size());
+        // Two books each, then by name
+        assertEquals(Arrays.asList("J. R. R. Tolkien", "Joshua Bloch"), authors.subList(0, 2));
+    }
+
+    @Test
+    public void onlyAuthorAndTitleCanBeQueried() {
+        mFilter.setWithThumbnailOnly(true);
+        mFilter.setSort(BookFacets.SORT_TITLE);
+        assertFalse(mFilter.canQuery());
+        mFilter.setAuthor("Joshua Bloch");
+        mFilter.setTitleWords("java");
+        assertTrue(mFilter.canQuery());
+        assertEquals("puzzles intitle:java inauthor:joshua bloch",
+                BooksQuery.parse(mFilter.toQuery("puzzles")).getKey().replace("\"", ""));
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.android.bookdigger;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of {@link BooksModel}s through the binary format of {@link BooksModelCodec}, and
+ * its size against the JSON of the same page.
+ */
+public class BooksModelCodecTest {
+
+    private static final String THUMBNAIL = "http://books.google.com/books/content?id=%s&printsec=frontcover&img=1&zoom=5&source=gbs_api";
+
+    private static Book book(String id, String title, String[] authors, String smallThumbnailUrl) {
+        return new Book(id, title, authors, smallThumbnailUrl);
+    }
+
+    private static BooksModel sampleModel() {
+        List<Book> books = new ArrayList<>();
+        books.add(book("zyTCAlFPjgYC", "The Google Story", new String[]{"David A. Vise", "Mark Malseed"},
+                String.format(THUMBNAIL, "zyTCAlFPjgYC")));
+        // No id (read from the database) and no thumbnail
+        books.add(book(null, "Effective Java", new String[]{"Joshua Bloch"}, null));
+        // No author, and a thumbnail which doesn't contain the id
+        books.add(book("abc", "Anonymous", new String[0], "https://example.com/cover.jpg"));
+        // Characters outside of ASCII, and outside of the BMP
+        books.add(book("\u00e9t\u00e9", "L'\u00c9t\u00e9 \u00e0 Paris \ud83d\udcda", new String[]{"Ren\u00e9 Char", "Joshua Bloch"},
+                String.format(THUMBNAIL, "\u00e9t\u00e9")));
+        return new BooksModel(1234, books);
+    }
+
+    private static void assertSameModel(BooksModel expected, BooksModel actual) {
+        assertEquals(expected.getTotalItems(), actual.getTotalItems());
+        assertEquals(expected.getBooks().size(), actual.getBooks().size());
+        for (int i = 0; i < expected.getBooks().size(); i++) {
+            Book expectedBook = expected.getBooks().get(i);
+            Book actualBook = actual.getBooks().get(i);
+            assertEquals(expectedBook.getId(), actualBook.getId());
+            assertEquals(expectedBook.getTitle(), actualBook.getTitle());
+            assertEquals(expectedBook.getAuthor(), actualBook.getAuthor());
+            assertEquals(expectedBook.getAuthorCount(), actualBook.getAuthorCount());
+            for (int j = 0; j < expectedBook.getAuthorCount(); j++) {
+                assertEquals(expectedBook.getAuthorName(j), actualBook.getAuthorName(j));
+            }
+            assertEquals(expectedBook.getSmallThumbnailUrl(), actualBook.getSmallThumbnailUrl());
+        }
+    }
+
+    @Test
+    public void roundTripKeepsEveryField() throws Exception {
+        BooksModel booksModel = sampleModel();
+        assertSameModel(booksModel, BooksModelCodec.fromByteArray(BooksModelCodec.toByteArray(booksModel)));
+    }
+
+    @Test
+    public void roundTripOfAnEmptyModel() throws Exception {
+        BooksModel booksModel = new BooksModel(0, new ArrayList<Book>());
+        assertSameModel(booksModel, BooksModelCodec.fromByteArray(BooksModelCodec.toByteArray(booksModel)));
+    }
+
+    @Test
+    public void titlesAreNotLimitedTo64KBytes() throws Exception {
+        char[] title = new char[70000];
+        Arrays.fill(title, '\u00e9');
+        List<Book> books = new ArrayList<>();
+        books.add(book("long", new String(title), new String[]{"Someone"}, null));
+        BooksModel booksModel = new BooksModel(1, books);
+        assertSameModel(booksModel, BooksModelCodec.fromByteArray(BooksModelCodec.toByteArray(booksModel)));
+    }
+
+    @Test
+    public void readFromADirectBuffer() throws Exception {
+        // As from a memory-mapped file
+        byte[] bytes = BooksModelCodec.toByteArray(sampleModel());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        assertSameModel(sampleModel(), BooksModelCodec.read(buffer));
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void readAfterAHeader() throws Exception {
+        // As a cache entry: the key is written before the model, in a slice of a larger array
+        BooksModelCodec.Output out = new BooksModelCodec.Output();
+        out.write(new byte[7], 0, 7);
+        out.writeString("key");
+        BooksModelCodec.write(sampleModel(), out);
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray(), 7, out.size() - 7).slice();
+        assertEquals("key", BooksModelCodec.readString(buffer));
+        assertSameModel(sampleModel(), BooksModelCodec.read(buffer));
+    }
+
+    @Test
+    public void repeatedStringsAreWrittenOnce() throws Exception {
+        List<Book> one = new ArrayList<>();
+        List<Book> many = new ArrayList<>();
+        one.add(book("id0", "Title", new String[]{"A rather long author name"}, String.format(THUMBNAIL, "id0")));
+        for (int i = 0; i < 11; i++) {
+            many.add(book("id" + i, "Title", new String[]{"A rather long author name"}, String.format(THUMBNAIL, "id" + i)));
+        }
+        int oneSize = BooksModelCodec.toByteArray(new BooksModel(1, one)).length;
+        int manySize = BooksModelCodec.toByteArray(new BooksModel(11, many)).length;
+        // Each other book only costs its flags, id, title and indexes (16 bytes at most), not
+        // its author and thumbnail url (over 100 bytes)
+        assertTrue(manySize - oneSize <= 10 * 16);
+    }
+
+    @Test
+    public void pageIsSmallerThanItsJson() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String id = "vol" + Integer.toHexString(i * 7919);
+            String[] authors = i % 3 == 0 ? new String[]{"Author " + (i % 5), "Other Author " + i}
+                    : new String[]{"Author " + (i % 5)};
+            books.add(book(id, "The Book of Things, Volume " + i, authors, String.format(THUMBNAIL, id)));
+        }
+        BooksModel booksModel = new BooksModel(1200, books);
+
+        int binarySize = BooksModelCodec.toByteArray(booksModel).length;
+        int jsonSize = projectedJson(booksModel).getBytes("UTF-8").length;
+        assertTrue("binary: " + binarySize + " bytes, JSON: " + jsonSize + " bytes",
+                binarySize < jsonSize / 3);
+    }
+
+    /**
+     * Return the JSON the Books API sends for the given page with the fields projection of
+     * {@link BooksUtils#FIELDS_PROJECTION}, without whitespace. The values need no escaping.
+     */
+    private static String projectedJson(BooksModel booksModel) {
+        StringBuilder json = new StringBuilder("{\"totalItems\":").append(booksModel.getTotalItems())
+                .append(",\"items\":[");
+        for (int i = 0; i < booksModel.getBooks().size(); i++) {
+            Book book = booksModel.getBooks().get(i);
+            json.append(i > 0 ? "," : "").append("{\"id\":\"").append(book.getId())
+                    .append("\",\"volumeInfo\":{\"title\":\"").append(book.getTitle())
+                    .append("\",\"authors\":[");
+            for (int j = 0; j < book.getAuthorCount(); j++) {
+                json.append(j > 0 ? "," : "").append('"').append(book.getAuthorName(j)).append('"');
+            }
+            json.append("],\"imageLinks\":{\"smallThumbnail\":\"").append(book.getSmallThumbnailUrl())
+                    .append("\"}}}");
+        }
+        return json.append("]}").toString();
+    }
+
+    @Test(expected = IOException.class)
+    public void otherVersionIsRejected() throws Exception {
+        byte[] bytes = BooksModelCodec.toByteArray(sampleModel());
+        bytes[0] = 3;
+        BooksModelCodec.fromByteArray(bytes);
+    }
+
+    @Test
+    public void truncatedDataIsRejected() throws Exception {
+        byte[] bytes = BooksModelCodec.toByteArray(sampleModel());
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                BooksModelCodec.fromByteArray(Arrays.copyOf(bytes, length));
+                fail("Read a model from " + length + " of " + bytes.length + " bytes");
+            } catch (IOException expected) {
+                // The data is rejected without any other exception
+            }
+        }
+    }
+
+    @Test
+    public void truncatedStringIsRejected() throws Exception {
+        BooksModelCodec.Output out = new BooksModelCodec.Output();
+        out.writeString("a cache key");
+        byte[] bytes = out.toByteArray();
+        // As a cache file cut at any length, the empty one included
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                BooksModelCodec.readString(ByteBuffer.wrap(Arrays.copyOf(bytes, length)));
+                fail("A string truncated to " + length + " bytes must be rejected");
+            } catch (IOException e) {
+                // Not a BufferUnderflowException
+            }
+        }
+    }
+}
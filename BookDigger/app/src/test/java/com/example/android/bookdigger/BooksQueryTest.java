@@ -0,0 +1,156 @@
+package com.example.android.bookdigger;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Canonicalization of the search inputs by {@link BooksQuery}, and its effect on the hit
+ * rate of the {@link BooksCache} on a replayed log of searches.
+ */
+public class BooksQueryTest {
+
+    private static void assertSameKey(String expected, String... inputs) {
+        for (String input : inputs) {
+            assertEquals(input, expected, BooksQuery.parse(input).getKey());
+        }
+    }
+
+    @Test
+    public void caseWhitespaceAndPunctuationAreFolded() {
+        assertSameKey("harry potter",
+                "harry potter", "Harry Potter", "  HARRY   potter ", "harry\tpotter\n",
+                "harry, potter!", "\"harry\" potter?", "(harry potter)");
+    }
+
+    @Test
+    public void punctuationInsideWordsIsKept() {
+        assertSameKey("o'reilly c++ c# -java", "O'Reilly C++ C#, -Java.");
+    }
+
+    @Test
+    public void composedAndDecomposedAccentsAreTheSame() {
+        assertEquals(BooksQuery.parse("\u00e9t\u00e9").getKey(), BooksQuery.parse("E\u0301te\u0301").getKey());
+    }
+
+    @Test
+    public void operatorsAreParsed() {
+        BooksQuery query = BooksQuery.parse("java InAuthor:Bloch intitle:\"Effective   Java\" isbn:978-0-13-468599-1");
+        assertEquals(Arrays.asList("java"), query.getTerms());
+        assertEquals(Arrays.asList("bloch"), query.getFilters(BooksQuery.INAUTHOR));
+        assertEquals(Arrays.asList("effective java"), query.getFilters(BooksQuery.INTITLE));
+        assertEquals(Arrays.asList("9780134685991"), query.getFilters(BooksQuery.ISBN));
+        assertEquals(Collections.<String>emptyList(), query.getFilters(BooksQuery.SUBJECT));
+        assertEquals("java intitle:\"effective java\" inauthor:bloch isbn:9780134685991", query.getKey());
+    }
+
+    @Test
+    public void operatorSpellingAndOrderAreFolded() {
+        assertSameKey("java intitle:effective inauthor:bloch",
+                "java intitle:effective inauthor:bloch",
+                "inauthor:Bloch java INTITLE: Effective",
+                "intitle:\"effective\" java inauthor:bloch inauthor:BLOCH");
+    }
+
+    @Test
+    public void unknownOperatorsAreTerms() {
+        assertSameKey("title:java", "Title:Java");
+    }
+
+    @Test
+    public void differentQueriesHaveDifferentKeys() {
+        String[] inputs = {"harry potter", "potter harry", "harry", "intitle:harry potter",
+                "\"harry potter\"", "inauthor:harry potter", "harry -potter"};
+        for (int i = 0; i < inputs.length; i++) {
+            for (int j = i + 1; j < inputs.length; j++) {
+                assertNotEquals(inputs[i] + " / " + inputs[j],
+                        BooksQuery.parse(inputs[i]).getKey(), BooksQuery.parse(inputs[j]).getKey());
+            }
+        }
+    }
+
+    @Test
+    public void blankInputIsEmpty() {
+        assertTrue(BooksQuery.parse(null).isEmpty());
+        assertTrue(BooksQuery.parse("  ?! ").isEmpty());
+        assertTrue(BooksQuery.parse("intitle:").isEmpty());
+        assertFalse(BooksQuery.parse("a").isEmpty());
+    }
+
+    @Test
+    public void queryParameterIsEncoded() {
+        // Unencoded, the & would start another parameter and the # end the URL
+        assertEquals("at%26t+c%23+intitle%3A%22caf%C3%A9+society%22",
+                BooksQuery.parse("AT&T C# intitle:\"Caf\u00e9 Society\"").toQueryParameter());
+    }
+
+    @Test
+    public void equivalentInputsGiveTheSameRequest() {
+        BooksQuery query = BooksQuery.parse("Harry  Potter!");
+        BooksQuery other = BooksQuery.parse("harry potter");
+        assertEquals(query, other);
+        assertEquals(query.hashCode(), other.hashCode());
+        assertEquals(query.getHash(), other.getHash());
+        assertEquals(16, query.getHash().length());
+        assertEquals(query.toQueryParameter(), other.toQueryParameter());
+        assertEquals(BooksCache.key(query, 20, 40), BooksCache.key(other, 20, 40));
+        assertNotEquals(BooksCache.key(query, 20, 40), BooksCache.key(query, 60, 40));
+    }
+
+    /**
+     * Return the searches of search_log.txt, a log written independently of the rules of
+     * {@link BooksQuery}, in their order.
+     */
+    private static List<String> readSearchLog() throws Exception {
+        InputStream in = BooksQueryTest.class.getClassLoader().getResourceAsStream("search_log.txt");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        List<String> searches = new ArrayList<>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("#") && !line.trim().isEmpty()) {
+                    searches.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return searches;
+    }
+
+    /**
+     * Replay the log through a cache which keeps every first page, as the two tiers of the
+     * {@link BooksCache} do for a log of this size. Before {@link BooksQuery} the input was
+     * sent and would have been keyed as typed.
+     */
+    @Test
+    public void replayedSearchLogHitsTheCacheMoreOften() throws Exception {
+        List<String> searches = readSearchLog();
+        Set<String> typedKeys = new HashSet<>();
+        Set<String> canonicalKeys = new HashSet<>();
+        int typedHits = 0;
+        int canonicalHits = 0;
+        for (String search : searches) {
+            if (!typedKeys.add(search + "|0|20")) {
+                typedHits++;
+            }
+            if (!canonicalKeys.add(BooksCache.key(BooksQuery.parse(search), 0, 20))) {
+                canonicalHits++;
+            }
+        }
+
+        String rates = typedHits + " hits as typed, " + canonicalHits + " canonical, of "
+                + searches.size() + " searches";
+        assertTrue(rates, canonicalHits > 2 * typedHits);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.android.bookdigger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Freshness and validators of the {@link BooksResponse}s, from the response headers.
+ */
+public class BooksResponseTest {
+
+    private static final long NOW = 1500000000000L;
+
+    private static BooksResponse withCacheControl(String cacheControl) {
+        return BooksResponse.fromHeaders(null, "\"v1\"", null, cacheControl, NOW);
+    }
+
+    @Test
+    public void cacheControlDirectivesAreParsed() {
+        BooksResponse response = withCacheControl("private, Max-Age=60, stale-while-revalidate=30");
+        assertEquals(60000, response.getFreshMillis());
+        assertEquals(30000, response.getStaleWhileRevalidateMillis());
+    }
+
+    @Test
+    public void defaultFreshnessWithoutCacheControl() {
+        BooksResponse response = withCacheControl(null);
+        assertEquals(BooksResponse.DEFAULT_FRESH_MILLIS, response.getFreshMillis());
+        assertEquals(BooksResponse.DEFAULT_STALE_WHILE_REVALIDATE_MILLIS, response.getStaleWhileRevalidateMillis());
+    }
+
+    @Test
+    public void malformedDirectivesKeepTheDefault() {
+        BooksResponse response = withCacheControl("max-age=soon, stale-while-revalidate=-5");
+        assertEquals(BooksResponse.DEFAULT_FRESH_MILLIS, response.getFreshMillis());
+        assertEquals(BooksResponse.DEFAULT_STALE_WHILE_REVALIDATE_MILLIS, response.getStaleWhileRevalidateMillis());
+    }
+
+    @Test
+    public void noCacheIsAlwaysRevalidated() {
+        BooksResponse response = withCacheControl("max-age=60, no-cache");
+        assertFalse(response.isFresh(NOW));
+        assertFalse(response.canServeWhileRevalidating(NOW));
+    }
+
+    @Test
+    public void noStoreIsNotStorable() {
+        assertFalse(withCacheControl("no-store, max-age=60").isStorable());
+        assertFalse(withCacheControl("no-store").isFresh(NOW));
+        // no-cache can be stored, it's only revalidated every time
+        assertTrue(withCacheControl("no-cache").isStorable());
+        assertTrue(withCacheControl(null).isStorable());
+    }
+
+    @Test
+    public void freshThenServedWhileRevalidatingThenExpired() {
+        BooksResponse response = withCacheControl("max-age=60, stale-while-revalidate=30");
+        assertTrue(response.isFresh(NOW + 59999));
+        assertFalse(response.isFresh(NOW + 60000));
+        assertTrue(response.canServeWhileRevalidating(NOW + 60000));
+        assertFalse(response.canServeWhileRevalidating(NOW + 90000));
+        // A clock set back doesn't make the page fresh forever
+        assertFalse(response.isFresh(NOW - 1));
+    }
+
+    @Test
+    public void conditionalHeadersCarryTheValidators() {
+        BooksResponse response = BooksResponse.fromHeaders(null, "\"v1\"", "Fri, 16 Jun 2017 10:00:00 GMT",
+                null, NOW);
+        Map<String, String> headers = response.getConditionalHeaders();
+        assertEquals("\"v1\"", headers.get(BooksResponse.HEADER_IF_NONE_MATCH));
+        assertEquals("Fri, 16 Jun 2017 10:00:00 GMT", headers.get(BooksResponse.HEADER_IF_MODIFIED_SINCE));
+
+        BooksResponse withoutValidators = BooksResponse.fromHeaders(null, "", null, null, NOW);
+        assertFalse(withoutValidators.hasValidators());
+        assertTrue(withoutValidators.getConditionalHeaders().isEmpty());
+    }
+
+    @Test
+    public void revalidatedKeepsTheStoredPage() {
+        BooksModel booksModel = new BooksModel(1, new ArrayList<Book>());
+        BooksResponse stored = BooksResponse.fromHeaders(booksModel, "\"v1\"", "Fri, 16 Jun 2017 10:00:00 GMT",
+                "max-age=0", NOW);
+        BooksResponse notModified = BooksResponse.fromHeaders(null, "\"v2\"", null, "max-age=60", NOW + 1000);
+
+        BooksResponse revalidated = stored.revalidated(notModified);
+
+        assertSame(booksModel, revalidated.getBooksModel());
+        assertTrue(revalidated.isNotModified());
+        assertEquals("\"v2\"", revalidated.getEtag());
+        assertEquals("Fri, 16 Jun 2017 10:00:00 GMT", revalidated.getLastModified());
+        assertTrue(revalidated.isFresh(NOW + 1000));
+    }
+
+    @Test
+    public void revalidatedWithoutCacheControlKeepsTheStoredFreshness() {
+        BooksModel booksModel = new BooksModel(1, new ArrayList<Book>());
+        BooksResponse stored = BooksResponse.fromHeaders(booksModel, "\"v1\"", null,
+                "max-age=60, stale-while-revalidate=30", NOW);
+        BooksResponse notModified = BooksResponse.fromHeaders(null, null, null, null, NOW + 120000);
+
+        BooksResponse revalidated = stored.revalidated(notModified);
+
+        // The stored max-age counts from the 304, not the defaults of a response without it
+        assertEquals(60000, revalidated.getFreshMillis());
+        assertEquals(30000, revalidated.getStaleWhileRevalidateMillis());
+        assertEquals("\"v1\"", revalidated.getEtag());
+        assertTrue(revalidated.isFresh(NOW + 179999));
+        assertFalse(revalidated.isFresh(NOW + 180000));
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.android.bookdigger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Merges synthetic pages of a result list whose items shift between two requests.
+ */
+public class PageMergerTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    /** Page of PAGE_SIZE books, the first one being the book at the given position of the results */
+    private static List<Book> page(int first) {
+        List<Book> books = new ArrayList<>();
+        for (int i = first; i < first + PAGE_SIZE; i++) {
+            books.add(new Book("id" + i, "Book " + i, new String[0], null));
+        }
+        return books;
+    }
+
+    @Test
+    public void overlappingPagesAreMergedOnce() throws Exception {
+        PageMerger merger = new PageMerger();
+        List<Book> merged = new ArrayList<>();
+
+        // Three books are inserted before the second page is requested: it starts with the
+        // last three books of the first page
+        merged.addAll(merger.merge(page(0)));
+        merged.addAll(merger.merge(page(PAGE_SIZE - 3)));
+        merged.addAll(merger.merge(page(2 * PAGE_SIZE - 3)));
+
+        assertEquals(3 * PAGE_SIZE - 3, merged.size());
+        assertEquals(3, merger.getDuplicateCount());
+        for (int i = 0; i < merged.size(); i++) {
+            // No book is missing and the order of the results is kept
+            assertEquals("id" + i, merged.get(i).getId());
+        }
+    }
+
+    @Test
+    public void disjointPagesAreKept() throws Exception {
+        PageMerger merger = new PageMerger();
+        assertEquals(PAGE_SIZE, merger.merge(page(0)).size());
+        assertEquals(PAGE_SIZE, merger.merge(page(PAGE_SIZE)).size());
+        assertEquals(0, merger.getDuplicateCount());
+    }
+
+    @Test
+    public void duplicatesWithinAPageAreDropped() throws Exception {
+        List<Book> books = page(0);
+        books.add(books.get(4));
+        assertEquals(PAGE_SIZE, new PageMerger().merge(books).size());
+    }
+
+    @Test
+    public void forgottenBooksAreMergedAgain() throws Exception {
+        PageMerger merger = new PageMerger();
+        List<Book> first = merger.merge(page(0));
+
+        // The first page is recycled, then loaded again
+        for (Book book : first) {
+            merger.forget(book);
+        }
+        assertEquals(PAGE_SIZE, merger.merge(page(0)).size());
+    }
+
+    @Test
+    public void resetForgetsEveryBook() throws Exception {
+        PageMerger merger = new PageMerger();
+        merger.merge(page(0));
+        merger.reset();
+        assertEquals(PAGE_SIZE, merger.merge(page(0)).size());
+    }
+
+    @Test
+    public void booksWithoutIdAreMergedByTitleAndAuthor() throws Exception {
+        PageMerger merger = new PageMerger();
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("Emma", "Jane Austen", null));
+        books.add(new Book("Emma", "Jane Austen", "http://thumbnail"));
+        books.add(new Book("Emma", "Someone Else", null));
+        assertEquals(2, merger.merge(books).size());
+
+        // A book with an id never matches one without
+        List<Book> withId = new ArrayList<>();
+        withId.add(new Book("Emma", "Emma", new String[0], null));
+        assertEquals(1, merger.merge(withId).size());
+    }
+
+    @Test
+    public void mergedBooksKeepTheirId() throws Exception {
+        // The merged page is stored in columns
+        List<Book> merged = new PageMerger().merge(page(0));
+        assertTrue(merged instanceof BookColumns);
+        assertEquals("id3", merged.get(3).getId());
+        assertEquals("Book 3", merged.get(3).getTitle());
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.android.bookdigger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pages a search over synthetic pages of a result list whose items shift between two requests.
+ */
+public class SearchPagingTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final int MAX_PAGES = 3;
+
+    /** Page of PAGE_SIZE books, the first one being the book at the given position of the results */
+    private static List<Book> page(int first) {
+        List<Book> books = new ArrayList<>();
+        for (int i = first; i < first + PAGE_SIZE; i++) {
+            books.add(new Book("id" + i, "Book " + i, new String[0], null));
+        }
+        return books;
+    }
+
+    /** Paging which displays the first page of a search with the given number of results */
+    private static SearchPaging firstPageShown(int totalItems) {
+        SearchPaging paging = new SearchPaging(PAGE_SIZE, MAX_PAGES);
+        paging.newSearch(PAGE_SIZE);
+        paging.startLoad(0, SearchPaging.LOAD_REPLACE);
+        assertEquals(SearchPaging.LOAD_REPLACE, paging.finishLoad());
+        List<Book> books = paging.mergeFirstPage(page(0), false);
+        paging.firstPageShown(books.size(), totalItems);
+        return paging;
+    }
+
+    @Test
+    public void nextPageRepeatingBooksShiftsTheResults() throws Exception {
+        SearchPaging paging = firstPageShown(100);
+        assertEquals(PAGE_SIZE, paging.getNextPage(100));
+        paging.startLoad(PAGE_SIZE, SearchPaging.LOAD_REPLACE);
+        paging.finishLoad();
+
+        // Three books were inserted before the second page was requested
+        List<Book> books = paging.mergeFirstPage(page(PAGE_SIZE - 3), true);
+
+        assertEquals(PAGE_SIZE - 3, books.size());
+        assertEquals("id10", books.get(0).getId());
+        assertEquals(PAGE_SIZE + 3, paging.getFirstShownIndex());
+        assertEquals(3, paging.getResultsShift());
+    }
+
+    @Test
+    public void pageReachingTotalItemsIsTheLast() throws Exception {
+        SearchPaging paging = firstPageShown(PAGE_SIZE);
+        assertTrue(paging.isEndReached());
+        assertEquals(-1, paging.getNextPage(PAGE_SIZE));
+        assertEquals(-1, paging.getPreviousPage());
+    }
+
+    @Test
+    public void incrementalPageFollowsTheWindow() throws Exception {
+        SearchPaging paging = firstPageShown(100);
+        assertEquals(-1, paging.getIncrementalPage(100, false, false));
+        assertEquals(PAGE_SIZE, paging.getIncrementalPage(100, true, false));
+
+        // Nothing else is loaded while the page is loading
+        paging.startLoad(PAGE_SIZE, SearchPaging.LOAD_APPEND);
+        assertEquals(-1, paging.getIncrementalPage(100, true, false));
+        assertEquals(SearchPaging.LOAD_APPEND, paging.finishLoad());
+        List<Book> books = paging.mergePage(page(PAGE_SIZE), SearchPaging.LOAD_APPEND, 100);
+        assertEquals(PAGE_SIZE, books.size());
+        assertEquals(0, paging.getWindow().append(books.size()));
+        assertEquals(2 * PAGE_SIZE, paging.getIncrementalPage(100, true, false));
+    }
+
+    @Test
+    public void appendedPagesOnlyRepeatingBooksStopThePaging() throws Exception {
+        SearchPaging paging = firstPageShown(100);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(paging.isEndReached());
+            paging.startLoad(paging.getWindow().getNextStartIndex(), SearchPaging.LOAD_APPEND);
+            paging.finishLoad();
+            assertTrue(paging.mergePage(page(0), SearchPaging.LOAD_APPEND, 1000).isEmpty());
+            paging.getWindow().append(0);
+        }
+        assertTrue(paging.isEndReached());
+    }
+
+    @Test
+    public void refinedBooksAreNotPaged() throws Exception {
+        SearchPaging paging = firstPageShown(100);
+        paging.showAll(page(0));
+        assertTrue(paging.isEndReached());
+        assertEquals(-1, paging.getIncrementalPage(100, true, true));
+
+        // A new search pages again
+        paging.newSearch(PAGE_SIZE);
+        assertFalse(paging.isEndReached());
+        assertEquals(0, paging.getResultsShift());
+    }
+}
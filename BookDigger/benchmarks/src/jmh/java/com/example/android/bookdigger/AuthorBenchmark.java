@@ -0,0 +1,57 @@
+package com.example.android.bookdigger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parse time of author heavy result sets. The heap their authors retain as one
+ * joined String per book (the former layout) or as ids in the {@link AuthorDictionary} of a
+ * {@link BookColumns} is measured with JOL by BookColumnsTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthorBenchmark {
+
+    @Param({"1", "8"})
+    public int authorsPerBook;
+
+    /** Number of parsed pages of 40 books, e.g. held by the caches */
+    @Param({"50"})
+    public int pages;
+
+    private byte[][] mResponses;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mResponses = new byte[pages][];
+        for (int i = 0; i < pages; i++) {
+            // Different seeds so that every page holds other titles
+            mResponses[i] = ResponseCorpus.response(40 + i, authorsPerBook, true);
+        }
+    }
+
+    /** Parse every page with the streaming parser */
+    @Benchmark
+    public List<BooksModel> parseAll() throws IOException {
+        List<BooksModel> booksModels = new ArrayList<>(mResponses.length);
+        for (byte[] response : mResponses) {
+            booksModels.add(BooksUtils.extractFeatureFromStream(
+                    new ByteArrayInputStream(response), null));
+        }
+        return booksModels;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android.bookdigger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary format of {@link BooksModelCodec} with the JSON form of the same page:
+ * the benchmarks measure the encoding and the decoding from a heap or a direct (as
+ * memory-mapped) buffer against the parse of the JSON. The sizes of the two forms are
+ * compared by BooksModelCodecTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    @Param({"20", "40"})
+    public int items;
+
+    @Param({"1", "3"})
+    public int authorsPerBook;
+
+    private String mJson;
+
+    private byte[] mProjectedJson;
+
+    private BooksModel mBooksModel;
+
+    private ByteBuffer mHeapBuffer;
+
+    private ByteBuffer mDirectBuffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        mProjectedJson = ResponseCorpus.response(items, authorsPerBook, true);
+        mJson = new String(mProjectedJson, Charset.forName("UTF-8"));
+        mBooksModel = BooksUtils.extractFeatureFromStream(new ByteArrayInputStream(mProjectedJson), null);
+
+        byte[] binary = BooksModelCodec.toByteArray(mBooksModel);
+        mHeapBuffer = ByteBuffer.wrap(binary);
+        mDirectBuffer = ByteBuffer.allocateDirect(binary.length);
+        mDirectBuffer.put(binary);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return BooksModelCodec.toByteArray(mBooksModel);
+    }
+
+    @Benchmark
+    public BooksModel decodeHeapBuffer() throws IOException {
+        mHeapBuffer.rewind();
+        return BooksModelCodec.read(mHeapBuffer);
+    }
+
+    @Benchmark
+    public BooksModel decodeDirectBuffer() throws IOException {
+        mDirectBuffer.rewind();
+        return BooksModelCodec.read(mDirectBuffer);
+    }
+
+    /** What a cache of the raw responses would do with each hit */
+    @Benchmark
+    public BooksModel parseJsonObject() {
+        return BooksUtils.extractFeatureFromJson(mJson);
+    }
+
+    @Benchmark
+    public BooksModel parseJsonStream() throws IOException {
+        return BooksUtils.extractFeatureFromStream(new ByteArrayInputStream(mProjectedJson), null);
+    }
+}
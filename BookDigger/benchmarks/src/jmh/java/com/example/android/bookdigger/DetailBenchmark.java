@@ -0,0 +1,59 @@
+package com.example.android.bookdigger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the two levels of the model: a page of the list parsed from the lean projection,
+ * the same page if every item carried its detail, and the lazy parse of a single volume
+ * when a row is opened.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetailBenchmark {
+
+    @Param({"20", "40"})
+    public int items;
+
+    private byte[] mLeanPage;
+
+    private byte[] mFullPage;
+
+    private byte[] mVolume;
+
+    @Setup
+    public void setUp() {
+        mLeanPage = ResponseCorpus.response(items, 3, true);
+        mFullPage = ResponseCorpus.response(items, 3, false);
+        mVolume = ResponseCorpus.volume(items);
+    }
+
+    /** The list path: only the summary of each book */
+    @Benchmark
+    public BooksModel parseLeanPage() throws IOException {
+        return BooksUtils.extractFeatureFromStream(new ByteArrayInputStream(mLeanPage), null);
+    }
+
+    /** The list path if the details were requested with it */
+    @Benchmark
+    public BooksModel parseFullPage() throws IOException {
+        return BooksUtils.extractFeatureFromStream(new ByteArrayInputStream(mFullPage), null);
+    }
+
+    /** The detail of one opened book */
+    @Benchmark
+    public BookDetail parseDetail() throws IOException {
+        return BooksUtils.extractDetailFromStream(new ByteArrayInputStream(mVolume));
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.android.bookdigger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the filters and sorts of {@link BookFacets} over the loaded books, and of the
+ * construction of its index, against a scan and a sort of the books for each change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FacetBenchmark {
+
+    @Param({"1000", "50000"})
+    public int books;
+
+    private static final String[] WORDS = {"java", "history", "garden", "night", "river", "code",
+            "war", "love", "secret", "city", "guide", "art", "kitchen", "stars", "island", "mind"};
+
+    private List<Book> mBooks;
+
+    private BookFacets mFacets;
+
+    private BookFacets.Filter mByThumbnail;
+    private BookFacets.Filter mByAuthor;
+    private BookFacets.Filter mByTitlePrefix;
+    private BookFacets.Filter mByTitle;
+    private BookFacets.Filter mByAuthorByTitle;
+
+    private String mAuthor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        int authorCount = Math.max(10, books / 20);
+        String[] authorNames = new String[authorCount];
+        for (int i = 0; i < authorCount; i++) {
+            authorNames[i] = "Author " + i;
+        }
+
+        mBooks = new BookColumns(books);
+        for (int i = 0; i < books; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                    + " " + i;
+            String[] authors = random.nextInt(4) == 0
+                    ? new String[]{authorNames[random.nextInt(authorCount)], authorNames[random.nextInt(authorCount)]}
+                    : new String[]{authorNames[random.nextInt(authorCount)]};
+            String thumbnail = random.nextInt(10) < 7 ? "http://books.google.com/books/content?id=v" + i : null;
+            mBooks.add(new Book("v" + i, title, authors, thumbnail));
+        }
+        mFacets = new BookFacets(mBooks);
+        mAuthor = authorNames[0];
+
+        mByThumbnail = new BookFacets.Filter();
+        mByThumbnail.setWithThumbnailOnly(true);
+        mByAuthor = new BookFacets.Filter();
+        mByAuthor.setAuthor(mAuthor);
+        mByTitlePrefix = new BookFacets.Filter();
+        mByTitlePrefix.setTitleWords("gar");
+        mByTitle = new BookFacets.Filter();
+        mByTitle.setSort(BookFacets.SORT_TITLE);
+        mByAuthorByTitle = new BookFacets.Filter();
+        mByAuthorByTitle.setAuthor(mAuthor);
+        mByAuthorByTitle.setWithThumbnailOnly(true);
+        mByAuthorByTitle.setSort(BookFacets.SORT_TITLE);
+    }
+
+    /** Paid once each time the loaded books change */
+    @Benchmark
+    public BookFacets buildIndex() {
+        return new BookFacets(mBooks);
+    }
+
+    @Benchmark
+    public int[] filterByThumbnail() {
+        return mFacets.select(mByThumbnail);
+    }
+
+    @Benchmark
+    public int[] filterByAuthor() {
+        return mFacets.select(mByAuthor);
+    }
+
+    @Benchmark
+    public int[] filterByTitlePrefix() {
+        return mFacets.select(mByTitlePrefix);
+    }
+
+    @Benchmark
+    public int[] sortByTitle() {
+        return mFacets.select(mByTitle);
+    }
+
+    /** As displayed: the filter, the sort and the copy of the books for the adapter */
+    @Benchmark
+    public List<Book> applyAuthorThumbnailAndTitleSort() {
+        return mFacets.apply(mByAuthorByTitle);
+    }
+
+    /** The same without index: every book is read, and the kept ones are sorted */
+    @Benchmark
+    public List<Book> scanAuthorThumbnailAndTitleSort() {
+        List<Book> kept = new ArrayList<>();
+        for (Book book : mBooks) {
+            if (book.getSmallThumbnailUrl() != null
+                    && Arrays.asList(book.getAuthor().split(", ")).contains(mAuthor)) {
+                kept.add(book);
+            }
+        }
+        Collections.sort(kept, new Comparator<Book>() {
+            @Override
+            public int compare(Book a, Book b) {
+                return a.getTitle().compareToIgnoreCase(b.getTitle());
+            }
+        });
+        return kept;
+    }
+
+    /** A sort of every book without the precomputed order */
+    @Benchmark
+    public List<Book> scanSortByTitle() {
+        List<Book> sorted = new ArrayList<>(mBooks);
+        Collections.sort(sorted, new Comparator<Book>() {
+            @Override
+            public int compare(Book a, Book b) {
+                return a.getTitle().compareToIgnoreCase(b.getTitle());
+            }
+        });
+        return sorted;
+    }
+}
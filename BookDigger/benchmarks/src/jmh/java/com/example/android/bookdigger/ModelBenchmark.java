@@ -0,0 +1,86 @@
+package com.example.android.bookdigger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the author joining for display and the construction of a {@link BooksModel}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ModelBenchmark {
+
+    @Param({"1", "3", "8"})
+    public int authorsPerBook;
+
+    @Param({"10", "40"})
+    public int items;
+
+    private String[] mAuthors;
+
+    private AuthorDictionary mAuthorDictionary;
+
+    private int[] mAuthorIds;
+
+    private String[] mIds;
+
+    private String[] mTitles;
+
+    private String[] mThumbnails;
+
+    private BooksModel mBooksModel;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] names = {"Jane Austen", "Charles Dickens", "Agatha Christie", "Stephen King",
+                "J. K. Rowling", "Isaac Asimov", "Terry Pratchett", "Joshua Bloch"};
+        mAuthors = Arrays.copyOf(names, authorsPerBook);
+        mAuthorDictionary = new AuthorDictionary();
+        mAuthorIds = new int[authorsPerBook];
+        for (int i = 0; i < authorsPerBook; i++) {
+            mAuthorIds[i] = mAuthorDictionary.intern(mAuthors[i]);
+        }
+
+        // Use the values of a parsed response so that the strings are realistic
+        mBooksModel = BooksUtils.extractFeatureFromStream(
+                new ByteArrayInputStream(ResponseCorpus.response(items, authorsPerBook, true)), null);
+        List<Book> books = mBooksModel.getBooks();
+        mIds = new String[books.size()];
+        mTitles = new String[books.size()];
+        mThumbnails = new String[books.size()];
+        for (int i = 0; i < books.size(); i++) {
+            mIds[i] = books.get(i).getId();
+            mTitles[i] = books.get(i).getTitle();
+            mThumbnails[i] = books.get(i).getSmallThumbnailUrl();
+        }
+    }
+
+    @Benchmark
+    public String joinAuthors() {
+        return mAuthorDictionary.join(mAuthorIds, 0, mAuthorIds.length);
+    }
+
+    /** Build the books of a page and their {@link BooksModel}, as the parsers do */
+    @Benchmark
+    public BooksModel buildBooksModel() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < mTitles.length; i++) {
+            books.add(new Book(mIds[i], mTitles[i], mAuthors.clone(), mThumbnails[i]));
+        }
+        return new BooksModel(mBooksModel.getTotalItems(), books);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.android.bookdigger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSONObject path (readFromStream + extractFeatureFromJson) with the
+ * streaming parser, on complete and projected responses of different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark {
+
+    @Param({"10", "20", "40"})
+    public int items;
+
+    @Param({"full", "projected"})
+    public String shape;
+
+    private byte[] mResponse;
+
+    private String mResponseString;
+
+    @Setup
+    public void setUp() {
+        mResponse = ResponseCorpus.response(items, 3, "projected".equals(shape));
+        mResponseString = new String(mResponse, Charset.forName("UTF-8"));
+    }
+
+    /** The whole former network path: buffer the body in a String, then build the tree */
+    @Benchmark
+    public BooksModel readAndExtractFromJson() throws IOException {
+        return BooksUtils.extractFeatureFromJson(BooksUtils.readFromStream(new ByteArrayInputStream(mResponse)));
+    }
+
+    @Benchmark
+    public String readFromStream() throws IOException {
+        return BooksUtils.readFromStream(new ByteArrayInputStream(mResponse));
+    }
+
+    @Benchmark
+    public BooksModel extractFeatureFromJson() {
+        return BooksUtils.extractFeatureFromJson(mResponseString);
+    }
+
+    @Benchmark
+    public BooksModel extractFeatureFromStream() throws IOException {
+        return BooksUtils.extractFeatureFromStream(new ByteArrayInputStream(mResponse), null);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.bookdigger;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Builds volume search responses shaped like the ones of the Google Books API, either
+ * complete or reduced to the fields projection requested by the app. The content is
+ * pseudo-random but the same for a given size, so that the runs can be compared.
+ */
+public class ResponseCorpus {
+
+    private static final String[] WORDS = {
+            "history", "garden", "the", "of", "night", "river", "science", "war", "love", "city",
+            "secret", "introduction", "guide", "modern", "journey", "art", "light", "stories",
+            "mathematics", "digital", "ocean", "kingdom", "Java", "Android", "programming"
+    };
+
+    private static final String[] AUTHORS = {
+            "Jane Austen", "Charles Dickens", "Agatha Christie", "Stephen King", "J. K. Rowling",
+            "Isaac Asimov", "Terry Pratchett", "Ursula K. Le Guin", "Joshua Bloch", "Brian Goetz",
+            "Neil Gaiman", "Umberto Eco", "Haruki Murakami", "Toni Morrison", "Victor Hugo"
+    };
+
+    private ResponseCorpus() {
+    }
+
+    /**
+     * Return the UTF-8 bytes of a response.
+     *
+     * @param items is the number of items of the response
+     * @param authorsPerBook is the maximum number of authors of a book
+     * @param projected is true for a response reduced to {@link BooksUtils#FIELDS_PROJECTION}
+     */
+    public static byte[] response(int items, int authorsPerBook, boolean projected) {
+        Random random = new Random(items * 31 + authorsPerBook);
+        StringBuilder json = new StringBuilder();
+        json.append("{");
+        if (!projected) {
+            json.append("\"kind\": \"books#volumes\",");
+        }
+        json.append("\"totalItems\": ").append(500 + random.nextInt(5000)).append(",\"items\": [");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendItem(json, random, authorsPerBook, projected);
+        }
+        json.append("]}");
+        return json.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Return the UTF-8 bytes of a single complete volume, as returned by the volume endpoint.
+     *
+     * @param seed selects the volume
+     */
+    public static byte[] volume(int seed) {
+        StringBuilder json = new StringBuilder();
+        appendItem(json, new Random(seed), 3, false);
+        return json.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    private static void appendItem(StringBuilder json, Random random, int authorsPerBook, boolean projected) {
+        String id = Long.toString(Math.abs(random.nextLong()), 36);
+        json.append('{');
+        if (projected) {
+            json.append("\"id\": \"").append(id).append("\",");
+        } else {
+            json.append("\"kind\": \"books#volume\",\"id\": \"").append(id)
+                    .append("\",\"etag\": \"").append(Long.toHexString(random.nextLong()))
+                    .append("\",\"selfLink\": \"https://www.googleapis.com/books/v1/volumes/")
+                    .append(id).append("\",");
+        }
+        json.append("\"volumeInfo\": {\"title\": \"").append(words(random, 2 + random.nextInt(6))).append('"');
+
+        // A few books have no author at all
+        if (random.nextInt(10) > 0) {
+            json.append(",\"authors\": [");
+            int authors = 1 + random.nextInt(authorsPerBook);
+            for (int a = 0; a < authors; a++) {
+                if (a > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(AUTHORS[random.nextInt(AUTHORS.length)]).append('"');
+            }
+            json.append(']');
+        }
+
+        if (!projected) {
+            json.append(",\"publisher\": \"").append(words(random, 2))
+                    .append("\",\"publishedDate\": \"").append(1950 + random.nextInt(70))
+                    .append("\",\"description\": \"").append(words(random, 60 + random.nextInt(80)))
+                    .append("\",\"industryIdentifiers\": [{\"type\": \"ISBN_13\",\"identifier\": \"978")
+                    .append(1000000000L + random.nextInt(999999999))
+                    .append("\"}],\"pageCount\": ").append(50 + random.nextInt(900))
+                    .append(",\"printType\": \"BOOK\",\"categories\": [\"").append(words(random, 1))
+                    .append("\"],\"averageRating\": ").append(1 + random.nextInt(5))
+                    .append(",\"maturityRating\": \"NOT_MATURE\",\"language\": \"en\"");
+        }
+
+        // Some books have no thumbnail
+        if (random.nextInt(5) > 0) {
+            String thumbnail = "http://books.google.com/books/content?id=" + id
+                    + "&printsec=frontcover&img=1&source=gbs_api";
+            json.append(",\"imageLinks\": {\"smallThumbnail\": \"").append(thumbnail).append("&zoom=5\"");
+            if (!projected) {
+                json.append(",\"thumbnail\": \"").append(thumbnail).append("&zoom=1\"");
+            }
+            json.append('}');
+        }
+        json.append('}');
+
+        if (!projected) {
+            json.append(",\"saleInfo\": {\"country\": \"FR\",\"saleability\": \"NOT_FOR_SALE\",\"isEbook\": false}")
+                    .append(",\"accessInfo\": {\"country\": \"FR\",\"viewability\": \"PARTIAL\",")
+                    .append("\"embeddable\": true,\"publicDomain\": false,\"epub\": {\"isAvailable\": false}}")
+                    .append(",\"searchInfo\": {\"textSnippet\": \"").append(words(random, 25)).append("\"}");
+        }
+        json.append('}');
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+}
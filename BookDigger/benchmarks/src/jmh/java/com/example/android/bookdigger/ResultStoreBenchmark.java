@@ -0,0 +1,93 @@
+package com.example.android.bookdigger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a list of {@link Book} objects with the compact {@link BookColumns} store, for
+ * result sets of 1k, 10k and 100k books. The gc profiler reports the allocation and the
+ * collections of each layout. The heap each one retains, which is a constant rather than a
+ * rate, is measured with JOL by BookColumnsTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResultStoreBenchmark {
+
+    /** Rows of a screen of the list */
+    private static final int SCREEN_ROWS = 12;
+
+    @Param({"objects", "columns"})
+    public String layout;
+
+    @Param({"1000", "10000", "100000"})
+    public int books;
+
+    private String[] mTitles;
+
+    private String[] mAuthors;
+
+    private String[] mThumbnails;
+
+    private List<Book> mStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mTitles = new String[books];
+        mAuthors = new String[books];
+        mThumbnails = new String[books];
+        for (int i = 0; i < books; i++) {
+            mTitles[i] = "The Book of Things, Volume " + i;
+            mAuthors[i] = "Author " + (i % 500) + ", Other Author " + (i % 37);
+            mThumbnails[i] = "http://books.google.com/books/content?id=" + Integer.toHexString(i)
+                    + "&printsec=frontcover&img=1&zoom=5&source=gbs_api";
+        }
+
+        mStore = build();
+    }
+
+    /** Fill a store with the books of a result set, as the parsers do */
+    @Benchmark
+    public List<Book> build() {
+        List<Book> store = "columns".equals(layout) ? new BookColumns() : new ArrayList<Book>();
+        for (int i = 0; i < books; i++) {
+            // Copy the strings as a parser creates new ones for every response
+            store.add(new Book(new String(mTitles[i]), new String(mAuthors[i]),
+                    new String(mThumbnails[i])));
+        }
+        return store;
+    }
+
+    /** Read every book of the store, as the rows of the list do when they are bound */
+    @Benchmark
+    public int bind() {
+        int length = 0;
+        for (int i = 0; i < mStore.size(); i++) {
+            Book book = mStore.get(i);
+            length += book.getTitle().length() + book.getAuthor().length();
+        }
+        return length;
+    }
+
+    /** Read the books of a screen, as the rows are bound again while scrolling back and forth */
+    @Benchmark
+    public int rebindScreen() {
+        int length = 0;
+        for (int i = 0; i < SCREEN_ROWS; i++) {
+            Book book = mStore.get(i);
+            length += book.getTitle().length() + book.getAuthor().length();
+        }
+        return length;
+    }
+}
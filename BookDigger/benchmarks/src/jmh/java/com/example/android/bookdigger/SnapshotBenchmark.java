@@ -0,0 +1,57 @@
+package com.example.android.bookdigger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the restore of the displayed books from the saved instance state with a refetch
+ * of the same books. The refetch is only its parse here: on a device the network round trip
+ * (the "load" phase of the {@link BooksTracer}) comes on top of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+
+    /** Number of displayed books: one page, or a full window of incremental paging */
+    @Param({"20", "200"})
+    public int items;
+
+    private byte[] mResponse;
+
+    private BooksModel mBooksModel;
+
+    private byte[] mSnapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        mResponse = ResponseCorpus.response(items, 3, true);
+        mBooksModel = BooksUtils.extractFeatureFromStream(new ByteArrayInputStream(mResponse), null);
+        mSnapshot = BooksModelCodec.toByteArray(mBooksModel);
+    }
+
+    @Benchmark
+    public byte[] save() throws IOException {
+        return BooksModelCodec.toByteArray(mBooksModel);
+    }
+
+    @Benchmark
+    public BooksModel restore() throws IOException {
+        return BooksModelCodec.fromByteArray(mSnapshot);
+    }
+
+    @Benchmark
+    public BooksModel refetchParse() throws IOException {
+        return BooksUtils.extractFeatureFromStream(new ByteArrayInputStream(mResponse), null);
+    }
+}